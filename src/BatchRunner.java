@@ -0,0 +1,216 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs one model over many data files in parallel: every scenario gets its own {@link Controller}
+ * and goes through {@code readDataFrom -> runModel -> runScriptFromFile...}. Results are handed
+ * out in the order the scenarios finish. Only a few scenarios are in flight at a time, and each
+ * controller is dropped as soon as its result was handed out, so a large directory needs no more
+ * memory than a few scenarios.
+ * <p>
+ * Usage: {@code BatchRunner <model> <data file or directory> [script...]}
+ */
+public class BatchRunner {
+    private final String modelName;
+    private final List<String> scripts;
+    private final int parallelism;
+
+    /**
+     * The outcome of one scenario: the controller holding its results, or the error that stopped it.
+     * The results stay in their columns until they are written; no text is built up front.
+     * {@link #run(List, Consumer)} releases the controller once the result was handed out.
+     */
+    public static final class Result {
+        private final Path dataFile;
+        private final Exception error;
+        private final long nanos;
+        private Controller controller;
+
+        public Result(Path dataFile, Controller controller, Exception error, long nanos) {
+            this.dataFile = dataFile;
+            this.controller = controller;
+            this.error = error;
+            this.nanos = nanos;
+        }
+
+        public Path dataFile() {
+            return dataFile;
+        }
+
+        /**
+         * The controller with the results, or null if the scenario failed or the result was released.
+         */
+        public Controller controller() {
+            return controller;
+        }
+
+        public Exception error() {
+            return error;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * Streams the results as TSV, see {@link Controller#writeResultAsTSV(Writer, int)}.
+         */
+        public void writeTsv(Writer out) throws IOException {
+            results().writeResultAsTSV(out, -1);
+        }
+
+        /**
+         * The results as one TSV string; {@link #writeTsv} doesn't need the whole text in memory.
+         */
+        public String tsv() {
+            return isSuccess() ? results().getResultAsTSV() : null;
+        }
+
+        /**
+         * Drops the controller, and with it the model and the data of the scenario.
+         */
+        public void release() {
+            controller = null;
+        }
+
+        private Controller results() {
+            if (!isSuccess()) {
+                throw new IllegalStateException("Scenario failed: " + dataFile, error);
+            }
+            if (controller == null) {
+                throw new IllegalStateException("Result already released: " + dataFile);
+            }
+            return controller;
+        }
+    }
+
+    public BatchRunner(String modelName, List<String> scripts) {
+        this(modelName, scripts, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchRunner(String modelName, List<String> scripts, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.modelName = modelName;
+        this.scripts = List.copyOf(scripts);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the file itself, or the {@code .txt} and snapshot ({@code .latb}) files of a directory sorted by name.
+     */
+    public static List<Path> dataFiles(Path fileOrDirectory) throws IOException {
+        if (!Files.isDirectory(fileOrDirectory)) {
+            return List.of(fileOrDirectory);
+        }
+        try (Stream<Path> files = Files.list(fileOrDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".txt") || file.getFileName().toString().endsWith(".latb")).sorted().toList();
+        }
+    }
+
+    /**
+     * Runs every scenario and passes each result to {@code onResult} on the calling thread as soon
+     * as it is done. Returns after all scenarios finished.
+     * <p>
+     * At most twice as many scenarios as workers are in flight: the next one starts when a result
+     * was handed out. The result is {@link Result#release() released} when {@code onResult} returns,
+     * so write it there.
+     */
+    public void run(List<Path> dataFiles, Consumer<Result> onResult) throws InterruptedException {
+        int workers = Math.min(parallelism, Math.max(1, dataFiles.size()));
+        ExecutorService pool = new ForkJoinPool(workers);
+        try {
+            CompletionService<Result> completion = new ExecutorCompletionService<>(pool);
+            int submitted = 0;
+            for (int window = 2 * workers; submitted < Math.min(window, dataFiles.size()); submitted++) {
+                Path dataFile = dataFiles.get(submitted);
+                completion.submit(() -> runScenario(dataFile));
+            }
+            for (int i = 0; i < dataFiles.size(); i++) {
+                Result result;
+                try {
+                    result = completion.take().get();
+                } catch (ExecutionException e) { // runScenario catches everything but Errors
+                    throw new IllegalStateException("Scenario failed", e.getCause());
+                }
+                if (submitted < dataFiles.size()) {
+                    Path dataFile = dataFiles.get(submitted++);
+                    completion.submit(() -> runScenario(dataFile));
+                }
+                try {
+                    onResult.accept(result);
+                } finally {
+                    result.release();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs every scenario and writes the results into one output, a block per scenario headed by
+     * {@code # <data file>}.
+     */
+    public List<Result> run(List<Path> dataFiles, Writer out) throws InterruptedException {
+        List<Result> failed = new ArrayList<>();
+        run(dataFiles, result -> {
+            try {
+                out.write("# " + result.dataFile() + "\n");
+                if (result.isSuccess()) {
+                    result.writeTsv(out);
+                } else {
+                    out.write("# error: " + result.error().getMessage() + "\n");
+                    failed.add(result);
+                }
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return failed;
+    }
+
+    public Result runScenario(Path dataFile) {
+        long start = System.nanoTime();
+        try {
+            Controller controller = new Controller(); // fresh model instance per scenario
+            controller.setModel(modelName);
+            controller.readDataFrom(dataFile.toString());
+            controller.runModel();
+            for (String script : scripts) {
+                controller.runScriptFromFile(script);
+            }
+            return new Result(dataFile, controller, null, System.nanoTime() - start);
+        } catch (Exception e) {
+            return new Result(dataFile, null, e, System.nanoTime() - start);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchRunner <model> <data file or directory> [script...]");
+            System.exit(2);
+        }
+        List<String> scripts = List.of(args).subList(2, args.length);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        List<Result> failed = new BatchRunner(args[0], scripts).run(dataFiles(Paths.get(args[1])), out);
+        out.flush();
+        for (Result result : failed) {
+            System.err.println(result.dataFile() + ": " + result.error().getMessage());
+        }
+        if (!failed.isEmpty()) System.exit(1);
+    }
+}
@@ -1,123 +1,381 @@
-import annotations.Bind;
+import binding.BindingPlan;
+import binding.EntityBatchRunner;
+import cache.ResultCache;
+import export.ColumnarFile;
+import export.ResultExporter;
+import formula.Formula;
+import metrics.Metrics;
+import metrics.Phase;
+import metrics.Span;
+import parsing.DeferredSeries;
+import parsing.LataParser;
+import registry.ModelRegistry;
+import scripting.ContextPool;
+import scripting.ScriptAnalysis;
+import scripting.ScriptCache;
+import sensitivity.SensitivityAnalysis;
+import sensitivity.Sensitivities;
+import store.EntityBatch;
+import store.VariableStore;
+import streaming.StreamingRunner;
+
 import javax.script.*;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FilterWriter;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Collection;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 public class Controller {
+    private static final ScriptCache SCRIPT_CACHE = new ScriptCache(); // shared by all controllers
     private Object modelInstance;
-    private final Map<String, Object> modelData = new LinkedHashMap<>(); // чтобы сохранить порядок вставки
-    private int dataSize;
+    private BindingPlan bindingPlan;
+    private VariableStore modelData = new VariableStore(); // columns keep their insertion order
+    private boolean boundVariablesOnly;
+    private boolean staticScripts;
+    private ResultCache resultCache; // null: always compute
+    private VariableStore.Snapshot inputs; // the data as read from the file
+    private final ModelRegistry models; // null: models come from the class path
+    private String modelName;
+    private int modelGeneration;
+
+    public Controller() {
+        this(null);
+    }
+
+    /**
+     * Takes the models from a registry, so a run always uses the latest version of the model's
+     * class; a run already going finishes on the version it started with.
+     */
+    public Controller(ModelRegistry models) {
+        this.models = models;
+    }
 
     public void setModel(String modelName) {
         try {
-            Class<?> modelClass = Class.forName("models." + modelName);
+            Class<?> modelClass;
+            if (models == null) {
+                modelClass = Class.forName("models." + modelName);
+            } else {
+                modelGeneration = models.getGeneration();
+                modelClass = models.getModelClass(modelName);
+            }
             this.modelInstance = modelClass.getDeclaredConstructor().newInstance();
+            this.bindingPlan = BindingPlan.of(modelClass);
+            this.modelName = modelName;
         } catch (Exception e) {
             throw new RuntimeException("Error initializing model: " + modelName);
         }
     }
 
+    /**
+     * When enabled, {@link #readDataFrom} parses only the rows bound by the current model. The other
+     * rows are kept as byte ranges and parsed when a script reads them or the results are exported.
+     */
+    public Controller setBoundVariablesOnly(boolean enabled) {
+        this.boundVariablesOnly = enabled;
+        return this;
+    }
+
+    /**
+     * When enabled, scripts are compiled with {@code @CompileStatic} for the types of the current
+     * variables, and run dynamically only if they don't type check.
+     */
+    public Controller setStaticScripts(boolean enabled) {
+        this.staticScripts = enabled;
+        return this;
+    }
+
+    /**
+     * Looks up the results of {@link #runModel} and {@link #runScript} in a cache before computing
+     * them, keyed by the model's bytecode or the script's text and the inputs they read. The cache
+     * may be shared by several controllers.
+     * <p>
+     * A model is assumed to compute its results from its bound fields alone; one that draws random
+     * numbers, reads the clock or files must not be run with a cache. A script is cached only when
+     * {@link ScriptAnalysis#isClosed} proves that about it, other scripts always run.
+     */
+    public Controller setResultCache(ResultCache cache) {
+        this.resultCache = cache;
+        return this;
+    }
+
+    /**
+     * Reads a LATA text file or a snapshot written by {@link #writeSnapshotTo}, told apart by their
+     * first bytes. A snapshot is mapped rather than read: each series is loaded when first used.
+     */
     public Controller readDataFrom(String filePath) throws Exception {
         modelData.clear();
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(filePath));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) continue;
-                line = line.replace(",", ".");
-
-                if (line.startsWith("LATA")) {
-                    String[] years = line.trim().split("\\s+");
-                    dataSize = years.length - 1;
-                    modelData.put("LL", dataSize);
-                    modelData.put("LATA", years);
-                } else {
-                    String[] parts = line.split("\\s+");
-                    String varName = parts[0];
-                    if (parts.length < 2) {
-                        System.err.println("No values found for variable: " + varName);
-                        continue;
-                    }
-                    try {
-                        double[] values = new double[dataSize];
-                        for (int i = 0; i < dataSize; i++) {
-                            if (i < parts.length - 1) {
-                                values[i] = Double.parseDouble(parts[i + 1]);
-                            } else {
-                                values[i] = values[i - 1];
-                            }
-                        }
-                        modelData.put(varName, values);
-                    } catch (NumberFormatException ex) {
-                        System.err.println("Error parsing values for variable: " + varName + ". Line skipped.");
-                    }
-                }
+        try (Span span = Metrics.start(Phase.READ).name(filePath).model(modelName)) {
+            var path = Paths.get(filePath);
+            if (ColumnarFile.isColumnarFile(path)) {
+                ColumnarFile.open(path).loadInto(modelData);
+                span.data(modelData.columnCount(), modelData.size());
+                inputs = modelData.snapshot();
+                return this;
             }
+            var source = new DeferredSeries.Source(path);
+            var boundNames = boundVariablesOnly && bindingPlan != null ? bindingPlan.getFieldNames() : null;
+            int[] parsed = {0};
+            LataParser.parse(path, new LataParser.Handler() {
+                @Override
+                public void onHeader(String[] labels) {
+                    modelData.setPeriods(labels);
+                }
+
+                @Override
+                public void onSeries(String name, double[] values) {
+                    modelData.put(name, values);
+                    parsed[0]++;
+                }
+
+                @Override
+                public boolean wants(String name) {
+                    return boundNames == null || boundNames.contains(name);
+                }
+
+                @Override
+                public void onSkipped(String name, long offset, int length) {
+                    modelData.putDeferred(name, new DeferredSeries(source, offset, length, modelData.size()));
+                }
+            });
+            if (span.isActive()) span.bytes(Files.size(path)).arrays(parsed[0]).data(modelData.columnCount(), modelData.size());
         } catch (Exception e) {
-            throw new Exception("Error reading data from file: " + filePath);
+            throw new Exception("Error reading data from file: " + filePath, e);
         }
+        inputs = modelData.snapshot();
         return this;
     }
 
-    private void bindDataModel() throws IllegalAccessException {
-        for (Field field : modelInstance.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(Bind.class)) {
-                field.setAccessible(true);
-                String fieldName = field.getName();
-                if (modelData.containsKey(fieldName)) {
-                    var fieldValue = modelData.get(fieldName);
-                    field.set(modelInstance, fieldValue);
+    private void bindDataModel() {
+        bindingPlan.bind(modelInstance, modelData);
+    }
+
+    public String getResultAsTSV() {
+        StringWriter CSV = new StringWriter();
+        try {
+            writeResultAsTSV(CSV, -1);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter doesn't throw
+        }
+        return CSV.toString();
+    }
+
+    /**
+     * Streams the results as TSV. A negative precision formats values like {@link Double#toString(double)},
+     * otherwise they are rounded to that many decimals.
+     */
+    public Controller writeResultAsTSV(Writer out, int precision) throws IOException {
+        try (Span span = Metrics.start(Phase.EXPORT).model(modelName)) {
+            if (!span.isActive()) {
+                ResultExporter.writeTsv(modelData, out, precision);
+                return this;
+            }
+            long[] chars = {0};
+            ResultExporter.writeTsv(modelData, new FilterWriter(out) {
+                @Override
+                public void write(int c) throws IOException {
+                    super.write(c);
+                    chars[0]++;
                 }
+
+                @Override
+                public void write(char[] buffer, int offset, int length) throws IOException {
+                    super.write(buffer, offset, length);
+                    chars[0] += length;
+                }
+
+                @Override
+                public void write(String text, int offset, int length) throws IOException {
+                    super.write(text, offset, length);
+                    chars[0] += length;
+                }
+            }, precision);
+            span.bytes(chars[0]).data(modelData.columnCount(), modelData.size()); // characters, bytes for ASCII
+        }
+        return this;
+    }
+
+    public Controller writeResultAsTSV(WritableByteChannel out, int precision) throws IOException {
+        writeResultAsTSV(Channels.newWriter(out, StandardCharsets.UTF_8), precision);
+        return this;
+    }
+
+    /**
+     * Streams the results in the binary {@link export.ColumnarFormat}.
+     */
+    public Controller writeResultAsBinary(WritableByteChannel out) throws IOException {
+        try (Span span = Metrics.start(Phase.EXPORT).model(modelName)) {
+            long start = span.isActive() && out instanceof SeekableByteChannel file ? file.position() : 0;
+            ResultExporter.writeBinary(modelData, out);
+            if (span.isActive() && out instanceof SeekableByteChannel file) {
+                span.bytes(file.position() - start).data(modelData.columnCount(), modelData.size());
             }
         }
+        return this;
     }
 
-    public String getResultAsTSV() {
-        StringBuilder CSV = new StringBuilder();
-        for (var entry : modelData.entrySet()) {
-            var fieldName = entry.getKey();
-            var value = entry.getValue();
-            if (value instanceof double[]) {
-                var array = (double[]) value;
-                CSV.append(fieldName);
-                for (double v : array) {
-                    CSV.append("\t").append(v);
-                }
-                CSV.append("\n");
-            } else if (fieldName == "LATA" && value instanceof String[]) {
-                var array = (String[]) value;
-                CSV.append(String.join("\t", array));
-                CSV.append("\n");
+    /**
+     * Saves the variables as a snapshot that {@link #readDataFrom} loads without parsing. The file
+     * is replaced only once it is complete.
+     */
+    public Controller writeSnapshotTo(String filePath) throws IOException {
+        Path path = Paths.get(filePath).toAbsolutePath();
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                writeResultAsBinary(out);
             }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
         }
-        return CSV.toString();
+        return this;
+    }
+
+    /**
+     * Freezes the current variables. Models and scripts run afterwards copy only the series they
+     * are given, so the snapshot stays intact and costs no copy of its own.
+     */
+    public VariableStore.Snapshot snapshot() {
+        return modelData.snapshot();
+    }
+
+    /**
+     * Goes back to a snapshot in O(1).
+     */
+    public Controller restore(VariableStore.Snapshot snapshot) {
+        modelData.restore(snapshot);
+        return this;
+    }
+
+    /**
+     * Goes back to the data as last read by {@link #readDataFrom}, without reading the file again.
+     */
+    public Controller restoreInputs() {
+        if (inputs == null) {
+            throw new IllegalStateException("No data has been read yet");
+        }
+        return restore(inputs);
+    }
+
+    /**
+     * Works on the given variables instead of reading a file. The store is used as is, not copied.
+     */
+    public Controller setData(VariableStore data) {
+        this.modelData = data;
+        this.inputs = data.snapshot();
+        return this;
+    }
+
+    /**
+     * The variables of the current dataset, including everything models and scripts stored.
+     */
+    public VariableStore getData() {
+        return modelData;
     }
 
     public Controller runModel() {
+        Class<?> modelClass = currentModelClass();
+        if (!bindingPlan.hasRun()) {
+            throw new RuntimeException("The 'run' method is not defined in the model.");
+        }
+        if (resultCache != null) {
+            var variables = bindingPlan.getFieldNames();
+            return cached(ResultCache.codeHash(modelClass), variables, variables, this::computeModel);
+        }
+        return computeModel();
+    }
+
+    /**
+     * Runs the current model for every entity of a batch, see {@link EntityBatchRunner}. The
+     * controller's own data is not involved.
+     */
+    public Controller runModel(EntityBatch entities) throws Exception {
+        Class<?> modelClass = currentModelClass();
+        if (!bindingPlan.hasRun()) {
+            throw new RuntimeException("The 'run' method is not defined in the model.");
+        }
+        new EntityBatchRunner(() -> modelClass.getDeclaredConstructor().newInstance()).run(entities);
+        return this;
+    }
+
+    /**
+     * Runs the current model over a data file a window of periods at a time and writes the results
+     * to a snapshot, without loading the file; see {@link StreamingRunner}. The controller's own
+     * data is not involved.
+     */
+    public Controller streamModel(String inputPath, String outputPath, int window) throws Exception {
+        Class<?> modelClass = currentModelClass();
+        new StreamingRunner(() -> modelClass.getDeclaredConstructor().newInstance(), window)
+                .run(Paths.get(inputPath), Paths.get(outputPath));
+        return this;
+    }
+
+    /**
+     * Derivatives of the current model's results with respect to some of its inputs, on the
+     * controller's data, in one pass; see {@link SensitivityAnalysis}. The data is not changed.
+     */
+    public Sensitivities sensitivities(String... inputs) throws Exception {
+        Class<?> modelClass = currentModelClass();
+        return new SensitivityAnalysis(() -> modelClass.getDeclaredConstructor().newInstance())
+                .run(modelData, List.of(inputs));
+    }
+
+    /**
+     * The class of the current model, set again first if the registry reloaded it since. Runs keep
+     * using the class they started with.
+     */
+    private Class<?> currentModelClass() {
+        if (models != null && modelName != null && models.getGeneration() != modelGeneration) {
+            setModel(modelName);
+        }
+        return modelInstance.getClass();
+    }
+
+    private Controller computeModel() {
         try {
-            bindDataModel(); // читает из data
-            modelInstance.getClass().getMethod("run").invoke(modelInstance);
-            readDataFromModel(); // читает из Model
-        } catch (NoSuchMethodException e) {
-            throw new RuntimeException("The 'run' method is not defined in the model.", e);
-        } catch (Exception e) {
+            try (Span span = Metrics.start(Phase.BIND).model(modelName).data(modelData.columnCount(), modelData.size())) {
+                bindDataModel(); // читает из data
+            }
+            try (Span span = Metrics.start(Phase.RUN).model(modelName).data(modelData.columnCount(), modelData.size())) {
+                bindingPlan.run(modelInstance);
+            }
+            try (Span span = Metrics.start(Phase.READ_BACK).model(modelName)) {
+                if (span.isActive()) span.arrays(newArrays());
+                readDataFromModel(); // читает из Model
+                span.data(modelData.columnCount(), modelData.size());
+            }
+        } catch (Throwable e) {
             throw new RuntimeException("Error running model", e);
         }
         return this;
     }
-    private Controller readDataFromModel() throws IllegalAccessException {
-        for (var field : modelInstance.getClass().getDeclaredFields()) {
-            if (field.isAnnotationPresent(Bind.class)) {
-                field.setAccessible(true);
-                modelData.put(field.getName(), field.get(modelInstance));
-            }
+
+    /**
+     * Series fields of the model that hold an array the store doesn't have yet.
+     */
+    private int newArrays() {
+        int count = 0;
+        for (var field : bindingPlan.getFields()) {
+            if (field.get(modelInstance) instanceof double[] values && values != modelData.peek(field.name())) count++;
         }
+        return count;
+    }
+
+    private Controller readDataFromModel() {
+        bindingPlan.readBack(modelInstance, modelData);
         return this;
     }
 
@@ -127,35 +385,96 @@ public class Controller {
 
     public Controller runScriptFromFile(String fname) throws IOException, ScriptException {
         var path = Paths.get(fname);
-        String scriptText = Files.readString(path);
-        return runScript(scriptText);
+        return runScript(SCRIPT_CACHE.readFile(path));
     }
 
-    private ScriptEngine createGroovyEngine() {
-        ScriptEngineManager manager = new ScriptEngineManager();
-        ScriptEngine groovyEngine = manager.getEngineByExtension("groovy");
-        if (groovyEngine == null) {
-            throw new RuntimeException("Groovy script engine not found. Make sure Groovy is available.");
+    public Controller runScript(String scriptText) throws ScriptException {
+        try (Span span = Metrics.start(Phase.SCRIPT).model(modelName).script(scriptText)) {
+            runScript(scriptText, span);
+            span.data(modelData.columnCount(), modelData.size());
         }
-        return groovyEngine;
+        return this;
     }
 
-    public Controller runScript(String scriptText) throws ScriptException {
-        ScriptEngine engine = createGroovyEngine();
+    private Controller runScript(String scriptText, Span span) throws ScriptException {
+        CompiledScript script = staticScripts
+                ? SCRIPT_CACHE.compileStatic(scriptText, modelData::typeOf)
+                : SCRIPT_CACHE.compile(scriptText);
+        ScriptAnalysis analysis = SCRIPT_CACHE.analyze(scriptText);
+        if (resultCache == null || !analysis.isClosed(modelData::containsValue)) {
+            return runCompiledScript(script, analysis, span);
+        }
+        try {
+            return cached("script:" + ScriptCache.hash(scriptText), analysis.getReads(), analysis.getWrites(),
+                    () -> runCompiledScript(script, analysis, span));
+        } catch (ScriptException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e); // runCompiledScript throws nothing else
+        }
+    }
+
+    private interface Computation<E extends Exception> {
+        void run() throws E;
+    }
 
-        for (var entry : modelData.entrySet()) {
-            engine.put(entry.getKey(), entry.getValue());
+    /**
+     * Takes what {@code computation} would write to {@code outputs} from the result cache, or runs
+     * it and caches the values it changed.
+     */
+    private <E extends Exception> Controller cached(String code, Collection<String> inputs, Collection<String> outputs,
+                                                    Computation<E> computation) throws E {
+        String key = ResultCache.key(code, inputs, this::peekValue);
+        Map<String, Object> results = resultCache.get(key);
+        if (results != null) {
+            results.forEach(modelData::putValue);
+            return this;
         }
-        engine.eval(scriptText);
+        VariableStore.Snapshot before = modelData.snapshot();
+        long start = System.nanoTime();
+        computation.run();
+        long nanos = System.nanoTime() - start;
+        VariableStore previous = before.branch();
+        Map<String, Object> changed = new LinkedHashMap<>();
+        for (String name : outputs) {
+            Object value = peekValue(name);
+            Object old = previous.readValue(name);
+            if (value != null && !Objects.deepEquals(value, old)) changed.put(name, value);
+        }
+        resultCache.put(key, changed, nanos);
+        return this;
+    }
 
-        Bindings engineBindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+    /**
+     * A value without copying it: series are returned read-only.
+     */
+    private Object peekValue(String name) {
+        return modelData.readValue(name);
+    }
+
+    /**
+     * Runs element-wise formulas such as {@code ZDEKS = EKS / PKB}, see {@link Formula}. The results
+     * are stored like those of scripts.
+     */
+    public Controller runFormula(String formulaText) {
+        Formula.of(formulaText).run(modelData);
+        return this;
+    }
 
-        for (var entry : engineBindings.entrySet()) {
-            var key = entry.getKey();
-            var value = entry.getValue();
-            if (key.length() > 1 && value instanceof double[]) //key.length() > 1: чтобы игнорировать однобуквенные переменные
-                modelData.put(key, value);
+    /**
+     * Compiled scripts are shared; every run borrows a context of its own, with bindings that read
+     * the controller's data directly and store what the script assigned once it completed, see
+     * {@link ContextPool}.
+     */
+    private Controller runCompiledScript(CompiledScript script, ScriptAnalysis analysis, Span span) throws ScriptException {
+        try (ContextPool.Lease lease = SCRIPT_CACHE.getContextPool().acquire()) {
+            lease.eval(script, modelData, analysis::isReadOnly); // what the script only reads is not copied
+            span.arrays(lease.bindings().getArraysWritten());
         }
         return this;
     }
+
+    public static ScriptCache getScriptCache() {
+        return SCRIPT_CACHE;
+    }
 }
@@ -0,0 +1,166 @@
+import metrics.Metrics;
+import metrics.Phase;
+import metrics.Span;
+import progress.Progress;
+import store.VariableStore;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs controller work off the Event Dispatch Thread. Jobs are queued and run one after another
+ * on a single background thread, so the controller is never used by two of them at once. The
+ * callbacks are called on the Event Dispatch Thread.
+ * <p>
+ * The controller data is snapshotted before every job. A job that fails or is cancelled is rolled
+ * back, so the data never stays half-changed.
+ */
+public class JobQueue {
+    /**
+     * Work to run in the background; its result is passed to the success callback.
+     */
+    @FunctionalInterface
+    public interface Job<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Told about the state of the queue, on the Event Dispatch Thread.
+     */
+    public interface Listener {
+        void jobStarted(String name, int waiting);
+
+        /**
+         * Progress between 0 and 1, reported by the job through {@link Progress}.
+         */
+        void jobProgress(String name, double fraction);
+
+        void jobFinished(String name, int waiting);
+    }
+
+    private final Controller controller;
+    private final Listener listener;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "controller-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final List<Task<?>> pending = new CopyOnWriteArrayList<>();
+
+    public JobQueue(Controller controller, Listener listener) {
+        this.controller = controller;
+        this.listener = listener;
+    }
+
+    public <T> void submit(String name, Job<T> job, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        waiting.incrementAndGet();
+        Task<T> task = new Task<>(name, job, onSuccess, onFailure);
+        pending.add(task);
+        worker.execute(task);
+    }
+
+    /**
+     * Cancels the running job, interrupting it, and every job still waiting. Call on the Event Dispatch Thread.
+     * A running job counts as finished only once it has actually returned, which a script that ignores
+     * the interrupt may take a while to do; until then the queue stays busy.
+     */
+    public void cancelAll() {
+        for (Task<?> task : pending) {
+            boolean neverStarted = task.claim();
+            task.cancel(true);
+            if (neverStarted) {
+                task.finish(); // SwingWorker calls done() only for jobs that started
+            }
+        }
+    }
+
+    public boolean isBusy() {
+        return !pending.isEmpty();
+    }
+
+    private final class Task<T> extends SwingWorker<T, Double> {
+        private final String name;
+        private final Job<T> job;
+        private final Consumer<T> onSuccess;
+        private final Consumer<Exception> onFailure;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicBoolean running = new AtomicBoolean(); // doInBackground hasn't returned yet
+
+        private Task(String name, Job<T> job, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+            this.name = name;
+            this.job = job;
+            this.onSuccess = onSuccess;
+            this.onFailure = onFailure;
+        }
+
+        /**
+         * Takes the job off the waiting count, once: either when it starts or when it is cancelled
+         * before. Returns false if that already happened.
+         */
+        private boolean claim() {
+            if (!claimed.compareAndSet(false, true)) return false;
+            waiting.decrementAndGet();
+            return true;
+        }
+
+        @Override
+        protected T doInBackground() throws Exception {
+            if (!claim()) {
+                throw new CancellationException(name + " was cancelled"); // cancelled while starting
+            }
+            running.set(true);
+            try {
+                int left = waiting.get();
+                SwingUtilities.invokeLater(() -> listener.jobStarted(name, left));
+                VariableStore.Snapshot before = controller.snapshot();
+                try (Span span = Metrics.start(Phase.JOB).name(name)) {
+                    T result = Progress.run(fraction -> publish(fraction), job::run);
+                    Progress.checkCancelled(); // the job may have ignored the interrupt
+                    return result;
+                } catch (Exception e) {
+                    controller.restore(before);
+                    throw e;
+                }
+            } finally {
+                running.set(false);
+                if (isCancelled()) {
+                    SwingUtilities.invokeLater(this::finish); // done() came early and was skipped
+                }
+            }
+        }
+
+        @Override
+        protected void process(List<Double> chunks) {
+            listener.jobProgress(name, chunks.get(chunks.size() - 1));
+        }
+
+        @Override
+        protected void done() {
+            if (running.get()) return; // cancelled, but the job is still using the controller
+            finish();
+        }
+
+        private void finish() {
+            if (!finished.compareAndSet(false, true)) return;
+            pending.remove(this);
+            listener.jobFinished(name, waiting.get());
+            if (isCancelled()) {
+                onFailure.accept(new CancellationException(name + " was cancelled"));
+                return;
+            }
+            try {
+                onSuccess.accept(get());
+            } catch (ExecutionException e) {
+                onFailure.accept(e.getCause() instanceof Exception cause ? cause : e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
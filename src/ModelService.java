@@ -0,0 +1,372 @@
+import cache.ResultCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import store.VariableStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs models and scripts for many clients in one JVM, over HTTP on the loopback interface. Every
+ * session has a controller of its own; requests of one session run one after another, those of
+ * different sessions in parallel, each on a virtual thread. What doesn't depend on a session is
+ * shared: compiled scripts and the Groovy engine, binding plans, datasets read from files (a session
+ * gets a copy-on-write branch) and model results.
+ * <p>
+ * At most {@code --max-concurrent} requests are worked on at once; a request that finds no slot
+ * within a second gets {@code 503} with {@code Retry-After}.
+ * <p>
+ * Loopback is not private: any web page the user opens may POST to it. So every request must carry
+ * the token printed at start in an {@code Authorization: Bearer <token>} header, which a page can
+ * neither know nor send without the browser asking first; other requests get {@code 401}. Data
+ * files are read only from {@code --data-dir} (the working directory by default).
+ * <pre>
+ * POST   /sessions                          -> session id
+ * DELETE /sessions/{id}
+ * POST   /sessions/{id}/model?name=Model1
+ * POST   /sessions/{id}/data?file=path      the dataset, shared between sessions
+ * POST   /sessions/{id}/run                 runs the model
+ * POST   /sessions/{id}/script              runs the Groovy script in the body
+ * POST   /sessions/{id}/formula             runs the formulas in the body
+ * POST   /sessions/{id}/reset               back to the data as loaded
+ * GET    /sessions/{id}/results             TSV
+ * GET    /status
+ * </pre>
+ * Usage: {@code ModelService [--port 8090] [--max-concurrent 64] [--max-sessions 1000]
+ * [--session-timeout 30] (minutes) [--cache-mb 256] [--data-dir .]}
+ */
+public class ModelService {
+    private static final int MAX_BODY = 1 << 20;
+    private static final int DATASETS = 16;
+
+    private final HttpServer server;
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "session-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Semaphore slots;
+    private final int maxConcurrent;
+    private final int maxSessions;
+    private final long sessionTimeoutNanos;
+    private final ResultCache resultCache;
+    private final Path dataDirectory;
+    private final String token;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<DatasetKey, Future<VariableStore.Snapshot>> datasets = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DatasetKey, Future<VariableStore.Snapshot>> eldest) {
+            return size() > DATASETS;
+        }
+    };
+    private final ReentrantLock datasetsLock = new ReentrantLock(); // not synchronized, see Session.lock
+    private final AtomicLong requests = new AtomicLong(), rejected = new AtomicLong();
+
+    private static final class Session {
+        final Controller controller;
+        final ReentrantLock lock = new ReentrantLock(); // not synchronized: it would pin the virtual thread
+        volatile long lastUsed = System.nanoTime();
+
+        Session(ResultCache cache) {
+            controller = new Controller().setResultCache(cache);
+        }
+    }
+
+    /**
+     * A data file as it is on disk now; a changed file is read again.
+     */
+    private record DatasetKey(Path path, FileTime modified, long size) {
+    }
+
+    /**
+     * An answer other than 200.
+     */
+    private static final class HttpError extends RuntimeException {
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public ModelService(int port, int maxConcurrent, int maxSessions, long sessionTimeoutMinutes, long cacheBytes,
+                        Path dataDirectory) throws IOException {
+        this.slots = new Semaphore(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+        this.maxSessions = maxSessions;
+        this.sessionTimeoutNanos = TimeUnit.MINUTES.toNanos(sessionTimeoutMinutes);
+        this.resultCache = new ResultCache(cacheBytes, null);
+        this.dataDirectory = dataDirectory.toRealPath();
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.token = HexFormat.of().formatHex(secret);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(threads);
+        server.createContext("/sessions", this::handle);
+        server.createContext("/status", this::handle);
+        sweeper.scheduleWithFixedDelay(this::closeIdleSessions, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * The token clients send as {@code Authorization: Bearer <token>}; a new one at every start.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    public void stop() {
+        server.stop(1);
+        threads.shutdownNow();
+        sweeper.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            if (!authorized(exchange)) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                respond(exchange, 401, "Missing or wrong token\n");
+                return;
+            }
+            boolean admitted;
+            try {
+                admitted = slots.tryAcquire(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!admitted) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 503, "Too many requests in progress\n");
+                return;
+            }
+            try {
+                respond(exchange, 200, route(exchange));
+            } catch (HttpError e) {
+                respond(exchange, e.status, e.getMessage() + "\n");
+            } catch (Exception e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                respond(exchange, 400, e.getMessage() + (cause != e ? ": " + cause.getMessage() : "") + "\n");
+            } finally {
+                slots.release();
+            }
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ")
+                && MessageDigest.isEqual(header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8),
+                token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String route(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        String[] parts = exchange.getRequestURI().getPath().split("/");
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        if (parts.length == 2 && parts[1].equals("status")) {
+            return status();
+        }
+        if (parts.length == 2 && method.equals("POST")) {
+            return createSession() + "\n";
+        }
+        if (parts.length < 3) throw new HttpError(404, "Not found");
+        String id = parts[2];
+        if (parts.length == 3 && method.equals("DELETE")) {
+            if (sessions.remove(id) == null) throw new HttpError(404, "No session " + id);
+            return "closed\n";
+        }
+        Session session = sessions.get(id);
+        if (session == null) throw new HttpError(404, "No session " + id);
+        if (parts.length != 4) throw new HttpError(404, "Not found");
+        String action = parts[3];
+
+        session.lock.lock();
+        try {
+            session.lastUsed = System.nanoTime();
+            Controller controller = session.controller;
+            switch (method + " " + action) {
+                case "POST model" -> controller.setModel(required(query, "name"));
+                case "POST data" -> controller.setData(dataset(dataFile(required(query, "file"))).branch());
+                case "POST run" -> controller.runModel();
+                case "POST script" -> controller.runScript(body(exchange));
+                case "POST formula" -> controller.runFormula(body(exchange));
+                case "POST reset" -> controller.restoreInputs();
+                case "GET results" -> {
+                    exchange.getResponseHeaders().set("Content-Type", "text/tab-separated-values; charset=utf-8");
+                    return controller.getResultAsTSV();
+                }
+                default -> throw new HttpError(404, "Not found: " + method + " " + action);
+            }
+            return "ok\n";
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    private String createSession() {
+        if (sessions.size() >= maxSessions) {
+            closeIdleSessions();
+            if (sessions.size() >= maxSessions) throw new HttpError(503, "Too many sessions");
+        }
+        String id = UUID.randomUUID().toString();
+        sessions.put(id, new Session(resultCache));
+        return id;
+    }
+
+    private void closeIdleSessions() {
+        long now = System.nanoTime();
+        sessions.values().removeIf(session -> now - session.lastUsed > sessionTimeoutNanos && !session.lock.isLocked());
+    }
+
+    /**
+     * Resolves a {@code file=} parameter against the data directory; paths leading out of it, also
+     * through links, get {@code 403}.
+     */
+    private Path dataFile(String name) throws IOException {
+        Path file = dataDirectory.resolve(name).normalize();
+        if (!file.startsWith(dataDirectory)) throw new HttpError(403, "Not in the data directory: " + name);
+        if (!Files.isRegularFile(file)) throw new HttpError(404, "No data file " + name);
+        if (!file.toRealPath().startsWith(dataDirectory)) throw new HttpError(403, "Not in the data directory: " + name);
+        return file;
+    }
+
+    /**
+     * The dataset of a file, read once for all sessions while the file stays the same. Its series
+     * are all parsed up front, so sessions never change the shared tables.
+     */
+    private VariableStore.Snapshot dataset(Path file) throws Exception {
+        Path path = file.toAbsolutePath().normalize();
+        DatasetKey key = new DatasetKey(path, Files.getLastModifiedTime(path), Files.size(path));
+        FutureTask<VariableStore.Snapshot> load = new FutureTask<>(() -> {
+            Controller reader = new Controller().readDataFrom(path.toString());
+            reader.getData().materializeAll();
+            return reader.snapshot();
+        });
+        Future<VariableStore.Snapshot> future;
+        datasetsLock.lock();
+        try {
+            future = datasets.putIfAbsent(key, load);
+        } finally {
+            datasetsLock.unlock();
+        }
+        if (future == null) { // this request reads it, others for the same file wait for it
+            future = load;
+            load.run();
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            datasetsLock.lock();
+            try {
+                datasets.remove(key, future);
+            } finally {
+                datasetsLock.unlock();
+            }
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    private String status() {
+        int cached;
+        datasetsLock.lock();
+        try {
+            cached = datasets.size();
+        } finally {
+            datasetsLock.unlock();
+        }
+        return "sessions\t" + sessions.size() + "\n"
+                + "requests\t" + requests.get() + "\n"
+                + "rejected\t" + rejected.get() + "\n"
+                + "inProgress\t" + (maxConcurrent - slots.availablePermits()) + "\n"
+                + "datasets\t" + cached + "\n"
+                + "scripts\t" + Controller.getScriptCache() + "\n"
+                + "results\t" + resultCache + "\n";
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) throw new HttpError(400, "Missing parameter: " + name);
+        return value;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> values = new HashMap<>();
+        if (rawQuery == null) return values;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            values.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    private static String body(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readNBytes(MAX_BODY + 1);
+            if (bytes.length > MAX_BODY) throw new HttpError(413, "Body larger than " + MAX_BODY + " bytes");
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        }
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8090, maxConcurrent = 64, maxSessions = 1000;
+        long timeout = 30, cacheMb = 256;
+        Path dataDirectory = Paths.get(".");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[i + 1]);
+                case "--max-concurrent" -> maxConcurrent = Integer.parseInt(args[i + 1]);
+                case "--max-sessions" -> maxSessions = Integer.parseInt(args[i + 1]);
+                case "--session-timeout" -> timeout = Long.parseLong(args[i + 1]);
+                case "--cache-mb" -> cacheMb = Long.parseLong(args[i + 1]);
+                case "--data-dir" -> dataDirectory = Paths.get(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        ModelService service = new ModelService(port, maxConcurrent, maxSessions, timeout, cacheMb << 20, dataDirectory);
+        service.start();
+        System.out.println("Listening on http://localhost:" + service.getPort());
+        System.out.println("Token: " + service.getToken());
+    }
+}
@@ -1,11 +1,9 @@
-import interfaces.IModel;
+import registry.ModelRegistry;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
-import javax.tools.JavaCompiler;
-import javax.tools.ToolProvider;
 import java.awt.*;
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.Arrays;
 
 public class ModelingFrameworkSample extends JFrame {
@@ -14,17 +12,23 @@ public class ModelingFrameworkSample extends JFrame {
     private static final String SCRIPTS_FOLDER = "src/scripts/";
     private static final int FRAME_WIDTH = 800;
     private static final int FRAME_HEIGHT = 500;
-    private DefaultTableModel tableModel;
+    private ResultTableModel tableModel;
     private JList<String> modelList, dataList;
-    private final Controller modelController = new Controller();
-    private JButton runModelButton, runScriptButton, createAndRunScriptButton;
+    private final ModelRegistry modelRegistry = new ModelRegistry(Paths.get(MODELS_FOLDER));
+    private final Controller modelController = new Controller(modelRegistry); // picks up edited models
+    private JButton runModelButton, runScriptButton, createAndRunScriptButton, cancelButton;
+    private JProgressBar progressBar;
+    private JLabel statusLabel;
+    private JobQueue jobs; // everything that touches the controller runs here, off the EDT
 
     public ModelingFrameworkSample() {
 
         super("Modelling framework sample");
         initFrame();
+        jobs = new JobQueue(modelController, createJobListener());
         JPanel leftPanel = createLeftPanel();
         JPanel rightPanel = createRightPanel();
+        watchModels();
 
         // Add panels to the main container
         getContentPane().setLayout(new BorderLayout(5, 5));
@@ -45,34 +49,36 @@ public class ModelingFrameworkSample extends JFrame {
 
     private String[] getAvailableModels() {
         try {
-            compileJavaFiles();
+            modelRegistry.reload(); // compiles only what changed
+            return modelRegistry.getModels().toArray(String[]::new);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-
-        File modelsDirectory = new File(MODELS_FOLDER);
-        if (!modelsDirectory.exists() || !modelsDirectory.isDirectory()) {
-            return new String[0];
-        }
-
-        File[] modelFiles = modelsDirectory.listFiles((dir, name) -> name.endsWith(".class"));
-        if (modelFiles == null || modelFiles.length == 0) {
-            return new String[0];
-        }
-
-        return Arrays.stream(modelFiles)
-                .map(file -> file.getName().replace(".class", ""))
-                .filter(className -> isModelValid("models." + className)).sorted()
-                .toArray(String[]::new);
     }
 
-    private boolean isModelValid(String className) {
+    /**
+     * Recompiles and reloads models when their sources are edited while the application runs.
+     */
+    private void watchModels() {
         try {
-            Class<?> clazz = Class.forName(className);
-            return IModel.class.isAssignableFrom(clazz);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+            modelRegistry.startWatching(new ModelRegistry.Listener() {
+                @Override
+                public void modelsReloaded(int generation, java.util.List<String> models) {
+                    SwingUtilities.invokeLater(() -> {
+                        String selected = modelList.getSelectedValue();
+                        modelList.setListData(models.toArray(String[]::new));
+                        if (selected != null) modelList.setSelectedValue(selected, true);
+                        statusLabel.setText("Models reloaded");
+                    });
+                }
+
+                @Override
+                public void reloadFailed(Exception error) {
+                    SwingUtilities.invokeLater(() -> showErrorMessage("Models not reloaded: " + error.getMessage()));
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Cannot watch " + MODELS_FOLDER + ": " + e.getMessage()); // works without reloading
         }
     }
 
@@ -82,7 +88,7 @@ public class ModelingFrameworkSample extends JFrame {
             JOptionPane.showMessageDialog(this, "No directory found OR isn't a Directory.", "Warning", JOptionPane.WARNING_MESSAGE);
             return new String[0];
         }
-        File[] dataFiles = dataDirectory.listFiles(((dir, name) -> name.endsWith(".txt")));
+        File[] dataFiles = dataDirectory.listFiles(((dir, name) -> name.endsWith(".txt") || name.endsWith(".latb")));
         if (dataFiles == null || dataFiles.length == 0) {
             JOptionPane.showMessageDialog(this, "No data files found in the 'data' folder.", "Warning", JOptionPane.WARNING_MESSAGE);
             return new String[0];
@@ -93,26 +99,6 @@ public class ModelingFrameworkSample extends JFrame {
                 .toArray(String[]::new);
     }
 
-    private void compileJavaFiles() throws IOException {
-        File modelsDirectory = new File("src/models/");
-        File[] javaFiles = modelsDirectory.listFiles(((dir, name) -> name.endsWith(".java")));
-        if (javaFiles == null || javaFiles.length == 0) {
-            return;
-        }
-
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        if (compiler == null) {
-            throw new IllegalStateException("Java Compiler is not available.");
-        }
-
-        for (File file : javaFiles) {
-            int result = compiler.run(null, null, null, file.getPath());
-            if (result != 0) {
-                throw new IOException("Failed to compile " + file.getName());
-            }
-        }
-    }
-
     private JPanel createLeftPanel() {
         // --- LEFT SIDE (Panel for choosing model and data.txt) ---
         JPanel leftPanel = new JPanel(new BorderLayout(5, 5));
@@ -151,40 +137,44 @@ public class ModelingFrameworkSample extends JFrame {
     }
 
     private void handleModelSelection() {
-        try {
-            String modelName = modelList.getSelectedValue();
+        String modelName = modelList.getSelectedValue();
+        if (modelName == null) return; // the list was reloaded
+        jobs.submit("Select model " + modelName, () -> {
             modelController.setModel(modelName);
-        } catch (Exception ex) { //if cannot set model ->...
-            runModelButton.setEnabled(false);
-            runScriptButton.setEnabled(false);
-            createAndRunScriptButton.setEnabled(false);
+            return null;
+        }, ignored -> {
+        }, ex -> { //if cannot set model ->...
+            setRunButtonsEnabled(false);
             showErrorMessage(ex.getMessage());
-        }
+        });
     }
 
     private void handleDataSelection() {
         String selectedData = dataList.getSelectedValue();
-        try {
-            if (modelController == null)
-                throw new Exception("Please select model first");
+        jobs.submit("Load " + selectedData, () -> {
             modelController.readDataFrom(DATA_FOLDER + selectedData);
-            refreshTable();
-            runModelButton.setEnabled(modelController.isInitialized());
-            runScriptButton.setEnabled(modelController.isInitialized());
-            createAndRunScriptButton.setEnabled(modelController.isInitialized());
-        } catch (Exception ex) {
-            runModelButton.setEnabled(false);
-            runScriptButton.setEnabled(false);
-            createAndRunScriptButton.setEnabled(false);
+            return tableModel.capture();
+        }, view -> {
+            showTable(view);
+            setRunButtonsEnabled(modelController.isInitialized());
+        }, ex -> {
+            setRunButtonsEnabled(false);
             showErrorMessage(ex.getMessage());
-        }
+        });
+    }
+
+    private void setRunButtonsEnabled(boolean enabled) {
+        runModelButton.setEnabled(enabled);
+        runScriptButton.setEnabled(enabled);
+        createAndRunScriptButton.setEnabled(enabled);
     }
 
     private JPanel createRightPanel() {
         // --- RIGHT SIDE (Panel for table and additional buttons) ---
         JPanel rightPanel = new JPanel(new BorderLayout(5, 5));
-        tableModel = new DefaultTableModel(new Object[][]{}, new String[]{}); // row1Col1, r2c2 for OBJ[][] and String[] are headers
+        tableModel = new ResultTableModel(modelController); // reads cells straight from the controller
         JTable table = new JTable(tableModel);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF); // long horizons scroll instead of squeezing columns
         JScrollPane scrollPane = new JScrollPane(table);
         rightPanel.add(scrollPane, BorderLayout.CENTER);
 
@@ -196,7 +186,29 @@ public class ModelingFrameworkSample extends JFrame {
         createAndRunScriptButton.setEnabled(false);
         bottomPanel.add(runScriptButton);
         bottomPanel.add(createAndRunScriptButton);
-        rightPanel.add(bottomPanel, BorderLayout.SOUTH);
+
+        // --- Status of background jobs ---
+        JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        statusLabel = new JLabel("Ready");
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(e -> {
+            jobs.cancelAll();
+            if (jobs.isBusy()) { // the running job hasn't stopped yet, the table stays read-only until it does
+                statusLabel.setText("Cancelling...");
+                cancelButton.setEnabled(false);
+            }
+        });
+        statusPanel.add(statusLabel);
+        statusPanel.add(progressBar);
+        statusPanel.add(cancelButton);
+
+        JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(bottomPanel, BorderLayout.NORTH);
+        southPanel.add(statusPanel, BorderLayout.SOUTH);
+        rightPanel.add(southPanel, BorderLayout.SOUTH);
 
         runScriptButton.addActionListener(e -> onRunScriptButtonClicked());
         createAndRunScriptButton.addActionListener(e -> onCreateAndRunAdHocScript());
@@ -218,13 +230,10 @@ public class ModelingFrameworkSample extends JFrame {
         int result = fileChooser.showOpenDialog(this);
         if (result == JFileChooser.APPROVE_OPTION) {
             File scriptFile = fileChooser.getSelectedFile();
-            try {
+            jobs.submit("Script " + scriptFile.getName(), () -> {
                 modelController.runScriptFromFile(scriptFile.getPath());
-                refreshTable();
-            } catch (Exception e) {
-                showErrorMessage("Error reading or executing script: " + e.getMessage());
-                e.printStackTrace();
-            }
+                return tableModel.capture();
+            }, this::showTable, e -> showErrorMessage("Error reading or executing script", e));
         }
     }
 
@@ -232,29 +241,45 @@ public class ModelingFrameworkSample extends JFrame {
      * Executes a script passed as a code string.
      */
     private void executeScriptFromString(String scriptText) {
-        try {
+        jobs.submit("Ad hoc script", () -> {
             modelController.runScript(scriptText);
-            refreshTable();
-        } catch (Exception ex) {
-            showErrorMessage(ex.getMessage());
-        }
+            return tableModel.capture();
+        }, view -> {
+            showTable(view);
+            JOptionPane.showMessageDialog(
+                    this,
+                    "Ad hoc script executed successfully!",
+                    "Success",
+                    JOptionPane.INFORMATION_MESSAGE
+            );
+        }, ex -> showErrorMessage("Error reading or executing script", ex));
     }
 
     private void showErrorMessage(String text) {
         JOptionPane.showMessageDialog(this, text, "Error", JOptionPane.ERROR_MESSAGE);
     }
 
+    /**
+     * Reports a failed job with the message of the error and of each of its causes, where the
+     * script's or the model's own message usually is.
+     */
+    private void showErrorMessage(String text, Throwable error) {
+        StringBuilder message = new StringBuilder(text).append(':');
+        for (Throwable cause = error; cause != null && cause.getCause() != cause; cause = cause.getCause()) {
+            String line = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            if (message.indexOf(line) < 0) message.append('\n').append(line); // wrappers often repeat their cause
+        }
+        showErrorMessage(message.toString());
+    }
+
     /**
      * Handles the "Run model" button click event.
      */
     private void onRunModelButtonClicked() {
-        try {
+        jobs.submit("Run model", () -> {
             modelController.runModel();
-            refreshTable();
-        } catch (Exception ex) {
-            showErrorMessage("Error running model: " + ex.getMessage());
-            ex.printStackTrace();
-        }
+            return tableModel.capture();
+        }, this::showTable, ex -> showErrorMessage("Error running model", ex));
     }
 
     private void onCreateAndRunAdHocScript() {
@@ -279,41 +304,43 @@ public class ModelingFrameworkSample extends JFrame {
         );
         if (option == JOptionPane.OK_OPTION) {
             String scriptText = textArea.getText();
-            try {
-                //Calls method which takes and executing String
-                executeScriptFromString(scriptText);
-
-                JOptionPane.showMessageDialog(
-                        this,
-                        "Ad hoc script executed successfully!",
-                        "Success",
-                        JOptionPane.INFORMATION_MESSAGE
-                );
-            } catch (Exception e) {
-                showErrorMessage("Error reading or executing script: " + e.getMessage());
-                e.printStackTrace();
-            }
+            //Calls method which takes and executing String, reports success or failure when it's done
+            executeScriptFromString(scriptText);
         }
     }
 
-    private void refreshTable() {
-        String tsvResults = modelController.getResultAsTSV();
-        String[][] data = parseTsvForTable(tsvResults);
-        if (data.length == 0) {
+    private void showTable(ResultTableModel.View view) {
+        tableModel.show(view);
+        if (tableModel.getRowCount() == 0 && tableModel.getColumnCount() == 0) {
             JOptionPane.showMessageDialog(this, "No data to display.", "Warning", JOptionPane.WARNING_MESSAGE);
-            return;
         }
-        String[] columnNames = data[0]; //нулевая строка заголовки
-        String[][] tableData = Arrays.copyOfRange(data, 1, data.length); // первая заголовки
-        tableModel.setDataVector(tableData, columnNames);
     }
 
-    private String[][] parseTsvForTable(String csv) {
-        String[] rows = csv.split("\n");
-        String[][] data = new String[rows.length][];
-        for (int i = 0; i < rows.length; i++) {
-            data[i] = rows[i].split("\t");
-        }
-        return data;
+    private JobQueue.Listener createJobListener() {
+        return new JobQueue.Listener() {
+            @Override
+            public void jobStarted(String name, int waiting) {
+                tableModel.setEditable(false);
+                statusLabel.setText(waiting > 0 ? name + " (" + waiting + " waiting)" : name);
+                progressBar.setIndeterminate(true); // until the job reports progress
+                progressBar.setVisible(true);
+                cancelButton.setEnabled(true);
+            }
+
+            @Override
+            public void jobProgress(String name, double fraction) {
+                progressBar.setIndeterminate(false);
+                progressBar.setValue((int) Math.round(fraction * 100));
+            }
+
+            @Override
+            public void jobFinished(String name, int waiting) {
+                if (jobs.isBusy()) return; // the next job reports itself
+                tableModel.setEditable(true);
+                statusLabel.setText("Ready");
+                progressBar.setVisible(false);
+                cancelButton.setEnabled(false);
+            }
+        };
     }
 }
@@ -0,0 +1,216 @@
+import store.VariableStore;
+import sweep.Perturbation;
+import sweep.SeriesStatistics;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a model many times over perturbed copies of one base dataset and collects per-period
+ * statistics of selected outputs. Grid perturbations are combined exhaustively; for every grid
+ * point {@code drawsPerPoint} random draws are made. Draw {@code k} always uses the same random
+ * values for a given seed, whatever thread runs it, and the results are added to the statistics in
+ * draw order. The quantile estimates depend on that order, so this is what makes a run repeatable:
+ * the same seed gives the same statistics whatever the parallelism.
+ * <pre>
+ * Map&lt;String, SeriesStatistics&gt; stats = new ParameterSweep("Model1", controller.getData())
+ *         .perturb(Perturbation.random("twKI", Perturbation.Mode.MULTIPLY, Distribution.normal(1, 0.01)))
+ *         .output("PKB")
+ *         .run(10_000);
+ * </pre>
+ */
+public class ParameterSweep {
+    private static final int CHUNK = 256; // consecutive draws a worker runs before handing them over
+
+    private final String modelName;
+    private final VariableStore.Snapshot base;
+    private final List<Perturbation> perturbations = new ArrayList<>();
+    private final List<String> outputs = new ArrayList<>();
+    private double[] quantiles = {0.05, 0.5, 0.95};
+    private long seed = 1;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public ParameterSweep(String modelName, VariableStore base) {
+        this.modelName = modelName;
+        VariableStore data = base.copy(); // later changes to the caller's data don't affect the sweep
+        data.materializeAll(); // parsed once here, not by every draw
+        this.base = data.snapshot();
+    }
+
+    public ParameterSweep perturb(Perturbation perturbation) {
+        if (base.branch().get(perturbation.getVariable()) == null) {
+            throw new IllegalArgumentException("No series to perturb: " + perturbation.getVariable());
+        }
+        perturbations.add(perturbation);
+        return this;
+    }
+
+    public ParameterSweep output(String... names) {
+        outputs.addAll(List.of(names));
+        return this;
+    }
+
+    public ParameterSweep quantiles(double... levels) {
+        this.quantiles = levels.clone();
+        return this;
+    }
+
+    public ParameterSweep seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public ParameterSweep parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public long gridPoints() {
+        long points = 1;
+        for (Perturbation perturbation : perturbations) {
+            points = Math.multiplyExact(points, perturbation.gridSize());
+        }
+        return points;
+    }
+
+    /**
+     * Runs {@code gridPoints() * drawsPerPoint} draws on all cores and returns the statistics of
+     * every output, in the order the outputs were added. If a draw fails, the other workers stop and
+     * the first failure is thrown.
+     */
+    public Map<String, SeriesStatistics> run(int drawsPerPoint) throws InterruptedException {
+        if (outputs.isEmpty()) {
+            throw new IllegalStateException("No outputs selected");
+        }
+        long total = Math.multiplyExact(gridPoints(), drawsPerPoint);
+        Map<String, SeriesStatistics> statistics = new LinkedHashMap<>();
+        for (String output : outputs) {
+            statistics.put(output, new SeriesStatistics(base.branch().size(), quantiles));
+        }
+
+        int workers = (int) Math.max(1, Math.min(parallelism, total));
+        Folder folder = new Folder(total, workers, statistics);
+        ExecutorService pool = new ForkJoinPool(workers);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                tasks.add(() -> {
+                    folder.runChunks(drawsPerPoint);
+                    return null;
+                });
+            }
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new RuntimeException("Sweep failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (folder.failure.get() != null) {
+            throw folder.failure.get();
+        }
+        return statistics;
+    }
+
+    /**
+     * Hands out chunks of consecutive draws and adds finished chunks to the statistics in chunk
+     * order. A chunk finished early waits for the ones before it; at most two per worker are taken
+     * but not yet added, which bounds the results held in memory. After a failed draw no chunk is
+     * added any more, so a worker that stops gives its permit back for the next waiting one to see
+     * the failure and stop as well.
+     */
+    private final class Folder {
+        private final long total;
+        private final long chunks;
+        private final Map<String, SeriesStatistics> statistics;
+        private final AtomicLong nextChunk = new AtomicLong();
+        private final Semaphore window;
+        private final Map<Long, List<double[][]>> finished = new HashMap<>(); // guarded by itself
+        private final AtomicReference<RuntimeException> failure = new AtomicReference<>(); // the first one
+        private long nextToAdd;
+
+        Folder(long total, int workers, Map<String, SeriesStatistics> statistics) {
+            this.total = total;
+            this.chunks = (total + CHUNK - 1) / CHUNK;
+            this.statistics = statistics;
+            this.window = new Semaphore(2 * workers);
+        }
+
+        void runChunks(int drawsPerPoint) throws InterruptedException {
+            while (!Thread.currentThread().isInterrupted()) {
+                window.acquire();
+                long chunk = nextChunk.getAndIncrement();
+                if (chunk >= chunks || failure.get() != null) {
+                    window.release();
+                    return;
+                }
+                List<double[][]> results = new ArrayList<>(CHUNK);
+                long draw = chunk * CHUNK;
+                try {
+                    for (long end = Math.min(total, draw + CHUNK); draw < end && failure.get() == null; draw++) {
+                        results.add(runDraw(draw, drawsPerPoint));
+                    }
+                } catch (RuntimeException | Error e) {
+                    failure.compareAndSet(null, new RuntimeException("Sweep failed at draw " + draw, e));
+                }
+                if (failure.get() != null) {
+                    window.release();
+                    return;
+                }
+                synchronized (finished) {
+                    finished.put(chunk, results);
+                    for (List<double[][]> next; (next = finished.remove(nextToAdd)) != null; nextToAdd++) {
+                        add(next);
+                        window.release();
+                    }
+                }
+            }
+        }
+
+        private void add(List<double[][]> results) {
+            int i = 0;
+            for (SeriesStatistics stats : statistics.values()) {
+                for (double[][] draw : results) {
+                    stats.add(draw[i]);
+                }
+                i++;
+            }
+        }
+    }
+
+    private double[][] runDraw(long draw, int drawsPerPoint) {
+        VariableStore data = base.branch(); // only perturbed and model-bound series get copied
+        SplittableRandom random = new SplittableRandom(seed ^ (draw * 0x9E3779B97F4A7C15L));
+        long point = draw / drawsPerPoint;
+        for (Perturbation perturbation : perturbations) {
+            double value;
+            if (perturbation.isGrid()) {
+                value = perturbation.gridValue((int) (point % perturbation.gridSize()));
+                point /= perturbation.gridSize();
+            } else {
+                value = perturbation.getDistribution().sample(random);
+            }
+            perturbation.apply(data.mutable(perturbation.getVariable()), value);
+        }
+
+        Controller controller = new Controller();
+        controller.setModel(modelName);
+        controller.setData(data).runModel();
+        double[][] results = new double[outputs.size()][];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = data.get(outputs.get(i));
+            if (results[i] == null) {
+                throw new IllegalStateException("Model " + modelName + " produced no series " + outputs.get(i));
+            }
+        }
+        return results;
+    }
+}
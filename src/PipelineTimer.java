@@ -0,0 +1,151 @@
+import binding.BindingPlan;
+import models.Model1;
+import timing.DatasetGenerator;
+import timing.SmokeTimer;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Smoke timings of each stage of the controller pipeline on generated datasets: reading (text and
+ * snapshot), binding, {@code Model1}/{@code Model3}, the sample scripts and the TSV export.
+ * Warm numbers are averages after warm-up in this JVM; cold ones time the first call in fresh JVMs,
+ * scripting engine and class loading included. They show a stage that got markedly slower; see
+ * {@link SmokeTimer} for what they can't show.
+ * <p>
+ * Usage: {@code PipelineTimer [--shapes 100x100,1000x1000] [--iterations 10] [--warmups 5]
+ * [--forks 5] [--out timings.tsv] [--compare baseline.tsv] [--threshold 0.5]}
+ * <p>
+ * With {@code --compare} the exit code is 1 if a stage got slower than the threshold allows.
+ */
+public class PipelineTimer {
+    private static final List<String> SCRIPTS = List.of("script1", "model2script1", "model2script2", "model3script1");
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("--cold")) {
+            System.out.println(coldRun(args[1], args[2])); // in a fork
+            return;
+        }
+        String shapes = "100x100,1000x1000";
+        int iterations = 10, warmups = 5, forks = 5;
+        Path out = Paths.get("timings.tsv"), baseline = null;
+        double threshold = 0.5; // smaller changes are within what these timings can tell apart
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--shapes" -> shapes = args[i + 1];
+                case "--iterations" -> iterations = Integer.parseInt(args[i + 1]);
+                case "--warmups" -> warmups = Integer.parseInt(args[i + 1]);
+                case "--forks" -> forks = Integer.parseInt(args[i + 1]);
+                case "--out" -> out = Paths.get(args[i + 1]);
+                case "--compare" -> baseline = Paths.get(args[i + 1]);
+                case "--threshold" -> threshold = Double.parseDouble(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+
+        SmokeTimer timer = new SmokeTimer(warmups, iterations, 100);
+        for (String shape : shapes.split(",")) {
+            String[] size = shape.split("x");
+            int variables = Integer.parseInt(size[0]), periods = Integer.parseInt(size[1]);
+            String params = "variables=" + variables + ",periods=" + periods;
+            Path text = Files.createTempFile("timing", ".txt");
+            Path snapshot = Files.createTempFile("timing", ".latb");
+            try {
+                DatasetGenerator.generate(text, variables, periods, 42);
+                new Controller().readDataFrom(text.toString()).writeSnapshotTo(snapshot.toString());
+                warm(timer, params, text, snapshot);
+                for (String scenario : List.of("readAndRunModel1", "runScript.script1")) {
+                    double[] samples = new double[forks];
+                    for (int f = 0; f < forks; f++) samples[f] = fork(scenario, text) / 1e6;
+                    timer.add(new SmokeTimer.Result("cold." + scenario, params, "ss", samples));
+                }
+            } finally {
+                Files.deleteIfExists(text);
+                Files.deleteIfExists(snapshot);
+            }
+        }
+
+        timer.write(out);
+        System.out.println("Results written to " + out);
+        if (baseline != null) {
+            List<String> regressions = timer.compare(baseline, threshold);
+            if (!regressions.isEmpty()) {
+                System.err.println("Regressions: " + regressions);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void warm(SmokeTimer timer, String params, Path text, Path snapshot) throws Exception {
+        timer.measure("readDataFrom.text", params, () -> new Controller().readDataFrom(text.toString()));
+        timer.measure("readDataFrom.boundOnly", params, () -> {
+            Controller controller = new Controller();
+            controller.setModel("Model1");
+            controller.setBoundVariablesOnly(true).readDataFrom(text.toString());
+        });
+        timer.measure("readDataFrom.snapshot", params, () -> new Controller().readDataFrom(snapshot.toString()).getData().materializeAll());
+
+        Controller controller = new Controller();
+        controller.setModel("Model1");
+        controller.readDataFrom(text.toString()).runModel();
+        controller.setData(controller.getData()); // with PKB, as the scripts expect
+
+        Model1 model = new Model1();
+        BindingPlan plan = BindingPlan.of(Model1.class);
+        timer.measure("bindDataModel.Model1", params, () -> plan.bind(model, controller.getData()));
+
+        for (String modelName : List.of("Model1", "Model3")) {
+            controller.setModel(modelName);
+            timer.measure("runModel." + modelName, params, controller::restoreInputs, controller::runModel);
+        }
+        for (String script : SCRIPTS) {
+            String scriptText = Files.readString(scriptPath(script));
+            controller.setStaticScripts(false);
+            timer.measure("runScript." + script, params, controller::restoreInputs, () -> controller.runScript(scriptText));
+            controller.setStaticScripts(true);
+            timer.measure("runScript.static." + script, params, controller::restoreInputs, () -> controller.runScript(scriptText));
+        }
+        controller.setStaticScripts(false).restoreInputs();
+        timer.measure("getResultAsTSV", params, controller::getResultAsTSV);
+    }
+
+    private static Path scriptPath(String script) {
+        return Paths.get("src", "scripts", script + ".groovy");
+    }
+
+    /**
+     * Times the first call of a scenario in this JVM.
+     */
+    private static long coldRun(String scenario, String dataFile) throws Exception {
+        long start = System.nanoTime();
+        Controller controller = new Controller();
+        controller.setModel("Model1");
+        controller.readDataFrom(dataFile).runModel();
+        if (scenario.equals("readAndRunModel1")) return System.nanoTime() - start;
+
+        String scriptText = Files.readString(scriptPath(scenario.substring("runScript.".length())));
+        start = System.nanoTime();
+        controller.runScript(scriptText);
+        return System.nanoTime() - start;
+    }
+
+    private static long fork(String scenario, Path dataFile) throws Exception {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                PipelineTimer.class.getName(), "--cold", scenario, dataFile.toString())
+                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line; (line = reader.readLine()) != null; ) lines.add(line);
+        }
+        if (process.waitFor() != 0 || lines.isEmpty()) {
+            throw new IllegalStateException("Fork failed for " + scenario + ": " + lines);
+        }
+        return Long.parseLong(lines.get(lines.size() - 1).trim());
+    }
+}
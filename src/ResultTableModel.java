@@ -0,0 +1,172 @@
+import export.DoubleFormatter;
+import store.VariableStore;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.Arrays;
+
+/**
+ * Shows the controller's variables in a {@link javax.swing.JTable} without copying them: a row per
+ * variable, a column per period. Cells are parsed and formatted when the table asks for them, which
+ * it does only for the visible ones, so deferred columns nobody scrolls to are never parsed.
+ * <p>
+ * After every {@link #refresh()} the data is snapshotted, so models and scripts that change a
+ * series get a copy of it. The next refresh then finds the changed rows by comparing references
+ * and fires events only for those.
+ */
+public class ResultTableModel extends AbstractTableModel {
+    private final Controller controller;
+    private final DoubleFormatter formatter = DoubleFormatter.shortest();
+    private final char[] cell = new char[DoubleFormatter.MAX_LENGTH];
+    private VariableStore data;  // the controller's store, for edits
+    private VariableStore shown; // a branch of the snapshot taken by capture(), for reading
+    private String[] periods = new String[0];
+    private String[] names = new String[0];
+    private double[][] arrays = new double[0][];
+    private boolean editable = true;
+
+    public ResultTableModel(Controller controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * What the table shows, taken by {@link #capture()}: the store, a branch of its snapshot, the
+     * names of its rows and the arrays of the rows that were parsed already (null for deferred ones).
+     */
+    public record View(VariableStore data, VariableStore shown, String[] periods, String[] names, double[][] arrays) {
+    }
+
+    /**
+     * Picks up the controller's current data and tells the table what changed since the last call.
+     */
+    public void refresh() {
+        show(capture());
+    }
+
+    /**
+     * Takes what the table should show from the controller. Call it on the thread that uses the
+     * controller, then pass the result to {@link #show} on the Event Dispatch Thread.
+     */
+    public View capture() {
+        VariableStore current = controller.getData();
+        String[] newPeriods = current.getPeriods() == null ? new String[0] : current.getPeriods();
+        int count = current.columnCount();
+        String[] newNames = new String[count];
+        double[][] newArrays = new double[count][];
+        for (int i = 0; i < count; i++) {
+            newNames[i] = current.name(i);
+            newArrays[i] = current.peek(newNames[i]); // no parsing here, getValueAt does that
+        }
+        // from now on, a write to a series replaces its array, so the branch keeps showing these
+        return new View(current, current.branch(), newPeriods, newNames, newArrays);
+    }
+
+    /**
+     * Shows a captured state, firing events only for the rows that changed since the last one.
+     */
+    public void show(View view) {
+        VariableStore current = view.data();
+        String[] newPeriods = view.periods();
+        String[] newNames = view.names();
+        double[][] newArrays = view.arrays();
+        int count = newNames.length;
+        boolean structureChanged = current != data || !Arrays.equals(periods, newPeriods);
+        String[] oldNames = names;
+        double[][] oldArrays = arrays;
+        data = current;
+        shown = view.shown();
+        periods = newPeriods;
+        names = newNames;
+        arrays = newArrays;
+        if (structureChanged) {
+            fireTableStructureChanged();
+            return;
+        }
+        int common = Math.min(oldNames.length, count);
+        for (int i = 0; i < common; i++) {
+            if (!oldNames[i].equals(newNames[i])) { // a variable was removed, rows moved
+                fireTableDataChanged();
+                return;
+            }
+        }
+        int first = -1;
+        for (int i = 0; i <= common; i++) {
+            // a row deferred in both is the same unparsed column: the store only defers while reading a file
+            boolean changed = i < common && oldArrays[i] != newArrays[i] && !Arrays.equals(oldArrays[i], newArrays[i]);
+            if (changed && first < 0) {
+                first = i;
+            } else if (!changed && first >= 0) {
+                fireTableRowsUpdated(first, i - 1);
+                first = -1;
+            }
+        }
+        if (count > oldNames.length) {
+            fireTableRowsInserted(oldNames.length, count - 1);
+        } else if (count < oldNames.length) {
+            fireTableRowsDeleted(count, oldNames.length - 1);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return names.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return periods.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return periods[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) return names[row];
+        double[] values = values(row);
+        if (values == null || column - 1 >= values.length) return "";
+        return new String(cell, 0, formatter.format(values[column - 1], cell, 0));
+    }
+
+    /**
+     * Turns cell editing off, e.g. while a background job works on the controller.
+     */
+    public void setEditable(boolean editable) {
+        this.editable = editable;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        if (!editable || column == 0) return false;
+        double[] values = values(row);
+        return values != null && column - 1 < values.length;
+    }
+
+    /**
+     * The values of a row, parsed on first use; null if they turned out not to be numbers.
+     */
+    private double[] values(int row) {
+        int i = shown.indexOf(names[row]); // by name: a column that fails to parse removes itself
+        return i < 0 ? null : shown.column(i);
+    }
+
+    /**
+     * Edits a value of the controller's data; both '.' and ',' work as decimal separator.
+     */
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        double parsed;
+        try {
+            parsed = Double.parseDouble(value.toString().trim().replace(',', '.'));
+        } catch (NumberFormatException ex) {
+            return; // keep the old value
+        }
+        double[] values = controller.getData() == data ? data.mutable(names[row]) : null;
+        if (values == null) return; // the data changed since it was shown
+        values[column - 1] = parsed;
+        arrays[row] = values;
+        shown = data.branch();
+        fireTableCellUpdated(row, column);
+    }
+}
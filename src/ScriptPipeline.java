@@ -0,0 +1,234 @@
+import binding.BindingPlan;
+import formula.Formula;
+import scripting.ScriptAnalysis;
+import store.VariableStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Models, scripts and formulas run as steps of a pipeline over one dataset. The variables each step
+ * reads and writes are known up front (bound fields, the script's syntax tree, the formula), which
+ * gives the order between steps: a step runs after the steps whose results it reads, and after the
+ * earlier steps it would overwrite. Steps that don't depend on each other run in parallel, each on
+ * its own branch of the data.
+ * <p>
+ * After a first {@link #run}, inputs are changed with {@link #set} and the next run repeats only
+ * the steps affected by the change; the results of the others are reused. The outcome is the same
+ * as running all steps one after the other in the order they were added.
+ */
+public class ScriptPipeline {
+    private final List<Step> steps = new ArrayList<>();
+    private final int parallelism;
+    private boolean staticScripts;
+
+    private VariableStore result;                 // what the last run produced
+    private VariableStore.Snapshot inputs;        // what it started from
+    private final List<Map<String, Object>> outputs = new ArrayList<>(); // per step, null: must run
+    private final Set<String> changed = new LinkedHashSet<>();
+
+    /**
+     * The work of a step, done on a controller holding the step's branch of the data.
+     */
+    @FunctionalInterface
+    public interface Action {
+        void run(Controller controller) throws Exception;
+    }
+
+    /**
+     * A step and its place in the graph: {@code after} are the earlier steps it has to wait for,
+     * {@code inputsFrom} those of them whose results it reads.
+     */
+    public record Step(String name, Set<String> reads, Set<String> writes, Action action,
+                       int level, BitSet after, BitSet inputsFrom) {
+    }
+
+    public ScriptPipeline() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ScriptPipeline(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Compiles the scripts with {@code @CompileStatic}, see {@link Controller#setStaticScripts}.
+     */
+    public ScriptPipeline setStaticScripts(boolean enabled) {
+        this.staticScripts = enabled;
+        return this;
+    }
+
+    public ScriptPipeline addModel(String modelName) {
+        Set<String> fields;
+        try {
+            fields = BindingPlan.of(Class.forName("models." + modelName)).getFieldNames();
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Unknown model: " + modelName, e);
+        }
+        return add("model " + modelName, fields, fields, controller -> {
+            controller.setModel(modelName);
+            controller.runModel();
+        });
+    }
+
+    public ScriptPipeline addScript(String name, String scriptText) {
+        ScriptAnalysis analysis = Controller.getScriptCache().analyze(scriptText);
+        Set<String> writes = new LinkedHashSet<>();
+        for (String variable : analysis.getWrites()) {
+            if (variable.length() > 1) writes.add(variable); // the controller keeps only these
+        }
+        return add(name, analysis.getReads(), writes, controller -> controller.runScript(scriptText));
+    }
+
+    public ScriptPipeline addScriptFile(Path file) throws IOException {
+        return addScript(file.getFileName().toString(), Files.readString(file));
+    }
+
+    public ScriptPipeline addFormula(String name, String formulaText) {
+        Formula formula = Formula.of(formulaText);
+        return add(name, formula.getInputs(), formula.getTargets(), controller -> controller.runFormula(formulaText));
+    }
+
+    /**
+     * Adds a step whose variables are given rather than found out.
+     */
+    public ScriptPipeline add(String name, Set<String> reads, Set<String> writes, Action action) {
+        BitSet after = new BitSet();
+        BitSet inputsFrom = new BitSet();
+        int level = 0;
+        for (int i = 0; i < steps.size(); i++) {
+            Step earlier = steps.get(i);
+            boolean readsResult = !Collections.disjoint(earlier.writes(), reads);
+            if (readsResult || !Collections.disjoint(earlier.writes(), writes) || !Collections.disjoint(earlier.reads(), writes)) {
+                after.set(i);
+                level = Math.max(level, earlier.level() + 1);
+            }
+            if (readsResult) inputsFrom.set(i);
+        }
+        steps.add(new Step(name, Set.copyOf(reads), Set.copyOf(writes), action, level, after, inputsFrom));
+        outputs.add(null);
+        return this;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Changes an input for the next {@link #run}, which then repeats only the steps that depend on it.
+     * The values are copied, so later changes to the array don't reach the pipeline; call this again.
+     */
+    public ScriptPipeline set(String name, double[] values) {
+        if (inputs == null) {
+            throw new IllegalStateException("The pipeline has not run yet");
+        }
+        VariableStore data = inputs.branch();
+        data.put(name, values.clone());
+        inputs = data.snapshot();
+        changed.add(name);
+        return this;
+    }
+
+    /**
+     * Runs the steps on the controller's data and leaves the results there. If the data is what the
+     * previous run produced, only steps affected by {@link #set} since then run again; any other
+     * data is taken as new inputs and everything runs.
+     *
+     * @return the names of the steps that ran, in order
+     */
+    public List<String> run(Controller controller) throws Exception {
+        boolean everything = controller.getData() != result;
+        if (everything) {
+            inputs = controller.getData().snapshot();
+        }
+        boolean[] dirty = new boolean[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            Step step = steps.get(i);
+            dirty[i] = everything || outputs.get(i) == null || !Collections.disjoint(step.reads(), changed);
+            for (int j = step.inputsFrom().nextSetBit(0); j >= 0 && !dirty[i]; j = step.inputsFrom().nextSetBit(j + 1)) {
+                dirty[i] = dirty[j];
+            }
+        }
+
+        List<Map<String, Object>> produced = new ArrayList<>(outputs);
+        List<String> ran = new ArrayList<>();
+        VariableStore data = inputs.branch();
+        int levels = steps.stream().mapToInt(Step::level).max().orElse(-1) + 1;
+        ForkJoinPool pool = null;
+        try {
+            for (int level = 0; level < levels; level++) {
+                VariableStore.Snapshot before = data.snapshot(); // every step of the level starts here
+                List<Integer> wave = new ArrayList<>();
+                for (int i = 0; i < steps.size(); i++) {
+                    if (steps.get(i).level() == level && dirty[i]) wave.add(i);
+                }
+                if (wave.size() > 1 && parallelism > 1) {
+                    if (pool == null) pool = new ForkJoinPool(parallelism);
+                    List<Future<Map<String, Object>>> futures = new ArrayList<>();
+                    for (int i : wave) {
+                        Step step = steps.get(i);
+                        futures.add(pool.submit(() -> runStep(step, before)));
+                    }
+                    for (int k = 0; k < wave.size(); k++) {
+                        produced.set(wave.get(k), result(steps.get(wave.get(k)), futures.get(k)));
+                    }
+                } else {
+                    for (int i : wave) {
+                        produced.set(i, runStep(steps.get(i), before));
+                    }
+                }
+                for (int i = 0; i < steps.size(); i++) { // merged in the order the steps were added
+                    if (steps.get(i).level() != level) continue;
+                    produced.get(i).forEach(data::putValue);
+                    if (dirty[i]) ran.add(steps.get(i).name());
+                }
+            }
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+
+        VariableStore results = inputs.branch(); // series in the order a sequential run would add them
+        for (int i = 0; i < steps.size(); i++) {
+            produced.get(i).forEach(results::putValue);
+            outputs.set(i, produced.get(i));
+        }
+        changed.clear();
+        result = results;
+        controller.setData(results); // freezes it, so the saved outputs stay as they are
+        return ran;
+    }
+
+    private Map<String, Object> runStep(Step step, VariableStore.Snapshot before) throws Exception {
+        VariableStore data = before.branch();
+        try {
+            Controller controller = new Controller().setStaticScripts(staticScripts);
+            controller.setData(data);
+            step.action().run(controller);
+        } catch (Exception e) {
+            throw new Exception("Step failed: " + step.name(), e);
+        }
+        Map<String, Object> written = new LinkedHashMap<>();
+        for (String name : step.writes()) {
+            Object value = data.readValue(name);
+            if (value != null) written.put(name, value);
+        }
+        return written;
+    }
+
+    private static Map<String, Object> result(Step step, Future<Map<String, Object>> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : new IllegalStateException("Step failed: " + step.name(), e.getCause());
+        }
+    }
+}
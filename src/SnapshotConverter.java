@@ -0,0 +1,29 @@
+import export.ColumnarFile;
+
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts a LATA text file into a snapshot, or a snapshot back into a text file (TSV, as exported).
+ * The direction follows from what the input is.
+ */
+public class SnapshotConverter {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: SnapshotConverter <input> <output>");
+            System.exit(2);
+        }
+        Path input = Paths.get(args[0]);
+        Controller controller = new Controller().readDataFrom(args[0]);
+        if (ColumnarFile.isColumnarFile(input)) {
+            try (Writer out = Files.newBufferedWriter(Paths.get(args[1]))) {
+                controller.writeResultAsTSV(out, -1);
+            }
+        } else {
+            controller.writeSnapshotTo(args[1]);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package binding;
+
+import annotations.Bind;
+import store.VariableStore;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * Everything the controller needs to bind data into a model class: the {@link Bind} fields as
+ * method handles and the {@code run} method. Built once per class and cached in a {@link ClassValue}.
+ */
+public final class BindingPlan {
+    private static final ClassValue<BindingPlan> PLANS = new ClassValue<>() {
+        @Override
+        protected BindingPlan computeValue(Class<?> type) {
+            return new BindingPlan(type);
+        }
+    };
+
+    private final Class<?> modelClass;
+    private final List<BoundField> fields;
+    private final Map<String, BoundField> fieldsByName;
+    private final MethodHandle run; // (Object)void, null if the class has no run()
+
+    private BindingPlan(Class<?> modelClass) {
+        this.modelClass = modelClass;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Set<String> readOnly = ReadOnlyFields.of(modelClass);
+        List<BoundField> boundFields = new ArrayList<>();
+        Map<String, BoundField> byName = new LinkedHashMap<>();
+        for (Field field : modelClass.getDeclaredFields()) {
+            if (!field.isAnnotationPresent(Bind.class) || Modifier.isStatic(field.getModifiers())) continue;
+            field.setAccessible(true);
+            try {
+                BoundField boundField = new BoundField(modelClass, field.getName(), field.getType(), readOnly.contains(field.getName()),
+                        lookup.unreflectGetter(field).asType(MethodType.methodType(Object.class, Object.class)),
+                        Modifier.isFinal(field.getModifiers()) ? null
+                                : lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+                boundFields.add(boundField);
+                byName.put(boundField.name(), boundField);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access @Bind field " + modelClass.getName() + "." + field.getName(), e);
+            }
+        }
+        this.fields = List.copyOf(boundFields);
+        this.fieldsByName = Collections.unmodifiableMap(byName);
+        this.run = findRun(modelClass, lookup);
+    }
+
+    private static MethodHandle findRun(Class<?> modelClass, MethodHandles.Lookup lookup) {
+        try {
+            Method method = modelClass.getMethod("run");
+            method.setAccessible(true);
+            return lookup.unreflect(method).asType(MethodType.methodType(void.class, Object.class));
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot access run() of " + modelClass.getName(), e);
+        }
+    }
+
+    public static BindingPlan of(Class<?> modelClass) {
+        return PLANS.get(modelClass);
+    }
+
+    public Class<?> getModelClass() {
+        return modelClass;
+    }
+
+    public List<BoundField> getFields() {
+        return fields;
+    }
+
+    public Set<String> getFieldNames() {
+        return fieldsByName.keySet();
+    }
+
+    public BoundField getField(String name) {
+        return fieldsByName.get(name);
+    }
+
+    public boolean hasRun() {
+        return run != null;
+    }
+
+    /**
+     * Sets every {@link Bind} field that has a value in the store. Series are bound without copying;
+     * those shared with a snapshot are copied first unless the model only reads them, see
+     * {@link BoundField#isReadOnly()}.
+     */
+    public void bind(Object model, VariableStore data) {
+        for (BoundField field : fields) {
+            if (data.containsValue(field.name())) {
+                field.set(model, field.isReadOnly() ? data.readValue(field.name()) : data.getValue(field.name()));
+            }
+        }
+    }
+
+    public void run(Object model) throws Throwable {
+        if (run == null) {
+            throw new NoSuchMethodException("The 'run' method is not defined in " + modelClass.getName());
+        }
+        run.invokeExact(model);
+    }
+
+    /**
+     * Copies every {@link Bind} field of the model back into the store.
+     */
+    public void readBack(Object model, VariableStore data) {
+        for (BoundField field : fields) {
+            data.putValue(field.name(), field.get(model));
+        }
+    }
+
+    /**
+     * One {@link Bind} field. The accepted value type is resolved once, so a wrong value is
+     * reported with the field name instead of failing inside the setter.
+     */
+    public static final class BoundField {
+        private final Class<?> owner;
+        private final String name;
+        private final Class<?> type;
+        private final Class<?> valueType; // boxed for primitive fields
+        private final boolean readOnly;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        private BoundField(Class<?> owner, String name, Class<?> type, boolean readOnly, MethodHandle getter, MethodHandle setter) {
+            this.owner = owner;
+            this.name = name;
+            this.type = type;
+            this.readOnly = readOnly;
+            this.valueType = MethodType.methodType(type).wrap().returnType();
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Class<?> type() {
+            return type;
+        }
+
+        /**
+         * Whether the class's code never writes into the array of this field, as far as
+         * {@link ReadOnlyFields} can tell; such a field gets the store's array even if it is shared.
+         */
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        public boolean accepts(Object value) {
+            return value == null ? !type.isPrimitive() : valueType.isInstance(value);
+        }
+
+        public void set(Object model, Object value) {
+            if (setter == null) {
+                throw new IllegalStateException("@Bind field " + describe() + " is final");
+            }
+            if (!accepts(value)) {
+                throw new IllegalArgumentException("Cannot bind " + (value == null ? "null" : value.getClass().getSimpleName())
+                        + " to field " + describe() + " of type " + type.getSimpleName());
+            }
+            try {
+                setter.invokeExact(model, value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot set field " + describe(), e);
+            }
+        }
+
+        public Object get(Object model) {
+            try {
+                return (Object) getter.invokeExact(model);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Cannot read field " + describe(), e);
+            }
+        }
+
+        private String describe() {
+            return owner.getSimpleName() + "." + name;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package binding;
+
+import interfaces.IBatchModel;
+import store.EntityBatch;
+import store.VariableStore;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs a model for every entity of an {@link EntityBatch} and puts the results back into it.
+ * An {@link IBatchModel} is bound once to the whole matrices and steps all entities together;
+ * any other model runs once per entity, on its own store and instance, spread over several threads.
+ */
+public final class EntityBatchRunner {
+    private final Callable<?> newModel;
+    private final int parallelism;
+
+    /**
+     * @param newModel creates a fresh instance of the model; only called once for batch models
+     */
+    public EntityBatchRunner(Callable<?> newModel, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.newModel = newModel;
+        this.parallelism = parallelism;
+    }
+
+    public EntityBatchRunner(Callable<?> newModel) {
+        this(newModel, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Runs the model on the batch. Series the model changes are changed in the batch, series it
+     * creates are added to it.
+     */
+    public void run(EntityBatch batch) throws Exception {
+        Object model = newModel.call();
+        BindingPlan plan = BindingPlan.of(model.getClass());
+        if (model instanceof IBatchModel batchModel) {
+            runBatched(batchModel, plan, batch);
+        } else {
+            runEach(model, plan, batch);
+        }
+    }
+
+    private static void runBatched(IBatchModel model, BindingPlan plan, EntityBatch batch) {
+        for (BindingPlan.BoundField field : plan.getFields()) {
+            if (field.name().equals(VariableStore.PERIOD_COUNT)) {
+                field.set(model, batch.size());
+            } else if (field.name().equals(VariableStore.PERIODS)) {
+                field.set(model, batch.getPeriods());
+            } else if (field.type() == double[].class && batch.contains(field.name())) {
+                field.set(model, batch.get(field.name())); // the matrix itself, changed in place
+            }
+        }
+        model.run(batch.entityCount());
+        for (BindingPlan.BoundField field : plan.getFields()) {
+            if (field.type() == double[].class && field.get(model) instanceof double[] matrix) {
+                batch.put(field.name(), matrix);
+            }
+        }
+    }
+
+    private void runEach(Object first, BindingPlan plan, EntityBatch batch) throws Exception {
+        // every series field gets a matrix up front, so the entities can fill them from any thread
+        Map<String, double[]> results = new LinkedHashMap<>();
+        Set<String> created = ConcurrentHashMap.newKeySet();
+        for (BindingPlan.BoundField field : plan.getFields()) {
+            if (field.type() != double[].class) continue;
+            double[] matrix = batch.get(field.name());
+            if (matrix == null) {
+                matrix = new double[batch.entityCount() * batch.size()];
+                Arrays.fill(matrix, Double.NaN);
+            }
+            results.put(field.name(), matrix);
+        }
+
+        int entities = batch.entityCount();
+        int chunks = Math.min(entities, parallelism * 4); // some slack for entities that take longer
+        ExecutorService pool = chunks > 1 ? Executors.newFixedThreadPool(Math.min(chunks, parallelism)) : null;
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < chunks; c++) {
+                int from = (int) ((long) entities * c / chunks), to = (int) ((long) entities * (c + 1) / chunks);
+                Callable<Void> chunk = () -> {
+                    for (int e = from; e < to; e++) {
+                        runEntity(e == 0 ? first : newModel.call(), plan, batch, e, results, created);
+                    }
+                    return null;
+                };
+                if (pool == null) {
+                    chunk.call();
+                } else {
+                    futures.add(pool.submit(chunk));
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            if (pool != null) pool.shutdownNow();
+        }
+
+        results.forEach((name, matrix) -> {
+            if (batch.contains(name) || created.contains(name)) batch.put(name, matrix);
+        });
+    }
+
+    private static void runEntity(Object model, BindingPlan plan, EntityBatch batch, int entity,
+                                  Map<String, double[]> results, Set<String> created) throws Exception {
+        VariableStore data = batch.toStore(entity);
+        plan.bind(model, data);
+        try {
+            plan.run(model);
+        } catch (Throwable e) {
+            throw new Exception("Error running model for entity " + entity, e);
+        }
+        results.forEach((name, matrix) -> {
+            if (plan.getField(name).get(model) instanceof double[] series) {
+                batch.scatter(matrix, entity, series);
+                created.add(name);
+            }
+        });
+    }
+}
@@ -0,0 +1,215 @@
+package binding;
+
+import groovyjarjarasm.asm.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+import static groovyjarjarasm.asm.Opcodes.*;
+
+/**
+ * Finds the private {@code double[]} fields whose arrays a model class only reads, from its class
+ * file: every value loaded from such a field goes straight into an element read
+ * ({@code x[i]}) or {@code x.length}. A field whose value is stored into, kept in a local variable,
+ * passed to a method, assigned to another field or returned may be written through and is not
+ * read-only; neither is anything the scan can't follow (branches or {@code dup} while the value is
+ * on the stack). Writes through reflection are not seen.
+ */
+final class ReadOnlyFields {
+    private ReadOnlyFields() {
+    }
+
+    /**
+     * Never fails: if the class file can't be read, or other classes of the nest could reach the
+     * fields, no field is read-only.
+     */
+    static Set<String> of(Class<?> type) {
+        Set<String> candidates = new HashSet<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (field.getType() == double[].class && Modifier.isPrivate(field.getModifiers())) candidates.add(field.getName());
+        }
+        if (candidates.isEmpty() || type.getNestHost() != type || type.getNestMembers().length > 1) return Set.of();
+        String owner = Type.getInternalName(type);
+        ClassLoader loader = type.getClassLoader();
+        Set<String> written = new HashSet<>();
+        try (InputStream in = loader == null ? null : loader.getResourceAsStream(owner + ".class")) {
+            if (in == null) return Set.of();
+            new ClassReader(in).accept(new ClassVisitor(ASM9) {
+                @Override
+                public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                    return new Scan(owner, candidates, written);
+                }
+            }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        } catch (IOException | RuntimeException e) {
+            return Set.of();
+        }
+        candidates.removeAll(written);
+        return Set.copyOf(candidates);
+    }
+
+    /**
+     * Follows every loaded field value on the operand stack until an instruction consumes it. The
+     * stack is counted in values, not slots.
+     */
+    private static final class Scan extends MethodVisitor {
+        private final String owner;
+        private final Set<String> candidates;
+        private final Set<String> written;
+        private final List<Pending> pending = new ArrayList<>();
+
+        /**
+         * A field value on the stack, {@code depth} values below the top.
+         */
+        private static final class Pending {
+            final String field;
+            int depth;
+
+            Pending(String field) {
+                this.field = field;
+            }
+        }
+
+        Scan(String owner, Set<String> candidates, Set<String> written) {
+            super(ASM9);
+            this.owner = owner;
+            this.candidates = candidates;
+            this.written = written;
+        }
+
+        /**
+         * An instruction popping {@code pops} and pushing {@code pushes} values. A field value it
+         * pops is only read if the instruction is an element read or length of it, or a null or
+         * reference comparison.
+         */
+        private void step(int opcode, int pops, int pushes) {
+            for (Iterator<Pending> it = pending.iterator(); it.hasNext(); ) {
+                Pending value = it.next();
+                if (value.depth < pops) {
+                    boolean read = opcode == DALOAD && value.depth == 1
+                            || (opcode == ARRAYLENGTH || opcode == IFNULL || opcode == IFNONNULL) && value.depth == 0
+                            || opcode == IF_ACMPEQ || opcode == IF_ACMPNE;
+                    if (!read) written.add(value.field);
+                    it.remove();
+                } else {
+                    value.depth += pushes - pops;
+                }
+            }
+        }
+
+        /**
+         * The values left on the stack can't be followed further.
+         */
+        private void lose() {
+            pending.forEach(value -> written.add(value.field));
+            pending.clear();
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            if (opcode >= POP2 && opcode <= SWAP) { // dup and swap copy or move values of unknown size
+                lose();
+                return;
+            }
+            int pops, pushes = 1;
+            if (opcode == NOP) pops = pushes = 0;
+            else if (opcode <= DCONST_1) pops = 0;
+            else if (opcode <= SALOAD) pops = 2;
+            else if (opcode <= SASTORE) { pops = 3; pushes = 0; }
+            else if (opcode == POP) { pops = 1; pushes = 0; }
+            else if (opcode <= DREM) pops = 2;
+            else if (opcode <= DNEG) pops = 1;
+            else if (opcode <= LXOR) pops = 2;
+            else if (opcode <= I2S) pops = 1;
+            else if (opcode <= DCMPG) pops = 2;
+            else if (opcode == ARRAYLENGTH) pops = 1;
+            else if (opcode == RETURN) { pops = 0; pushes = 0; }
+            else { pops = 1; pushes = 0; } // xRETURN, ATHROW, MONITORENTER, MONITOREXIT
+            step(opcode, pops, pushes);
+            if (opcode >= IRETURN && opcode <= RETURN || opcode == ATHROW) lose();
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            step(opcode, opcode == NEWARRAY ? 1 : 0, 1);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            if (opcode == RET) lose();
+            else if (opcode <= ALOAD) step(opcode, 0, 1);
+            else step(opcode, 1, 0);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            step(opcode, opcode == NEW ? 0 : 1, 1);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String fieldOwner, String name, String descriptor) {
+            switch (opcode) {
+                case GETSTATIC -> step(opcode, 0, 1);
+                case PUTSTATIC -> step(opcode, 1, 0);
+                case GETFIELD -> {
+                    step(opcode, 1, 1);
+                    if (fieldOwner.equals(owner) && candidates.contains(name)) pending.add(new Pending(name));
+                }
+                default -> step(opcode, 2, 0);
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String methodOwner, String name, String descriptor, boolean isInterface) {
+            Type method = Type.getMethodType(descriptor);
+            step(opcode, method.getArgumentTypes().length + (opcode == INVOKESTATIC ? 0 : 1),
+                    method.getReturnType() == Type.VOID_TYPE ? 0 : 1);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrap, Object... arguments) {
+            Type method = Type.getMethodType(descriptor);
+            step(INVOKEDYNAMIC, method.getArgumentTypes().length, method.getReturnType() == Type.VOID_TYPE ? 0 : 1);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            int pops = switch (opcode) {
+                case GOTO, JSR -> 0;
+                case IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IFNULL, IFNONNULL -> 1;
+                default -> 2;
+            };
+            step(opcode, pops, 0);
+            lose(); // what is still on the stack goes on at the label too
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            step(LDC, 0, 1);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            step(TABLESWITCH, 1, 0);
+            lose();
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            step(LOOKUPSWITCH, 1, 0);
+            lose();
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int dimensions) {
+            step(MULTIANEWARRAY, dimensions, 1);
+        }
+
+        @Override
+        public void visitEnd() {
+            lose();
+        }
+    }
+}
@@ -0,0 +1,523 @@
+package cache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Remembers what a model or script computed, keyed by a hash of its code and of the inputs it
+ * read, so running it again on the same inputs becomes a lookup. Entries live in an LRU tier
+ * bounded by their size in bytes and, optionally, in a directory that survives restarts, bounded
+ * the same way by the size of its files.
+ * <p>
+ * Values are series ({@code double[]}), numbers, strings and string arrays. They are copied in
+ * and out, so callers may change what they put or got.
+ * <p>
+ * The memory tier is guarded by a lock that is never held during file I/O or copying, so callers
+ * don't queue behind the disk; it is a {@link ReentrantLock} rather than {@code synchronized}, which
+ * would pin the carrier threads of virtual threads.
+ */
+public class ResultCache {
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    public static final long DEFAULT_MAX_DISK_BYTES = 1L << 30;
+    private static final int FILE_MAGIC = 0x4C415452; // "LATR"
+
+    private static final ClassValue<String> CODE_HASHES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            String resource = type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class";
+            try (InputStream in = type.getResourceAsStream(resource)) {
+                if (in == null) {
+                    throw new IllegalStateException("No bytecode found for " + type.getName());
+                }
+                return hex(digest().digest(in.readAllBytes()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    private final long maxBytes;
+    private final Path directory; // null: memory only
+    private final long maxDiskBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // guarded by lock
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true); // guarded by lock: key -> file size
+    private long bytes;
+    private long diskBytes;
+    private long hits, diskHits, misses, bytesSaved, nanosSaved;
+
+    private record Entry(Map<String, Object> values, long bytes, long nanos) {
+    }
+
+    public ResultCache() {
+        this(DEFAULT_MAX_BYTES, null);
+    }
+
+    /**
+     * @param directory where entries are also written and looked up when not in memory, or null
+     */
+    public ResultCache(long maxBytes, Path directory) {
+        this(maxBytes, directory, DEFAULT_MAX_DISK_BYTES);
+    }
+
+    /**
+     * @param directory    where entries are also written and looked up when not in memory, or null
+     * @param maxDiskBytes the size of the entry files kept in {@code directory}; the least recently
+     *                     used ones are deleted beyond it, those already there counted from their
+     *                     modification time
+     */
+    public ResultCache(long maxBytes, Path directory, long maxDiskBytes) {
+        if (maxBytes < 0 || maxDiskBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative: " + Math.min(maxBytes, maxDiskBytes));
+        }
+        this.maxBytes = maxBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+                indexFiles();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot create cache directory " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * A hash of the bytecode of a class, as loaded; a recompiled model gets a new one.
+     */
+    public static String codeHash(Class<?> type) {
+        return CODE_HASHES.get(type);
+    }
+
+    /**
+     * Builds the key for running {@code code} on the current values of {@code inputs}
+     * ({@code values} gives null for variables that don't exist).
+     */
+    public static String key(String code, Collection<String> inputs, Function<String, Object> values) {
+        MessageDigest digest = digest();
+        digest.update(code.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        for (String name : new TreeSet<>(inputs)) {
+            digest.update((byte) 0);
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            Object value = values.apply(name);
+            if (value instanceof double[] series) {
+                digest.update((byte) 1);
+                for (int i = 0; i < series.length; ) {
+                    buffer.clear();
+                    while (i < series.length && buffer.remaining() >= Double.BYTES) buffer.putDouble(series[i++]);
+                    digest.update(buffer.flip());
+                }
+            } else if (value instanceof String[] strings) {
+                digest.update((byte) 2);
+                for (String s : strings) {
+                    digest.update(s.getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                }
+            } else if (value != null) {
+                digest.update((byte) 3);
+                digest.update((value.getClass().getName() + ":" + value).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Whether a value can be cached.
+     */
+    public static boolean isSupported(Object value) {
+        return value instanceof double[] || value instanceof String[] || value instanceof String
+                || value instanceof Integer || value instanceof Long || value instanceof Double;
+    }
+
+    /**
+     * Returns copies of the values stored for a key, or null. A hit counts the time the original
+     * computation took as saved.
+     */
+    public Map<String, Object> get(String key) {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                saved(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (entry == null) {
+            entry = readFile(key);
+            lock.lock();
+            try {
+                if (entry != null) {
+                    diskHits++;
+                    saved(entry);
+                    remember(key, entry);
+                    files.get(key); // recently used
+                } else {
+                    misses++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (entry == null) return null;
+        }
+        return copy(entry.values()); // entries are never changed, no lock needed
+    }
+
+    private void saved(Entry entry) {
+        bytesSaved += entry.bytes();
+        nanosSaved += entry.nanos();
+    }
+
+    /**
+     * Stores the values computed for a key in {@code nanos}. Values of unsupported types are not cached.
+     *
+     * @return whether they were stored
+     */
+    public boolean put(String key, Map<String, Object> values, long nanos) {
+        if (!values.values().stream().allMatch(ResultCache::isSupported)) return false;
+        Entry entry = new Entry(copy(values), sizeOf(values), nanos);
+        lock.lock();
+        try {
+            remember(key, entry);
+        } finally {
+            lock.unlock();
+        }
+        long size = writeFile(key, entry); // to a temporary file moved into place, concurrent writers of a key don't clash
+        if (size >= 0) {
+            List<String> evicted;
+            lock.lock();
+            try {
+                evicted = rememberFile(key, size);
+            } finally {
+                lock.unlock();
+            }
+            deleteFiles(evicted);
+        }
+        return true;
+    }
+
+    /**
+     * Called with the lock held.
+     */
+    private void remember(String key, Entry entry) {
+        if (entry.bytes() > maxBytes) return; // would evict everything else
+        Entry previous = entries.put(key, entry);
+        if (previous != null) bytes -= previous.bytes();
+        bytes += entry.bytes();
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+        }
+    }
+
+    private static Map<String, Object> copy(Map<String, Object> values) {
+        Map<String, Object> copy = new LinkedHashMap<>();
+        values.forEach((name, value) -> copy.put(name, switch (value) {
+            case double[] series -> series.clone();
+            case String[] strings -> strings.clone();
+            default -> value; // immutable
+        }));
+        return copy;
+    }
+
+    private static long sizeOf(Map<String, Object> values) {
+        long size = 0;
+        for (var e : values.entrySet()) {
+            size += 2L * e.getKey().length() + switch (e.getValue()) {
+                case double[] series -> (long) Double.BYTES * series.length;
+                case String[] strings -> Arrays.stream(strings).mapToLong(s -> 2L * s.length() + 8).sum();
+                case String s -> 2L * s.length();
+                default -> Long.BYTES;
+            };
+        }
+        return size;
+    }
+
+    // ---- disk tier ----
+
+    private Path file(String key) {
+        return directory.resolve(key + ".bin");
+    }
+
+    /**
+     * Picks up the entry files already in the directory, the oldest as the least recently used.
+     */
+    private void indexFiles() throws IOException {
+        record Found(String key, long size, FileTime modified) {
+        }
+        List<Found> found = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.bin")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                found.add(new Found(name.substring(0, name.length() - ".bin".length()), Files.size(file),
+                        Files.getLastModifiedTime(file)));
+            }
+        }
+        found.sort(Comparator.comparing(Found::modified));
+        List<String> evicted = new ArrayList<>();
+        for (Found file : found) {
+            evicted.addAll(rememberFile(file.key(), file.size())); // no other thread has the cache yet
+        }
+        deleteFiles(evicted);
+    }
+
+    /**
+     * Called with the lock held. Returns the keys whose files are to be deleted, after the lock is released.
+     */
+    private List<String> rememberFile(String key, long size) {
+        if (size > maxDiskBytes) return List.of(key);
+        Long previous = files.put(key, size);
+        if (previous != null) diskBytes -= previous;
+        diskBytes += size;
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator();
+        while (diskBytes > maxDiskBytes) {
+            Map.Entry<String, Long> file = eldest.next();
+            diskBytes -= file.getValue();
+            evicted.add(file.getKey());
+            eldest.remove();
+        }
+        return evicted;
+    }
+
+    private void deleteFiles(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(file(key));
+            } catch (IOException e) {
+                System.err.println("Cannot delete cache entry " + key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the size of the file, or -1 if it wasn't written
+     */
+    private long writeFile(String key, Entry entry) {
+        if (directory == null) return -1;
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeLong(entry.nanos());
+                out.writeInt(entry.values().size());
+                for (var e : entry.values().entrySet()) {
+                    out.writeUTF(e.getKey());
+                    switch (e.getValue()) {
+                        case double[] series -> {
+                            out.writeByte('D');
+                            out.writeInt(series.length);
+                            for (double v : series) out.writeDouble(v);
+                        }
+                        case String[] strings -> {
+                            out.writeByte('A');
+                            out.writeInt(strings.length);
+                            for (String s : strings) out.writeUTF(s);
+                        }
+                        case String s -> {
+                            out.writeByte('S');
+                            out.writeUTF(s);
+                        }
+                        case Integer i -> {
+                            out.writeByte('I');
+                            out.writeInt(i);
+                        }
+                        case Long l -> {
+                            out.writeByte('J');
+                            out.writeLong(l);
+                        }
+                        case Double d -> {
+                            out.writeByte('F');
+                            out.writeDouble(d);
+                        }
+                        default -> throw new IllegalStateException("Unsupported value: " + e.getValue());
+                    }
+                }
+            }
+            long size = Files.size(temp);
+            Files.move(temp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return size;
+        } catch (IOException e) {
+            System.err.println("Cannot write cache entry " + key + ": " + e.getMessage()); // the memory tier still has it
+            return -1;
+        }
+    }
+
+    private Entry readFile(String key) {
+        if (directory == null || !Files.exists(file(key))) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file(key))))) {
+            if (in.readInt() != FILE_MAGIC) return null;
+            long nanos = in.readLong();
+            int count = in.readInt();
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (int k = 0; k < count; k++) {
+                String name = in.readUTF();
+                int type = in.readByte();
+                values.put(name, switch (type) {
+                    case 'D' -> {
+                        double[] series = new double[in.readInt()];
+                        for (int i = 0; i < series.length; i++) series[i] = in.readDouble();
+                        yield series;
+                    }
+                    case 'A' -> {
+                        String[] strings = new String[in.readInt()];
+                        for (int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+                        yield strings;
+                    }
+                    case 'S' -> in.readUTF();
+                    case 'I' -> in.readInt();
+                    case 'J' -> in.readLong();
+                    case 'F' -> in.readDouble();
+                    default -> throw new IOException("Unknown value type " + type);
+                });
+            }
+            Files.setLastModifiedTime(file(key), FileTime.fromMillis(System.currentTimeMillis())); // recently used after a restart too
+            return new Entry(values, sizeOf(values), nanos);
+        } catch (NoSuchFileException e) {
+            return null; // deleted as least recently used meanwhile
+        } catch (IOException e) {
+            System.err.println("Cannot read cache entry " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // ---- statistics ----
+
+    public long getHitCount() {
+        lock.lock();
+        try {
+            return hits + diskHits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDiskHitCount() {
+        lock.lock();
+        try {
+            return diskHits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMissCount() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getHitRatio() {
+        lock.lock();
+        try {
+            long lookups = hits + diskHits + misses;
+            return lookups == 0 ? 0 : (double) (hits + diskHits) / lookups;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Size of the results served from the cache instead of being computed.
+     */
+    public long getBytesSaved() {
+        lock.lock();
+        try {
+            return bytesSaved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Time the served results originally took to compute.
+     */
+    public long getNanosSaved() {
+        lock.lock();
+        try {
+            return nanosSaved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Size of the entry files in the directory.
+     */
+    public long getDiskBytes() {
+        lock.lock();
+        try {
+            return diskBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            bytes = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("ResultCache{hits=%d (disk %d), misses=%d, hitRatio=%.2f, bytesSaved=%d, msSaved=%.1f, size=%d, bytes=%d/%d, diskBytes=%d/%d}",
+                    hits + diskHits, diskHits, misses, getHitRatio(), bytesSaved, nanosSaved / 1e6, entries.size(), bytes, maxBytes,
+                    diskBytes, maxDiskBytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        return HexFormat.of().formatHex(hash);
+    }
+}
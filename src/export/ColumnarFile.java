@@ -0,0 +1,194 @@
+package export;
+
+import store.VariableStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A file in the {@link ColumnarFormat}, memory-mapped. Opening it reads only the header; the values
+ * of a column are paged in by the OS when the column is first touched. Snapshot files are meant to
+ * be replaced, not changed in place, while they are open.
+ */
+public final class ColumnarFile {
+    private final Path path;
+    private final ByteBuffer header;
+    private final int labelCount;
+    private final long labelBytes; // UTF-8 bytes of all labels
+    private final int size;
+    private final String[] names;
+    private final long[] offsets;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final MappedByteBuffer whole; // null if the file is too large for one mapping
+
+    private ColumnarFile(Path path) throws IOException {
+        this.path = path;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, 6 * Integer.BYTES))
+                    .order(ColumnarFormat.ORDER);
+            if (length < 6 * Integer.BYTES || header.getInt() != ColumnarFormat.MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            int version = header.getInt();
+            if (version != ColumnarFormat.VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + path);
+            }
+            size = header.getInt();
+            int count = header.getInt();
+            int headerLength = header.getInt();
+            header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerLength).order(ColumnarFormat.ORDER);
+            header.position(5 * Integer.BYTES);
+            labelCount = header.getInt();
+            long bytes = 0;
+            for (int i = 0; i < labelCount; i++) { // decoded only when asked for, there is one per period
+                int labelLength = header.getInt();
+                header.position(header.position() + labelLength);
+                bytes += labelLength;
+            }
+            labelBytes = bytes;
+            names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = string(header);
+                index.put(names[i], i);
+            }
+            offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = header.getLong();
+                if (offsets[i] < headerLength || offsets[i] + (long) size * Double.BYTES > length) {
+                    throw new IOException("Corrupt snapshot file, column " + names[i] + " out of range: " + path);
+                }
+            }
+            this.header = header;
+            whole = length <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, length) : null; // stays valid after closing
+        }
+    }
+
+    public static ColumnarFile open(Path path) throws IOException {
+        return new ColumnarFile(path);
+    }
+
+    /**
+     * Whether a file starts like a snapshot file.
+     */
+    public static boolean isColumnarFile(Path path) throws IOException {
+        if (Files.size(path) < Integer.BYTES) return false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ColumnarFormat.ORDER);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+            }
+            return magic.flip().getInt() == ColumnarFormat.MAGIC;
+        }
+    }
+
+    private static String string(ByteBuffer header) {
+        byte[] bytes = new byte[header.getInt()];
+        header.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The {@code LATA} line, as in {@link VariableStore#getPeriods()}.
+     */
+    public String[] getPeriods() {
+        String[] labels = new String[labelCount];
+        Iterator<String> it = labels();
+        for (int i = 0; i < labelCount; i++) labels[i] = it.next();
+        return labels;
+    }
+
+    /**
+     * The labels of {@link #getPeriods()} one after the other, decoded as they are taken.
+     */
+    public Iterator<String> labels() {
+        ByteBuffer labels = header.duplicate().order(ColumnarFormat.ORDER).position(6 * Integer.BYTES);
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < labelCount;
+            }
+
+            @Override
+            public String next() {
+                if (next++ == labelCount) throw new NoSuchElementException();
+                return string(labels);
+            }
+        };
+    }
+
+    public int labelCount() {
+        return labelCount;
+    }
+
+    public long labelBytes() {
+        return labelBytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int columnCount() {
+        return names.length;
+    }
+
+    public String name(int column) {
+        return names[column];
+    }
+
+    /**
+     * The values of a column straight from the mapped file, without copying. Null for unknown names.
+     */
+    public DoubleBuffer view(String name) throws IOException {
+        Integer i = index.get(name);
+        return i == null ? null : view(i);
+    }
+
+    private DoubleBuffer view(int column) throws IOException {
+        long bytes = (long) size * Double.BYTES;
+        if (whole != null) {
+            return whole.slice((int) offsets[column], (int) bytes).order(ColumnarFormat.ORDER).asDoubleBuffer();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) { // a mapping per column
+            return channel.map(FileChannel.MapMode.READ_ONLY, offsets[column], bytes).order(ColumnarFormat.ORDER).asDoubleBuffer();
+        }
+    }
+
+    /**
+     * Puts the periods and every column into a store. Columns are deferred: each is copied out of
+     * the mapping when the store first reads it.
+     */
+    public void loadInto(VariableStore store) {
+        if (labelCount > 0) store.setPeriods(getPeriods());
+        for (int i = 0; i < names.length; i++) {
+            int column = i;
+            store.putDeferred(names[i], () -> {
+                try {
+                    double[] values = new double[size];
+                    view(column).get(values);
+                    return values;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
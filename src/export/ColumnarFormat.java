@@ -0,0 +1,33 @@
+package export;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the binary columnar result file. All numbers are little-endian.
+ * <pre>
+ * int    magic "LATB"
+ * int    version
+ * int    LL, the number of periods
+ * int    N, the number of columns
+ * int    header length in bytes, the offset of the first column (a multiple of 8)
+ * int    number of labels, then per label: int length + UTF-8 bytes   (the LATA line)
+ * N x    int length + UTF-8 bytes                                      (column names)
+ * N x    long offset of the column's values
+ *        zero padding up to the header length
+ * N x LL doubles, column after column
+ * </pre>
+ * Columns shorter than {@code LL} are padded with NaN, longer ones are cut.
+ */
+public final class ColumnarFormat {
+    public static final int MAGIC = 'L' | 'A' << 8 | 'T' << 16 | 'B' << 24; // reads "LATB" in a hex dump
+    public static final int VERSION = 1;
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    public static final int ALIGNMENT = Double.BYTES;
+
+    private ColumnarFormat() {
+    }
+
+    static int align(int length) {
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
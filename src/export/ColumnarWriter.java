@@ -0,0 +1,105 @@
+package export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Writes a {@link ColumnarFormat} file piece by piece: the header first, then the values of any
+ * column in any order, a range of periods at a time. Since every column has its place from the
+ * start, a file with millions of periods is written without holding more than one piece of it.
+ * Every period of every column has to be written before {@link #close}.
+ */
+public final class ColumnarWriter implements Closeable {
+    private static final int BYTE_BUFFER = 64 * 1024;
+
+    private final FileChannel channel;
+    private final int size;
+    private final int columns;
+    private final int headerLength;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BYTE_BUFFER).order(ColumnarFormat.ORDER);
+
+    /**
+     * Creates the file and writes its header.
+     *
+     * @param labels     the {@code LATA} line, {@code labelCount} labels of {@code labelBytes} UTF-8 bytes together
+     */
+    public ColumnarWriter(Path path, int size, List<String> names, int labelCount, long labelBytes,
+                          Iterator<String> labels) throws IOException {
+        this.size = size;
+        this.columns = names.size();
+        byte[][] nameBytes = new byte[columns][];
+        long rawLength = 6L * Integer.BYTES + (long) columns * Long.BYTES + (long) labelCount * Integer.BYTES + labelBytes;
+        for (int i = 0; i < columns; i++) {
+            nameBytes[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+            rawLength += Integer.BYTES + nameBytes[i].length;
+        }
+        if (rawLength > Integer.MAX_VALUE - ColumnarFormat.ALIGNMENT) {
+            throw new IllegalArgumentException("Header too large: " + rawLength + " bytes");
+        }
+        this.headerLength = ColumnarFormat.align((int) rawLength);
+
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            buffer.putInt(ColumnarFormat.MAGIC).putInt(ColumnarFormat.VERSION).putInt(size).putInt(columns)
+                    .putInt(headerLength).putInt(labelCount);
+            long written = 0;
+            for (int i = 0; i < labelCount; i++) {
+                byte[] label = labels.next().getBytes(StandardCharsets.UTF_8);
+                ResultExporter.putBytes(buffer, label, channel);
+                written += label.length;
+            }
+            if (written != labelBytes || labels.hasNext()) {
+                throw new IllegalArgumentException("The labels don't match their count and length");
+            }
+            for (byte[] name : nameBytes) ResultExporter.putBytes(buffer, name, channel);
+            for (int i = 0; i < columns; i++) {
+                ResultExporter.ensure(buffer, Long.BYTES, channel);
+                buffer.putLong(offset(i, 0));
+            }
+            for (long pad = rawLength; pad < headerLength; pad++) {
+                ResultExporter.ensure(buffer, 1, channel);
+                buffer.put((byte) 0);
+            }
+            ResultExporter.flush(buffer, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private long offset(int column, long period) {
+        return headerLength + ((long) column * size + period) * Double.BYTES;
+    }
+
+    /**
+     * Writes {@code values[from, from + count)} as the periods starting at {@code period} of a column.
+     */
+    public void write(int column, long period, double[] values, int from, int count) throws IOException {
+        if (column < 0 || column >= columns || period < 0 || period + count > size) {
+            throw new IndexOutOfBoundsException("Column " + column + ", periods " + period + "+" + count + " of " + size);
+        }
+        long position = offset(column, period);
+        for (int i = from; i < from + count; ) {
+            buffer.clear();
+            int n = Math.min(buffer.capacity() / Double.BYTES, from + count - i);
+            buffer.asDoubleBuffer().put(values, i, n);
+            buffer.limit(n * Double.BYTES);
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            i += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
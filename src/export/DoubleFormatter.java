@@ -0,0 +1,104 @@
+package export;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Formats doubles into a caller's {@code char[]} without creating Strings. With a negative
+ * precision the text is the same as {@link Double#toString(double)}; otherwise it is the same as
+ * {@code String.format(Locale.ROOT, "%.Nf", value)}. Only values that sit right on a rounding tie
+ * or are too large for a long take a slower path through {@link BigDecimal}.
+ */
+public final class DoubleFormatter {
+    /**
+     * Longest text {@link #format} can produce for any value with the maximum precision.
+     */
+    public static final int MAX_LENGTH = 330; // "-" + 309 integer digits of Double.MAX_VALUE + "." + 17 decimals
+    public static final int MAX_PRECISION = 17;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17
+    };
+    private static final double MAX_SCALED = 0x1p52; // still has a fractional bit
+
+    private final int precision;
+    private final StringBuilder scratch = new StringBuilder(32); // reused for shortest formatting
+
+    public DoubleFormatter(int precision) {
+        if (precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be at most " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+    }
+
+    /**
+     * The formatter used for the default TSV output, matching {@link Double#toString(double)}.
+     */
+    public static DoubleFormatter shortest() {
+        return new DoubleFormatter(-1);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Writes {@code value} at {@code pos}, which needs {@link #MAX_LENGTH} free chars, and returns
+     * the position after it.
+     */
+    public int format(double value, char[] out, int pos) {
+        scratch.setLength(0);
+        if (precision >= 0 && Double.isFinite(value)) {
+            double scaled = Math.abs(value) * POWERS_OF_TEN[precision];
+            if (scaled < MAX_SCALED) {
+                double floor = Math.floor(scaled);
+                double fraction = scaled - floor;
+                if (Math.abs(fraction - 0.5) > 2 * Math.ulp(scaled)) { // the product's error can't cross the tie
+                    return formatFixed(value, (long) floor + (fraction > 0.5 ? 1 : 0), out, pos);
+                }
+            }
+            // %f rounds the shortest decimal form half-up, which is what BigDecimal.valueOf gives
+            scratch.append(BigDecimal.valueOf(value).setScale(precision, RoundingMode.HALF_UP).toPlainString());
+        } else {
+            scratch.append(value); // StringBuilder.append(double) writes the digits without a String
+        }
+        int length = scratch.length();
+        scratch.getChars(0, length, out, pos);
+        return pos + length;
+    }
+
+    private int formatFixed(double value, long scaled, char[] out, int pos) {
+        if (Double.doubleToRawLongBits(value) < 0) { // keeps the sign of -0.0 like %f
+            out[pos++] = '-';
+        }
+        long integer = scaled;
+        long fraction = 0;
+        if (precision > 0) {
+            long unit = (long) POWERS_OF_TEN[precision];
+            integer = scaled / unit;
+            fraction = scaled % unit;
+        }
+        pos = writeDigits(integer, out, pos, 1);
+        if (precision > 0) {
+            out[pos++] = '.';
+            pos = writeDigits(fraction, out, pos, precision);
+        }
+        return pos;
+    }
+
+    /**
+     * Writes a non-negative number with at least {@code minDigits} digits, padding with zeros.
+     */
+    private static int writeDigits(long number, char[] out, int pos, int minDigits) {
+        int digits = 1;
+        for (long n = number / 10; n > 0; n /= 10) digits++;
+        digits = Math.max(digits, minDigits);
+        int end = pos + digits;
+        for (int i = end - 1; i >= pos; i--) {
+            out[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,142 @@
+package export;
+
+import store.VariableStore;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the variables of a {@link VariableStore} row by row through fixed-size buffers, so the
+ * memory used does not grow with the number of periods or variables.
+ */
+public final class ResultExporter {
+    private static final int CHAR_BUFFER = 8192;
+    private static final int BYTE_BUFFER = 64 * 1024;
+
+    private ResultExporter() {
+    }
+
+    /**
+     * Writes the {@code LATA} line and one line per series, tab separated. A negative precision
+     * formats values like {@link Double#toString(double)}, the same as the old TSV output.
+     */
+    public static void writeTsv(VariableStore data, Writer out, int precision) throws IOException {
+        data.materializeAll();
+        DoubleFormatter formatter = new DoubleFormatter(precision);
+        char[] buffer = new char[CHAR_BUFFER];
+        int pos = 0;
+        String[] periods = data.getPeriods();
+        if (periods != null) {
+            for (int i = 0; i < periods.length; i++) {
+                if (i > 0) pos = text("\t", out, buffer, pos);
+                pos = text(periods[i], out, buffer, pos);
+            }
+            pos = text("\n", out, buffer, pos);
+        }
+        for (int i = 0; i < data.columnCount(); i++) {
+            pos = text(data.name(i), out, buffer, pos);
+            for (double v : data.column(i)) {
+                if (pos + DoubleFormatter.MAX_LENGTH + 1 > buffer.length) {
+                    out.write(buffer, 0, pos);
+                    pos = 0;
+                }
+                buffer[pos++] = '\t';
+                pos = formatter.format(v, buffer, pos);
+            }
+            pos = text("\n", out, buffer, pos);
+        }
+        out.write(buffer, 0, pos);
+        out.flush();
+    }
+
+    private static int text(String text, Writer out, char[] buffer, int pos) throws IOException {
+        if (pos + text.length() > buffer.length) {
+            out.write(buffer, 0, pos);
+            pos = 0;
+            if (text.length() > buffer.length) {
+                out.write(text);
+                return 0;
+            }
+        }
+        text.getChars(0, text.length(), buffer, pos);
+        return pos + text.length();
+    }
+
+    /**
+     * Writes the variables in the binary {@link ColumnarFormat}.
+     */
+    public static void writeBinary(VariableStore data, WritableByteChannel out) throws IOException {
+        data.materializeAll();
+        int size = data.size();
+        int count = data.columnCount();
+        String[] periods = data.getPeriods() == null ? new String[0] : data.getPeriods();
+
+        byte[][] labels = utf8(periods);
+        byte[][] names = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            names[i] = data.name(i).getBytes(StandardCharsets.UTF_8);
+        }
+        int rawLength = 6 * Integer.BYTES + count * Long.BYTES;
+        for (byte[] label : labels) rawLength += Integer.BYTES + label.length;
+        for (byte[] name : names) rawLength += Integer.BYTES + name.length;
+        int headerLength = ColumnarFormat.align(rawLength);
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BYTE_BUFFER).order(ColumnarFormat.ORDER);
+        buffer.putInt(ColumnarFormat.MAGIC).putInt(ColumnarFormat.VERSION).putInt(size).putInt(count)
+                .putInt(headerLength).putInt(labels.length);
+        for (byte[] label : labels) putBytes(buffer, label, out);
+        for (byte[] name : names) putBytes(buffer, name, out);
+        for (int i = 0; i < count; i++) {
+            ensure(buffer, Long.BYTES, out);
+            buffer.putLong(headerLength + (long) i * size * Double.BYTES);
+        }
+        ensure(buffer, ColumnarFormat.ALIGNMENT, out);
+        for (int pad = rawLength; pad < headerLength; pad++) {
+            buffer.put((byte) 0);
+        }
+
+        for (int i = 0; i < count; i++) {
+            double[] values = data.column(i);
+            for (int t = 0; t < size; t++) {
+                ensure(buffer, Double.BYTES, out);
+                buffer.putDouble(t < values.length ? values[t] : Double.NaN);
+            }
+        }
+        flush(buffer, out);
+    }
+
+    private static byte[][] utf8(String[] texts) {
+        byte[][] bytes = new byte[texts.length][];
+        for (int i = 0; i < texts.length; i++) {
+            bytes[i] = texts[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    static void putBytes(ByteBuffer buffer, byte[] bytes, WritableByteChannel out) throws IOException {
+        ensure(buffer, Integer.BYTES, out);
+        buffer.putInt(bytes.length);
+        int offset = 0;
+        while (offset < bytes.length) {
+            ensure(buffer, 1, out);
+            int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+        }
+    }
+
+    static void ensure(ByteBuffer buffer, int bytes, WritableByteChannel out) throws IOException {
+        if (buffer.remaining() < bytes) flush(buffer, out);
+    }
+
+    static void flush(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,144 @@
+package formula;
+
+import store.VariableStore;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Element-wise formulas over the periods, compiled to bytecode without any Groovy involved:
+ * <pre>
+ * ZDEKS = EKS / PKB
+ * cum = cumsum(savings)
+ * growth = diff(GDP) / lag(GDP)
+ * </pre>
+ * Operators {@code + - * / ^}; functions {@code cumsum, lag(x[, k]), diff, abs, sqrt, exp, log,
+ * min, max, pow}. A name is a series, or a single number such as {@code LL}. All statements of a
+ * formula are fused into one pass over the periods; {@code lag} before the first period gives NaN.
+ * Results are stored like the series of scripts, so formulas and scripts can be mixed.
+ */
+public final class Formula {
+    private static final int CACHE_SIZE = 64;
+    private static final Map<String, Formula> CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Formula> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final String text;
+    private final List<Node.Statement> statements;
+    private final Set<String> inputs;
+    private final Set<String> targets;
+    private final Map<Set<String>, KernelCompiler.Program> programs = new ConcurrentHashMap<>(); // by which names are scalars
+
+    private Formula(String text) {
+        this.text = text;
+        this.statements = Optimizer.optimize(Parser.parse(text));
+        Set<String> inputs = new LinkedHashSet<>();
+        Set<String> targets = new LinkedHashSet<>();
+        for (Node.Statement statement : statements) {
+            if (VariableStore.PERIOD_COUNT.equals(statement.target()) || VariableStore.PERIODS.equals(statement.target())) {
+                throw new IllegalArgumentException("Cannot assign " + statement.target());
+            }
+            collectInputs(statement.expression(), targets, inputs);
+            targets.add(statement.target());
+        }
+        this.inputs = Collections.unmodifiableSet(inputs);
+        this.targets = Collections.unmodifiableSet(targets);
+    }
+
+    /**
+     * Parses a formula, or returns the one parsed before from the same text.
+     *
+     * @throws IllegalArgumentException with the line and column of a syntax error
+     */
+    public static Formula of(String text) {
+        synchronized (CACHE) {
+            Formula formula = CACHE.get(text);
+            if (formula == null) {
+                formula = new Formula(text);
+                CACHE.put(text, formula);
+            }
+            return formula;
+        }
+    }
+
+    private static void collectInputs(Node node, Set<String> assigned, Set<String> inputs) {
+        switch (node) {
+            case Node.Var v -> {
+                if (!assigned.contains(v.name())) inputs.add(v.name());
+            }
+            case Node.Neg n -> collectInputs(n.operand(), assigned, inputs);
+            case Node.Op op -> {
+                collectInputs(op.left(), assigned, inputs);
+                collectInputs(op.right(), assigned, inputs);
+            }
+            case Node.Call call -> call.arguments().forEach(a -> collectInputs(a, assigned, inputs));
+            case Node.Num n -> {
+            }
+        }
+    }
+
+    /**
+     * The variables the formula reads before assigning them.
+     */
+    public Set<String> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * The variables the formula assigns.
+     */
+    public Set<String> getTargets() {
+        return targets;
+    }
+
+    /**
+     * Computes the formula on the variables of a store and stores the results. Input series are
+     * read without copying; every result is a new array.
+     */
+    public void run(VariableStore store) {
+        int n = store.size();
+        if (store.getPeriods() == null) {
+            throw new IllegalStateException("No data has been read yet");
+        }
+        Set<String> scalars = new HashSet<>();
+        for (String input : inputs) {
+            Class<?> type = store.typeOf(input);
+            if (type == null) throw new IllegalArgumentException("Unknown variable: " + input);
+            if (type == int.class || Number.class.isAssignableFrom(type)) scalars.add(input);
+            else if (type != double[].class) throw new IllegalArgumentException("Not a number or series: " + input);
+        }
+        KernelCompiler.Program program = programs.computeIfAbsent(scalars,
+                s -> KernelCompiler.compile(statements, s::contains));
+
+        List<KernelCompiler.Slot> slots = program.slots();
+        double[][] arrays = new double[slots.size()][];
+        for (int k = 0; k < arrays.length; k++) {
+            KernelCompiler.Slot slot = slots.get(k);
+            if (slot.role() == KernelCompiler.Role.INPUT) {
+                arrays[k] = store.get(slot.name());
+                if (arrays[k] == null) throw new IllegalArgumentException("Unknown variable: " + slot.name());
+                if (arrays[k].length < n) {
+                    throw new IllegalArgumentException("Series " + slot.name() + " has " + arrays[k].length + " values, expected " + n);
+                }
+            } else {
+                arrays[k] = new double[n];
+            }
+        }
+        double[] values = new double[program.scalarNames().size()];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = ((Number) store.getValue(program.scalarNames().get(k))).doubleValue();
+        }
+        program.kernel().run(arrays, values, n);
+        for (int k = 0; k < arrays.length; k++) {
+            if (slots.get(k).role() == KernelCompiler.Role.OUTPUT) store.put(slots.get(k).name(), arrays[k]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
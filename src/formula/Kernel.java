@@ -0,0 +1,11 @@
+package formula;
+
+/**
+ * A compiled formula loop, generated by {@link KernelCompiler}.
+ */
+interface Kernel {
+    /**
+     * Computes periods {@code 0..n-1}, reading and writing the given arrays.
+     */
+    void run(double[][] arrays, double[] scalars, int n);
+}
@@ -0,0 +1,300 @@
+package formula;
+
+import formula.Node.*;
+
+import groovyjarjarasm.asm.ClassWriter;
+import groovyjarjarasm.asm.Label;
+import groovyjarjarasm.asm.MethodTooLargeException;
+import groovyjarjarasm.asm.MethodVisitor;
+import groovyjarjarasm.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.function.Predicate;
+
+import static groovyjarjarasm.asm.Opcodes.*;
+
+/**
+ * Compiles formulas into one loop over the periods, generated as bytecode of a hidden class:
+ * <pre>
+ * for (int i = 0; i < n; i++) {
+ *     out1[i] = ...;
+ *     out2[i] = ...; // may read out1[i] or, through lag, earlier values
+ * }
+ * </pre>
+ * Every statement writes a new array, so a statement reading its own target ({@code x = lag(x) + 1})
+ * sees the values from before. {@code cumsum} keeps a running sum in a local variable, {@code lag}
+ * of anything but a variable is first written into a temporary array in the same loop.
+ * <p>
+ * The class is written with the ASM that Groovy bundles, which also computes the stack sizes and
+ * frames.
+ */
+final class KernelCompiler {
+    private static final int ARRAYS = 1, SCALARS = 2, N = 3, I = 4, FIRST_LOCAL = 5;
+
+    enum Role {INPUT, OUTPUT, TEMP}
+
+    /**
+     * One of the arrays passed to the kernel: an input series, a result or a temporary.
+     */
+    record Slot(String name, Role role) {
+    }
+
+    /**
+     * The compiled loop and what to pass to it: {@code arrays[k]} is {@code slots.get(k)},
+     * {@code scalars[k]} the value of {@code scalarNames.get(k)}.
+     */
+    record Program(Kernel kernel, List<Slot> slots, List<String> scalarNames) {
+    }
+
+    private sealed interface Lowered {
+    }
+
+    private record Constant(double value) implements Lowered {
+    }
+
+    private record Element(int slot, int lag) implements Lowered {
+    }
+
+    private record Scalar(int index) implements Lowered {
+    }
+
+    private record Negate(Lowered operand) implements Lowered {
+    }
+
+    private record Arithmetic(char operator, Lowered left, Lowered right) implements Lowered {
+    }
+
+    private record MathCall(String function, List<Lowered> arguments) implements Lowered {
+    }
+
+    private record RunningSum(int accumulator, Lowered operand) implements Lowered {
+    }
+
+    private record Assignment(int slot, Lowered expression) {
+    }
+
+    private final Predicate<String> isScalar;
+    private final List<Slot> slots = new ArrayList<>();
+    private final List<String> scalarNames = new ArrayList<>();
+    private final Map<String, Integer> current = new HashMap<>(); // name -> slot of its latest value
+    private final List<Assignment> body = new ArrayList<>();
+    private int accumulators;
+
+    private KernelCompiler(Predicate<String> isScalar) {
+        this.isScalar = isScalar;
+    }
+
+    /**
+     * @param isScalar tells which of the variables read are single numbers rather than series
+     */
+    static Program compile(List<Statement> statements, Predicate<String> isScalar) {
+        KernelCompiler compiler = new KernelCompiler(isScalar);
+        for (Statement statement : statements) {
+            Lowered expression = compiler.lower(statement.expression());
+            int slot = compiler.slot(statement.target(), Role.OUTPUT);
+            compiler.body.add(new Assignment(slot, expression));
+            compiler.current.put(statement.target(), slot);
+        }
+        return new Program(compiler.define(), List.copyOf(compiler.slots), List.copyOf(compiler.scalarNames));
+    }
+
+    /**
+     * Bounds-checked read used by lagged values: NaN before the first period.
+     */
+    static double at(double[] values, int i) {
+        return i >= 0 ? values[i] : Double.NaN;
+    }
+
+    private int slot(String name, Role role) {
+        slots.add(new Slot(name, role));
+        return slots.size() - 1;
+    }
+
+    private Lowered lower(Node node) {
+        return switch (node) {
+            case Num n -> new Constant(n.value());
+            case Var v -> variable(v.name());
+            case Neg neg -> new Negate(lower(neg.operand()));
+            case Op op -> op.operator() == '^'
+                    ? new MathCall("pow", List.of(lower(op.left()), lower(op.right())))
+                    : new Arithmetic(op.operator(), lower(op.left()), lower(op.right()));
+            case Call call -> switch (call.function()) {
+                case "cumsum" -> new RunningSum(accumulators++, lower(call.arguments().get(0)));
+                case "lag" -> lag(call.arguments().get(0), (int) ((Num) call.arguments().get(1)).value());
+                default -> new MathCall(call.function(), call.arguments().stream().map(this::lower).toList());
+            };
+        };
+    }
+
+    private Lowered variable(String name) {
+        Integer slot = current.get(name);
+        if (slot != null) return new Element(slot, 0);
+        if (isScalar.test(name)) {
+            int index = scalarNames.indexOf(name);
+            if (index < 0) {
+                scalarNames.add(name);
+                index = scalarNames.size() - 1;
+            }
+            return new Scalar(index);
+        }
+        slot = slot(name, Role.INPUT);
+        current.put(name, slot);
+        return new Element(slot, 0);
+    }
+
+    private Lowered lag(Node operand, int distance) {
+        Lowered lowered = lower(operand);
+        if (lowered instanceof Element element && element.lag() == 0) {
+            return new Element(element.slot(), distance);
+        }
+        int temp = slot("lag" + distance, Role.TEMP); // computed earlier in the same iteration
+        body.add(new Assignment(temp, lowered));
+        return new Element(temp, distance);
+    }
+
+    // ---- bytecode ----
+
+    private Kernel define() {
+        int arrayLocals = slots.size();
+        int scalarLocal = FIRST_LOCAL + arrayLocals;
+        int accumulatorLocal = scalarLocal + 2 * scalarNames.size();
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES); // frames imply the maximum sizes
+        cw.visit(V17, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, "formula/GeneratedKernel", null, "java/lang/Object",
+                new String[]{Type.getInternalName(Kernel.class)});
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        Code code = new Code(cw.visitMethod(ACC_PUBLIC, "run", "([[D[DI)V", null, null), scalarLocal, accumulatorLocal);
+        MethodVisitor mv = code.mv;
+        mv.visitCode();
+        for (int k = 0; k < arrayLocals; k++) { // double[] a_k = arrays[k]
+            mv.visitVarInsn(ALOAD, ARRAYS);
+            code.push(k);
+            mv.visitInsn(AALOAD);
+            mv.visitVarInsn(ASTORE, FIRST_LOCAL + k);
+        }
+        for (int k = 0; k < scalarNames.size(); k++) { // double s_k = scalars[k]
+            mv.visitVarInsn(ALOAD, SCALARS);
+            code.push(k);
+            mv.visitInsn(DALOAD);
+            mv.visitVarInsn(DSTORE, scalarLocal + 2 * k);
+        }
+        for (int k = 0; k < accumulators; k++) {
+            mv.visitInsn(DCONST_0);
+            mv.visitVarInsn(DSTORE, accumulatorLocal + 2 * k);
+        }
+        mv.visitInsn(ICONST_0);
+        mv.visitVarInsn(ISTORE, I);
+        Label loop = new Label(), exit = new Label();
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ILOAD, I);
+        mv.visitVarInsn(ILOAD, N);
+        mv.visitJumpInsn(IF_ICMPGE, exit);
+        for (Assignment assignment : body) { // a_out[i] = expression
+            mv.visitVarInsn(ALOAD, FIRST_LOCAL + assignment.slot());
+            mv.visitVarInsn(ILOAD, I);
+            code.emit(assignment.expression());
+            mv.visitInsn(DASTORE);
+        }
+        mv.visitIincInsn(I, 1);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(exit);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        try {
+            return instantiate(cw.toByteArray());
+        } catch (MethodTooLargeException e) {
+            throw new IllegalArgumentException("Formula too long", e);
+        }
+    }
+
+    private static Kernel instantiate(byte[] classFile) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return (Kernel) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot load generated formula kernel", e);
+        }
+    }
+
+    /**
+     * Emits the expressions of {@code Kernel.run}.
+     */
+    private static final class Code {
+        private final MethodVisitor mv;
+        private final int scalarLocal;
+        private final int accumulatorLocal;
+
+        Code(MethodVisitor mv, int scalarLocal, int accumulatorLocal) {
+            this.mv = mv;
+            this.scalarLocal = scalarLocal;
+            this.accumulatorLocal = accumulatorLocal;
+        }
+
+        void push(int value) {
+            if (value >= -1 && value <= 5) mv.visitInsn(ICONST_0 + value);
+            else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) mv.visitIntInsn(BIPUSH, value);
+            else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) mv.visitIntInsn(SIPUSH, value);
+            else mv.visitLdcInsn(value);
+        }
+
+        void emit(Lowered node) {
+            switch (node) {
+                case Constant c -> {
+                    if (Double.doubleToRawLongBits(c.value()) == 0L) mv.visitInsn(DCONST_0);
+                    else if (c.value() == 1.0) mv.visitInsn(DCONST_1);
+                    else mv.visitLdcInsn(c.value());
+                }
+                case Scalar s -> mv.visitVarInsn(DLOAD, scalarLocal + 2 * s.index());
+                case Element e -> {
+                    mv.visitVarInsn(ALOAD, FIRST_LOCAL + e.slot());
+                    mv.visitVarInsn(ILOAD, I);
+                    if (e.lag() == 0) {
+                        mv.visitInsn(DALOAD);
+                    } else {
+                        push(e.lag());
+                        mv.visitInsn(ISUB);
+                        mv.visitMethodInsn(INVOKESTATIC, "formula/KernelCompiler", "at", "([DI)D", false);
+                    }
+                }
+                case Negate n -> {
+                    emit(n.operand());
+                    mv.visitInsn(DNEG);
+                }
+                case Arithmetic a -> {
+                    emit(a.left());
+                    emit(a.right());
+                    mv.visitInsn(switch (a.operator()) {
+                        case '+' -> DADD;
+                        case '-' -> DSUB;
+                        case '*' -> DMUL;
+                        default -> DDIV;
+                    });
+                }
+                case MathCall m -> {
+                    m.arguments().forEach(this::emit);
+                    String descriptor = m.arguments().size() == 1 ? "(D)D" : "(DD)D";
+                    mv.visitMethodInsn(INVOKESTATIC, "java/lang/Math", m.function(), descriptor, false);
+                }
+                case RunningSum r -> {
+                    int local = accumulatorLocal + 2 * r.accumulator();
+                    emit(r.operand());
+                    mv.visitVarInsn(DLOAD, local);
+                    mv.visitInsn(DADD);
+                    mv.visitInsn(DUP2);
+                    mv.visitVarInsn(DSTORE, local); // sum, and leaves it for the assignment
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package formula;
+
+import java.util.List;
+
+/**
+ * Parsed formula expressions.
+ */
+sealed interface Node {
+    record Num(double value) implements Node {
+    }
+
+    record Var(String name) implements Node {
+    }
+
+    record Neg(Node operand) implements Node {
+    }
+
+    /**
+     * One of {@code + - * / ^}.
+     */
+    record Op(char operator, Node left, Node right) implements Node {
+    }
+
+    record Call(String function, List<Node> arguments) implements Node {
+    }
+
+    /**
+     * {@code target = expression}
+     */
+    record Statement(String target, Node expression) {
+    }
+}
@@ -0,0 +1,93 @@
+package formula;
+
+import formula.Node.*;
+
+import java.util.List;
+
+/**
+ * Rewrites parsed formulas before compiling: folds constants, expands {@code diff(x)} into
+ * {@code x - lag(x, 1)}, gives every {@code lag} an explicit distance and merges nested lags.
+ */
+final class Optimizer {
+    private Optimizer() {
+    }
+
+    static List<Statement> optimize(List<Statement> statements) {
+        return statements.stream().map(s -> new Statement(s.target(), optimize(s.expression()))).toList();
+    }
+
+    static Node optimize(Node node) {
+        return switch (node) {
+            case Num n -> n;
+            case Var v -> v;
+            case Neg neg -> optimize(neg.operand()) instanceof Num n ? new Num(-n.value()) : new Neg(optimize(neg.operand()));
+            case Op op -> fold(op.operator(), optimize(op.left()), optimize(op.right()));
+            case Call call -> call(call.function(), call.arguments().stream().map(Optimizer::optimize).toList());
+        };
+    }
+
+    private static Node fold(char operator, Node left, Node right) {
+        if (left instanceof Num l && right instanceof Num r) {
+            return new Num(apply(operator, l.value(), r.value()));
+        }
+        return new Op(operator, left, right);
+    }
+
+    static double apply(char operator, double left, double right) {
+        return switch (operator) {
+            case '+' -> left + right;
+            case '-' -> left - right;
+            case '*' -> left * right;
+            case '/' -> left / right;
+            case '^' -> Math.pow(left, right);
+            default -> throw new IllegalArgumentException("Unknown operator: " + operator);
+        };
+    }
+
+    private static Node call(String function, List<Node> arguments) {
+        switch (function) {
+            case "diff" -> {
+                Node x = arguments.get(0);
+                return new Op('-', x, lag(x, 1));
+            }
+            case "lag" -> {
+                return lag(arguments.get(0), arguments.size() == 1 ? 1 : (int) ((Num) arguments.get(1)).value());
+            }
+            case "cumsum" -> {
+                return new Call(function, arguments); // not constant even for constants
+            }
+            default -> {
+                if (arguments.stream().allMatch(a -> a instanceof Num)) {
+                    double a = ((Num) arguments.get(0)).value();
+                    double b = arguments.size() > 1 ? ((Num) arguments.get(1)).value() : 0;
+                    return new Num(apply(function, a, b));
+                }
+                return new Call(function, arguments);
+            }
+        }
+    }
+
+    private static Node lag(Node x, int distance) {
+        if (distance == 0) return x;
+        if (x instanceof Call inner && inner.function().equals("lag")) {
+            return lag(inner.arguments().get(0), distance + (int) ((Num) inner.arguments().get(1)).value());
+        }
+        return new Call("lag", List.of(x, new Num(distance)));
+    }
+
+    /**
+     * The functions of {@link java.lang.Math} the formulas can call.
+     */
+    static double apply(String function, double a, double b) {
+        return switch (function) {
+            case "abs" -> Math.abs(a);
+            case "sqrt" -> Math.sqrt(a);
+            case "exp" -> Math.exp(a);
+            case "log" -> Math.log(a);
+            case "min" -> Math.min(a, b);
+            case "max" -> Math.max(a, b);
+            case "pow" -> Math.pow(a, b);
+            default -> throw new IllegalArgumentException("Unknown function: " + function);
+        };
+    }
+}
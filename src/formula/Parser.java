@@ -0,0 +1,188 @@
+package formula;
+
+import formula.Node.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recursive descent parser for formulas: one {@code name = expression} per line or separated by
+ * {@code ;}, {@code //} comments. Expressions use {@code + - * / ^}, parentheses, numbers, variables
+ * and the functions in {@link #ARITY}.
+ */
+final class Parser {
+    /**
+     * Function name -> {min, max} number of arguments.
+     */
+    static final Map<String, int[]> ARITY = Map.of(
+            "cumsum", new int[]{1, 1},
+            "lag", new int[]{1, 2},
+            "diff", new int[]{1, 1},
+            "abs", new int[]{1, 1},
+            "sqrt", new int[]{1, 1},
+            "exp", new int[]{1, 1},
+            "log", new int[]{1, 1},
+            "min", new int[]{2, 2},
+            "max", new int[]{2, 2},
+            "pow", new int[]{2, 2});
+
+    private final String text;
+    private int pos;
+
+    private Parser(String text) {
+        this.text = text;
+    }
+
+    static List<Statement> parse(String text) {
+        return new Parser(text).statements();
+    }
+
+    private List<Statement> statements() {
+        List<Statement> statements = new ArrayList<>();
+        while (true) {
+            skipSpace(true);
+            if (pos == text.length()) return statements;
+            if (peek() == ';') {
+                pos++;
+                continue;
+            }
+            String target = identifier();
+            expect('=');
+            statements.add(new Statement(target, expression()));
+            skipSpace(false);
+            if (pos < text.length() && peek() != ';' && peek() != '\n') {
+                throw error("Expected end of statement");
+            }
+        }
+    }
+
+    private Node expression() {
+        Node left = term();
+        while (accept('+') || accept('-')) {
+            char operator = text.charAt(pos - 1);
+            left = new Op(operator, left, term());
+        }
+        return left;
+    }
+
+    private Node term() {
+        Node left = unary();
+        while (accept('*') || accept('/')) {
+            char operator = text.charAt(pos - 1);
+            left = new Op(operator, left, unary());
+        }
+        return left;
+    }
+
+    private Node unary() {
+        if (accept('-')) return new Neg(unary());
+        if (accept('+')) return unary();
+        Node base = primary();
+        return accept('^') ? new Op('^', base, unary()) : base; // right associative
+    }
+
+    private Node primary() {
+        skipSpace(false);
+        if (pos == text.length()) throw error("Unexpected end of formula");
+        char c = peek();
+        if (accept('(')) {
+            Node inner = expression();
+            expect(')');
+            return inner;
+        }
+        if (Character.isDigit(c) || c == '.') return number();
+        if (!Character.isJavaIdentifierStart(c)) throw error("Unexpected '" + c + "'");
+        String name = identifier();
+        if (!accept('(')) return new Var(name);
+        int[] arity = ARITY.get(name);
+        if (arity == null) throw error("Unknown function: " + name);
+        List<Node> arguments = new ArrayList<>();
+        if (!accept(')')) {
+            do {
+                arguments.add(expression());
+            } while (accept(','));
+            expect(')');
+        }
+        if (arguments.size() < arity[0] || arguments.size() > arity[1]) {
+            throw error("Wrong number of arguments for " + name + ": " + arguments.size());
+        }
+        if (name.equals("lag") && arguments.size() == 2 && !(arguments.get(1) instanceof Num n && n.value() >= 0 && n.value() == (int) n.value())) {
+            throw error("The lag of lag(x, k) must be a whole non-negative number");
+        }
+        return new Call(name, List.copyOf(arguments));
+    }
+
+    private Node number() {
+        int start = pos;
+        while (pos < text.length() && (Character.isDigit(peek()) || peek() == '.')) pos++;
+        if (pos < text.length() && (peek() == 'e' || peek() == 'E')) {
+            pos++;
+            if (pos < text.length() && (peek() == '+' || peek() == '-')) pos++;
+            while (pos < text.length() && Character.isDigit(peek())) pos++;
+        }
+        try {
+            return new Num(Double.parseDouble(text.substring(start, pos)));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("Bad number");
+        }
+    }
+
+    private String identifier() {
+        skipSpace(false);
+        int start = pos;
+        if (pos < text.length() && Character.isJavaIdentifierStart(peek())) {
+            pos++;
+            while (pos < text.length() && Character.isJavaIdentifierPart(peek())) pos++;
+        }
+        if (start == pos) throw error("Expected a variable name");
+        return text.substring(start, pos);
+    }
+
+    private boolean accept(char c) {
+        skipSpace(false);
+        if (pos < text.length() && peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (!accept(c)) throw error("Expected '" + c + "'");
+    }
+
+    private char peek() {
+        return text.charAt(pos);
+    }
+
+    /**
+     * Skips blanks and comments; line breaks only between statements.
+     */
+    private void skipSpace(boolean newlines) {
+        while (pos < text.length()) {
+            char c = peek();
+            if (c == '/' && pos + 1 < text.length() && text.charAt(pos + 1) == '/') {
+                while (pos < text.length() && peek() != '\n') pos++;
+            } else if (c == '\n' ? newlines : Character.isWhitespace(c)) {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        int line = 1, column = 1;
+        for (int i = 0; i < pos; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        return new IllegalArgumentException(message + " at " + line + ":" + column);
+    }
+}
@@ -0,0 +1,49 @@
+package interfaces;
+
+/**
+ * The arithmetic a model needs, on elements of series of type {@code S}. A model that writes its
+ * computation against this interface writes it once for plain {@code double[]} series
+ * ({@link #DOUBLES}) and for series of {@link sensitivity.Dual} numbers
+ * ({@link sensitivity.Dual#ARITHMETIC}). The operations work on array elements rather than
+ * returning numbers, so plain series are computed without boxing.
+ */
+public interface IArithmetic<S> {
+    IArithmetic<double[]> DOUBLES = new IArithmetic<>() {
+        @Override
+        public double[] newSeries(int length) {
+            return new double[length];
+        }
+
+        @Override
+        public void plus(double[] to, int k, double[] a, int i, double[] b, int j) {
+            to[k] = a[i] + b[j];
+        }
+
+        @Override
+        public void minus(double[] to, int k, double[] a, int i, double[] b, int j) {
+            to[k] = a[i] - b[j];
+        }
+
+        @Override
+        public void times(double[] to, int k, double[] a, int i, double[] b, int j) {
+            to[k] = a[i] * b[j];
+        }
+    };
+
+    S newSeries(int length);
+
+    /**
+     * {@code to[k] = a[i] + b[j]}
+     */
+    void plus(S to, int k, S a, int i, S b, int j);
+
+    /**
+     * {@code to[k] = a[i] - b[j]}
+     */
+    void minus(S to, int k, S a, int i, S b, int j);
+
+    /**
+     * {@code to[k] = a[i] * b[j]}
+     */
+    void times(S to, int k, S a, int i, S b, int j);
+}
@@ -0,0 +1,16 @@
+package interfaces;
+
+/**
+ * A model that computes many entities (regions, scenarios...) in one pass. Its {@code @Bind} series
+ * then hold all entities at once, period after period: the value of entity {@code e} in period
+ * {@code t} is at {@code [t * entities + e]}, so a loop over the entities of one period walks
+ * memory in order. With one entity that is an ordinary series, which is what {@link #run()} uses.
+ */
+public interface IBatchModel extends IModel {
+    void run(int entities);
+
+    @Override
+    default void run() {
+        run(1);
+    }
+}
@@ -0,0 +1,19 @@
+package interfaces;
+
+import sensitivity.Dual;
+
+import java.util.Map;
+
+/**
+ * A model that can also compute on {@link Dual} numbers, so the derivatives of its results are
+ * found in the same pass as the results. {@link #run(Map, int)} must do what {@link #run()} does,
+ * which is simplest to ensure by writing the computation once against {@link IArithmetic}, as
+ * {@code models.Model4} does.
+ */
+public interface IDifferentiableModel extends IModel {
+    /**
+     * @param series the bound series by name, as dual numbers; series the model creates are put in
+     * @param periods {@code LL}
+     */
+    void run(Map<String, Dual[]> series, int periods);
+}
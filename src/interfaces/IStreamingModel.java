@@ -0,0 +1,10 @@
+package interfaces;
+
+/**
+ * A recurrence model that can run over a long horizon a window at a time: {@link #run()} computes
+ * each period from the period before it, and at period 0 only computes what is derived from that
+ * same period. The streaming runner then binds windows of the series whose period 0 is the last
+ * period of the previous window, with {@code LL} the length of the window.
+ */
+public interface IStreamingModel extends IModel {
+}
@@ -0,0 +1,62 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in buckets that grow with the duration: four per power of two, so a percentile
+ * is off by at most 12.5%. Recording is a couple of bit operations and one atomic increment.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4; // per power of two, must be a power of two itself
+    private static final int SUB_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(nanos, 1)));
+    }
+
+    private static int bucket(long value) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude < SUB_BITS) return (int) value; // small values have buckets of their own
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return magnitude * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * The middle of a bucket.
+     */
+    private static double value(int bucket) {
+        int magnitude = bucket / SUB_BUCKETS;
+        if (magnitude < SUB_BITS) return bucket;
+        long low = (1L << magnitude) | ((long) (bucket % SUB_BUCKETS) << (magnitude - SUB_BITS));
+        return low + (1L << (magnitude - SUB_BITS)) / 2.0;
+    }
+
+    long count() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) count += counts.get(i);
+        return count;
+    }
+
+    /**
+     * The duration that {@code p} (0 to 1) of the recorded ones don't exceed, in nanoseconds; 0 if none.
+     */
+    double percentile(double p) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) total += snapshot[i] = counts.get(i);
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return value(i);
+        }
+        return value(snapshot.length - 1);
+    }
+
+    void reset() {
+        for (int i = 0; i < counts.length(); i++) counts.set(i, 0);
+    }
+}
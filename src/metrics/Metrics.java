@@ -0,0 +1,162 @@
+package metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Times the phases of reading, running and exporting. Each phase is counted, its latency goes into
+ * a histogram, and a Flight Recorder {@link PhaseEvent} is emitted when a recording asks for it.
+ * The counters are published as a JMX MXBean once enabled.
+ * <p>
+ * Counting is off unless enabled with {@link #setEnabled} or {@code -Dreflectivescripting.metrics=true}.
+ * With counting off and no recording, {@link #start} returns a shared no-op span without reading
+ * the clock.
+ */
+public final class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "ReflectiveScripting:type=Metrics";
+
+    private static final Metrics INSTANCE = new Metrics();
+    private static volatile boolean enabled;
+
+    private final Map<Phase, LatencyHistogram> latencies = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> nanos = new EnumMap<>(Phase.class);
+    private final LongAdder bytesParsed = new LongAdder();
+    private final LongAdder bytesExported = new LongAdder();
+    private final LongAdder arraysAllocated = new LongAdder();
+    private boolean registered;
+
+    static {
+        if (Boolean.getBoolean("reflectivescripting.metrics")) INSTANCE.setEnabled(true);
+    }
+
+    private Metrics() {
+        for (Phase phase : Phase.values()) {
+            latencies.put(phase, new LatencyHistogram());
+            nanos.put(phase, new LongAdder());
+        }
+    }
+
+    public static Metrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts timing a phase; use with try-with-resources.
+     */
+    public static Span start(Phase phase) {
+        PhaseEvent event = new PhaseEvent(); // free when no recording has the event enabled
+        boolean recorded = event.isEnabled();
+        if (!enabled && !recorded) return Span.NOOP;
+        if (recorded) event.begin();
+        return new Span(phase, recorded ? event : null, System.nanoTime());
+    }
+
+    static void record(Phase phase, long duration, long bytes, int arrays) {
+        if (!enabled) return;
+        Metrics metrics = INSTANCE;
+        metrics.latencies.get(phase).record(duration);
+        metrics.nanos.get(phase).add(duration);
+        if (phase == Phase.READ) metrics.bytesParsed.add(bytes);
+        if (phase == Phase.EXPORT) metrics.bytesExported.add(bytes);
+        metrics.arraysAllocated.add(arrays);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns counting on or off. The first time it is turned on, the MXBean is registered with the
+     * platform MBean server.
+     */
+    @Override
+    public synchronized void setEnabled(boolean on) {
+        if (on && !registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+                registered = true;
+            } catch (JMException e) {
+                System.err.println("Cannot register " + OBJECT_NAME + ": " + e.getMessage()); // counting works anyway
+            }
+        }
+        enabled = on;
+    }
+
+    @Override
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        latencies.forEach((phase, histogram) -> counts.put(phase.name(), histogram.count()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getTotalMillis() {
+        Map<String, Double> totals = new LinkedHashMap<>();
+        nanos.forEach((phase, total) -> totals.put(phase.name(), total.sum() / 1e6));
+        return totals;
+    }
+
+    @Override
+    public Map<String, Double> getP50Millis() {
+        return percentiles(h -> h.percentile(0.50));
+    }
+
+    @Override
+    public Map<String, Double> getP95Millis() {
+        return percentiles(h -> h.percentile(0.95));
+    }
+
+    @Override
+    public Map<String, Double> getP99Millis() {
+        return percentiles(h -> h.percentile(0.99));
+    }
+
+    private Map<String, Double> percentiles(ToDoubleFunction<LatencyHistogram> percentile) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        latencies.forEach((phase, histogram) -> values.put(phase.name(), percentile.applyAsDouble(histogram) / 1e6));
+        return values;
+    }
+
+    @Override
+    public long getBytesParsed() {
+        return bytesParsed.sum();
+    }
+
+    @Override
+    public long getBytesExported() {
+        return bytesExported.sum();
+    }
+
+    @Override
+    public long getArraysAllocated() {
+        return arraysAllocated.sum();
+    }
+
+    @Override
+    public void reset() {
+        latencies.values().forEach(LatencyHistogram::reset);
+        nanos.values().forEach(LongAdder::reset);
+        bytesParsed.reset();
+        bytesExported.reset();
+        arraysAllocated.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("Metrics{");
+        Map<String, Long> counts = getCounts();
+        Map<String, Double> p50 = getP50Millis(), p99 = getP99Millis();
+        counts.forEach((phase, count) -> {
+            if (count > 0) text.append(String.format("%s: n=%d p50=%.3fms p99=%.3fms, ", phase, count, p50.get(phase), p99.get(phase)));
+        });
+        return text.append("bytesParsed=").append(getBytesParsed()).append(", bytesExported=").append(getBytesExported())
+                .append(", arraysAllocated=").append(getArraysAllocated()).append('}').toString();
+    }
+}
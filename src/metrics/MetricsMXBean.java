@@ -0,0 +1,31 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * The counters of {@link Metrics}, as seen in JConsole or VisualVM under {@code ReflectiveScripting:type=Metrics}.
+ * Maps are keyed by {@link Phase} name.
+ */
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCounts();
+
+    Map<String, Double> getTotalMillis();
+
+    Map<String, Double> getP50Millis();
+
+    Map<String, Double> getP95Millis();
+
+    Map<String, Double> getP99Millis();
+
+    long getBytesParsed();
+
+    long getBytesExported();
+
+    long getArraysAllocated();
+
+    void reset();
+}
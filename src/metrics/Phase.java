@@ -0,0 +1,16 @@
+package metrics;
+
+/**
+ * The steps a run is made of, as measured by {@link Metrics}.
+ */
+public enum Phase {
+    READ,      // reading a data file
+    BIND,      // setting the model's fields
+    RUN,       // the model's run()
+    READ_BACK, // copying the model's fields into the store
+    ENGINE,    // creating the Groovy engine
+    COMPILE,   // compiling a script
+    SCRIPT,    // evaluating a script and storing its results
+    EXPORT,    // writing results
+    JOB        // a GUI action, all of the above it does included
+}
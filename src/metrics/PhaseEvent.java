@@ -0,0 +1,41 @@
+package metrics;
+
+import jdk.jfr.*;
+
+/**
+ * A {@link Phase} as recorded by JDK Flight Recorder, e.g. with
+ * {@code -XX:StartFlightRecording:filename=run.jfr}.
+ */
+@Name("reflectivescripting.Phase")
+@Label("Pipeline Phase")
+@Category("Reflective Scripting")
+@Description("A step of reading data, running a model or script, or exporting results")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Name")
+    @Description("The job, or the file read or written")
+    String name;
+
+    @Label("Model")
+    String model;
+
+    @Label("Script Hash")
+    String scriptHash;
+
+    @Label("Variables")
+    int variables;
+
+    @Label("Periods")
+    @Description("LL")
+    int periods;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    @Label("Arrays Allocated")
+    int arrays;
+}
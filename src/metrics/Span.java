@@ -0,0 +1,81 @@
+package metrics;
+
+/**
+ * One timed {@link Phase}, started by {@link Metrics#start} and ended by {@link #close()}. The
+ * details are only kept when something records them; otherwise the span is a shared no-op and
+ * {@link #isActive()} tells callers to skip computing details.
+ */
+public final class Span implements AutoCloseable {
+    static final Span NOOP = new Span(null, null, 0);
+
+    private final Phase phase;
+    private final PhaseEvent event; // null when Flight Recorder doesn't record phases
+    private final long start;
+    private String name, model, scriptText;
+    private int variables, periods, arrays;
+    private long bytes;
+
+    Span(Phase phase, PhaseEvent event, long start) {
+        this.phase = phase;
+        this.event = event;
+        this.start = start;
+    }
+
+    public boolean isActive() {
+        return this != NOOP;
+    }
+
+    public Span name(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public Span model(String model) {
+        this.model = model;
+        return this;
+    }
+
+    /**
+     * The script, hashed only if the span is recorded by Flight Recorder.
+     */
+    public Span script(String scriptText) {
+        this.scriptText = scriptText;
+        return this;
+    }
+
+    /**
+     * The size of the data: number of variables and of periods ({@code LL}).
+     */
+    public Span data(int variables, int periods) {
+        this.variables = variables;
+        this.periods = periods;
+        return this;
+    }
+
+    public Span bytes(long bytes) {
+        this.bytes = bytes;
+        return this;
+    }
+
+    public Span arrays(int arrays) {
+        this.arrays = arrays;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (this == NOOP) return;
+        Metrics.record(phase, System.nanoTime() - start, bytes, arrays);
+        if (event != null && event.shouldCommit()) {
+            event.phase = phase.name();
+            event.name = name;
+            event.model = model;
+            event.scriptHash = scriptText == null ? null : Integer.toHexString(scriptText.hashCode());
+            event.variables = variables;
+            event.periods = periods;
+            event.bytes = bytes;
+            event.arrays = arrays;
+            event.commit();
+        }
+    }
+}
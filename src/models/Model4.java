@@ -0,0 +1,86 @@
+package models;
+
+import annotations.Bind;
+import interfaces.IArithmetic;
+import interfaces.IBatchModel;
+import interfaces.IDifferentiableModel;
+import interfaces.IStreamingModel;
+import sensitivity.Dual;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Computes what {@link Model1} does, for many regions at once (IBatchModel), a window at a time
+ * (IStreamingModel) and on dual numbers (IDifferentiableModel). The recurrence is written once, in
+ * {@link #compute}, against {@link IArithmetic}.
+ */
+public class Model4 implements IBatchModel, IStreamingModel, IDifferentiableModel {
+    @Bind
+    private int LL; //number of years
+    @Bind
+    private double[] twKI; // the growth rate of private consumption
+    @Bind
+    private double[] twKS; // the growth rate of public consumption
+    @Bind
+    private double[] twINW; // investment growth
+    @Bind
+    private double[] twEKS; // export growth
+    @Bind
+    private double[] twIMP; // import growth
+
+    @Bind
+    private double[] KI; //private consumption
+    @Bind
+    private double[] KS; // public consumption
+    @Bind
+    private double[] INW; // investments
+    @Bind
+    private double[] EKS; // export
+    @Bind
+    private double[] IMP; // import
+    @Bind
+    private double[] PKB; //GDP
+
+    public Model4() {
+    }
+
+    public void run(int n) { // n regions side by side, see IBatchModel
+        Map<String, double[]> series = new HashMap<>(Map.of("twKI", twKI, "twKS", twKS, "twINW", twINW,
+                "twEKS", twEKS, "twIMP", twIMP, "KI", KI, "KS", KS, "INW", INW, "EKS", EKS, "IMP", IMP));
+        compute(IArithmetic.DOUBLES, series, LL, n);
+        PKB = series.get("PKB");
+    }
+
+    public void run(Map<String, Dual[]> series, int periods) { // see IDifferentiableModel
+        compute(Dual.ARITHMETIC, series, periods, 1);
+    }
+
+    /**
+     * The value of region {@code e} in period {@code t} is at {@code [t * n + e]}. Period 0 only
+     * gets PKB, so a window can start where the previous one ended (IStreamingModel).
+     */
+    private static <S> void compute(IArithmetic<S> m, Map<String, S> series, int periods, int n) {
+        S twKI = series.get("twKI"), twKS = series.get("twKS"), twINW = series.get("twINW"),
+                twEKS = series.get("twEKS"), twIMP = series.get("twIMP");
+        S KI = series.get("KI"), KS = series.get("KS"), INW = series.get("INW"), EKS = series.get("EKS"),
+                IMP = series.get("IMP");
+        S PKB = m.newSeries(periods * n);
+        series.put("PKB", PKB);
+        for (int t = 0; t < periods; t++) {
+            for (int i = t * n, end = i + n; i < end; i++) {
+                if (t > 0) {
+                    m.times(KI, i, twKI, i, KI, i - n);
+                    m.times(KS, i, twKS, i, KS, i - n);
+                    m.times(INW, i, twINW, i, INW, i - n);
+                    m.times(EKS, i, twEKS, i, EKS, i - n);
+                    m.times(IMP, i, twIMP, i, IMP, i - n);
+                }
+                m.plus(PKB, i, KI, i, KS, i); // PKB = KI + KS + INW + EKS - IMP
+                m.plus(PKB, i, PKB, i, INW, i);
+                m.plus(PKB, i, PKB, i, EKS, i);
+                m.minus(PKB, i, PKB, i, IMP, i);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package parsing;
+
+import store.DeferredColumn;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+/**
+ * A row of a data file that was skipped while loading. It keeps only the byte range of the
+ * values and parses them on first {@link #load()}.
+ */
+public final class DeferredSeries implements DeferredColumn {
+    private final Source source;
+    private final long offset;
+    private final int length;
+    private final int size;
+
+    /**
+     * The file the rows came from, shared by all its deferred rows. Remembers the modification
+     * time so a file changed after loading is detected instead of read at wrong offsets.
+     */
+    public static final class Source {
+        private final Path path;
+        private final FileTime modified;
+        private final long fileSize;
+
+        public Source(Path path) throws IOException {
+            this.path = path;
+            this.modified = Files.getLastModifiedTime(path);
+            this.fileSize = Files.size(path);
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        private void checkUnchanged() throws IOException {
+            if (!Files.getLastModifiedTime(path).equals(modified) || Files.size(path) != fileSize) {
+                throw new IOException("Data file changed since it was loaded: " + path);
+            }
+        }
+    }
+
+    public DeferredSeries(Source source, long offset, int length, int size) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        this.size = size;
+    }
+
+    /**
+     * Reads and parses the values.
+     *
+     * @throws UncheckedIOException if the file can't be read or has changed
+     * @throws NumberFormatException if a value is not a number
+     */
+    @Override
+    public double[] load() {
+        try (FileChannel channel = FileChannel.open(source.path, StandardOpenOption.READ)) {
+            source.checkUnchanged();
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Unexpected end of file: " + source.path);
+                }
+            }
+            return LataParser.parseValues(buffer, 0, length, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getLength() {
+        return length;
+    }
+}
@@ -0,0 +1,156 @@
+package parsing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Where the rows of a data file are, found in one pass without parsing or keeping any values:
+ * the memory it takes depends on the number of rows, not on their length. The rows are then read
+ * with a {@link RowReader}. Rows follow the rules of {@link LataParser}.
+ */
+public final class LataIndex {
+    private static final int BUFFER = 1 << 20;
+
+    private final Path path;
+    private Row header;
+    private int labelCount;
+    private long labelBytes;
+    private final Map<String, Row> rows = new LinkedHashMap<>(); // a repeated name keeps its place
+
+    /**
+     * A row: the bytes of its values in the file. For the {@code LATA} line, all of its tokens.
+     */
+    public record Row(String name, long offset, long length) {
+    }
+
+    private LataIndex(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @throws IOException if the file can't be read or has no {@code LATA} line
+     */
+    public static LataIndex of(Path path) throws IOException {
+        LataIndex index = new LataIndex(path);
+        index.scan();
+        if (index.header == null) {
+            throw new IOException("No LATA line in " + path);
+        }
+        return index;
+    }
+
+    private void scan() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+            ByteArrayOutputStream name = new ByteArrayOutputStream();
+            long lineStart = 0, nameStart = -1, nameEnd = -1;
+            int tokens = 0;            // after the name
+            long tokenBytes = 0;
+            boolean inToken = false;
+            long offset = 0;
+            while (true) {
+                buffer.clear();
+                int n = channel.read(buffer, offset);
+                boolean eof = n < 0;
+                for (int i = 0; i < Math.max(n, 0); i++, offset++) {
+                    byte b = buffer.get(i);
+                    if (b == '\n' || b == '\r') {
+                        endLine(name, lineStart, nameStart, nameEnd, offset, tokens, tokenBytes);
+                        name.reset();
+                        lineStart = offset + 1;
+                        nameStart = nameEnd = -1;
+                        tokens = 0;
+                        tokenBytes = 0;
+                        inToken = false;
+                    } else if (nameStart < 0) {
+                        if (!LataParser.isWhitespace(b)) {
+                            nameStart = offset;
+                            name.write(b);
+                        }
+                    } else if (nameEnd < 0) {
+                        if (LataParser.isWhitespace(b)) {
+                            nameEnd = offset;
+                        } else {
+                            name.write(b);
+                        }
+                    } else if (LataParser.isWhitespace(b)) {
+                        inToken = false;
+                    } else {
+                        if (!inToken) tokens++;
+                        inToken = true;
+                        tokenBytes++;
+                    }
+                }
+                if (eof) {
+                    endLine(name, lineStart, nameStart, nameEnd, offset, tokens, tokenBytes);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void endLine(ByteArrayOutputStream name, long lineStart, long nameStart, long nameEnd, long lineEnd,
+                         int tokens, long tokenBytes) {
+        if (nameStart < 0) return; // empty line
+        if (nameEnd < 0) nameEnd = lineEnd;
+        byte[] bytes = name.toByteArray();
+        if (nameStart == lineStart && bytes.length >= 4 && bytes[0] == 'L' && bytes[1] == 'A' && bytes[2] == 'T' && bytes[3] == 'A') {
+            header = new Row("LATA", nameStart, lineEnd - nameStart);
+            labelCount = 1 + tokens;
+            labelBytes = bytes.length + tokenBytes;
+            return;
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        if (tokens == 0) {
+            System.err.println("No values found for variable: " + text);
+            return;
+        }
+        rows.put(text, new Row(text, nameEnd, lineEnd - nameEnd));
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The {@code LATA} line, read with {@link RowReader#nextLabel()}.
+     */
+    public Row getHeader() {
+        return header;
+    }
+
+    /**
+     * Number of tokens of the {@code LATA} line, "LATA" included.
+     */
+    public int getLabelCount() {
+        return labelCount;
+    }
+
+    /**
+     * Bytes of all tokens of the {@code LATA} line.
+     */
+    public long getLabelBytes() {
+        return labelBytes;
+    }
+
+    /**
+     * Number of periods ({@code LL}).
+     */
+    public int size() {
+        return labelCount - 1;
+    }
+
+    public Collection<Row> getRows() {
+        return Collections.unmodifiableCollection(rows.values());
+    }
+
+    public Row getRow(String name) {
+        return rows.get(name);
+    }
+}
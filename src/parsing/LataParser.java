@@ -0,0 +1,270 @@
+package parsing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the LATA data format straight from a memory-mapped file. Tokens are found on the raw
+ * bytes and numbers are parsed without creating Strings; only names and period labels are decoded.
+ * <p>
+ * Format: a {@code LATA} header line with the period labels, then one line per variable with its
+ * name and values. A comma works as decimal separator, and a row shorter than the header is padded
+ * with its last value.
+ */
+public class LataParser {
+    private static final long MAX_WINDOW = 64L << 20; // bytes mapped at once
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Receives the content of a file while it is being parsed.
+     */
+    public interface Handler {
+        /**
+         * Called for the {@code LATA} line; {@code labels[0]} is "LATA" itself, the rest are the periods.
+         */
+        void onHeader(String[] labels);
+
+        void onSeries(String name, double[] values);
+
+        /**
+         * Lets the handler skip rows it does not need. Skipped rows are reported to {@link #onSkipped}.
+         */
+        default boolean wants(String name) {
+            return true;
+        }
+
+        /**
+         * A row that was not parsed; {@code offset} and {@code length} give the bytes of its values in the file.
+         */
+        default void onSkipped(String name, long offset, int length) {
+        }
+    }
+
+    private final Handler handler;
+    private int size; // number of periods, set by the header
+
+    private LataParser(Handler handler) {
+        this.handler = handler;
+    }
+
+    public static void parse(Path path, Handler handler) throws IOException {
+        new LataParser(handler).parseFile(path);
+    }
+
+    private void parseFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long position = 0;
+            long window = MAX_WINDOW;
+            while (position < fileSize) {
+                long length = Math.min(window, fileSize - position);
+                boolean last = position + length == fileSize;
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int consumed = parseLines(buffer, position, last);
+                if (consumed == 0) {
+                    window *= 2; // a single line does not fit into the window
+                    if (window > Integer.MAX_VALUE) {
+                        throw new IOException("Line too long at offset " + position);
+                    }
+                } else {
+                    position += consumed;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses all complete lines of the buffer and returns the number of bytes consumed.
+     */
+    private int parseLines(ByteBuffer buffer, long baseOffset, boolean last) {
+        int limit = buffer.limit();
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                parseLine(buffer, start, i, baseOffset);
+                start = i + 1;
+            }
+        }
+        if (last && start < limit) {
+            parseLine(buffer, start, limit, baseOffset);
+            start = limit;
+        }
+        return start;
+    }
+
+    private void parseLine(ByteBuffer buffer, int from, int to, long baseOffset) {
+        int nameStart = skipWhitespace(buffer, from, to);
+        if (nameStart == to) return; // empty line
+        if (startsWithLata(buffer, from, to)) {
+            String[] labels = readLabels(buffer, nameStart, to);
+            size = labels.length - 1;
+            handler.onHeader(labels);
+            return;
+        }
+        int nameEnd = skipToken(buffer, nameStart, to);
+        String name = decode(buffer, nameStart, nameEnd);
+        if (skipWhitespace(buffer, nameEnd, to) == to) {
+            System.err.println("No values found for variable: " + name);
+            return;
+        }
+        if (!handler.wants(name)) {
+            handler.onSkipped(name, baseOffset + nameEnd, to - nameEnd);
+            return;
+        }
+        try {
+            handler.onSeries(name, parseValues(buffer, nameEnd, to, size));
+        } catch (NumberFormatException ex) {
+            System.err.println("Error parsing values for variable: " + name + ". Line skipped.");
+        }
+    }
+
+    /**
+     * Parses the whitespace separated values in {@code [from, to)} into an array of {@code size}
+     * elements. Values beyond {@code size} are ignored, missing ones repeat the last value.
+     *
+     * @throws NumberFormatException if a value is not a number
+     */
+    public static double[] parseValues(ByteBuffer buffer, int from, int to, int size) {
+        double[] values = new double[size];
+        int count = 0;
+        int pos = skipWhitespace(buffer, from, to);
+        while (count < size && pos < to) {
+            int end = skipToken(buffer, pos, to);
+            values[count++] = parseDouble(buffer, pos, end);
+            pos = skipWhitespace(buffer, end, to);
+        }
+        for (int i = Math.max(count, 1); i < size; i++) {
+            values[i] = values[i - 1];
+        }
+        return values;
+    }
+
+    /**
+     * Parses a decimal number, accepting both '.' and ',' as separator. Plain decimals whose digits
+     * fit into 53 bits with a small exponent are computed exactly with one multiplication or division;
+     * anything else is left to {@link Double#parseDouble}, so results always match it.
+     */
+    public static double parseDouble(ByteBuffer buffer, int from, int to) {
+        int pos = from;
+        boolean negative = false;
+        if (pos < to && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+            negative = buffer.get(pos) == '-';
+            pos++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean separator = false;
+        boolean any = false;
+        for (; pos < to; pos++) {
+            byte b = buffer.get(pos);
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (mantissa == 0 && b == '0') { // leading zeros are not significant
+                    if (separator) exponent--;
+                    continue;
+                }
+                if (++digits > 18) return slowParse(buffer, from, to);
+                mantissa = mantissa * 10 + (b - '0');
+                if (separator) exponent--;
+            } else if ((b == '.' || b == ',') && !separator) {
+                separator = true;
+            } else if ((b == 'e' || b == 'E') && any) {
+                int exp = parseExponent(buffer, pos + 1, to);
+                if (exp == Integer.MIN_VALUE) return slowParse(buffer, from, to);
+                exponent += exp;
+                pos = to;
+                break;
+            } else {
+                return slowParse(buffer, from, to); // NaN, Infinity, hex, suffixes...
+            }
+        }
+        if (!any) return slowParse(buffer, from, to);
+        double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+            value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return slowParse(buffer, from, to);
+        }
+        return negative ? -value : value;
+    }
+
+    private static int parseExponent(ByteBuffer buffer, int from, int to) {
+        int pos = from;
+        boolean negative = false;
+        if (pos < to && (buffer.get(pos) == '-' || buffer.get(pos) == '+')) {
+            negative = buffer.get(pos) == '-';
+            pos++;
+        }
+        if (pos == to || to - pos > 3) return Integer.MIN_VALUE;
+        int exp = 0;
+        for (; pos < to; pos++) {
+            byte b = buffer.get(pos);
+            if (b < '0' || b > '9') return Integer.MIN_VALUE;
+            exp = exp * 10 + (b - '0');
+        }
+        return negative ? -exp : exp;
+    }
+
+    private static double slowParse(ByteBuffer buffer, int from, int to) {
+        return Double.parseDouble(decode(buffer, from, to));
+    }
+
+    private static String[] readLabels(ByteBuffer buffer, int from, int to) {
+        List<String> labels = new ArrayList<>();
+        int pos = from;
+        while (pos < to) {
+            int end = skipToken(buffer, pos, to);
+            labels.add(decode(buffer, pos, end));
+            pos = skipWhitespace(buffer, end, to);
+        }
+        return labels.toArray(new String[0]);
+    }
+
+    private static boolean startsWithLata(ByteBuffer buffer, int from, int to) {
+        return to - from >= 4 && buffer.get(from) == 'L' && buffer.get(from + 1) == 'A'
+                && buffer.get(from + 2) == 'T' && buffer.get(from + 3) == 'A';
+    }
+
+    /**
+     * Decodes a token, turning ',' into '.' like the rest of the format.
+     */
+    static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            byte b = buffer.get(from + i);
+            bytes[i] = b == ',' ? (byte) '.' : b;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int skipWhitespace(ByteBuffer buffer, int from, int to) {
+        int pos = from;
+        while (pos < to && isWhitespace(buffer.get(pos))) pos++;
+        return pos;
+    }
+
+    private static int skipToken(ByteBuffer buffer, int from, int to) {
+        int pos = from;
+        while (pos < to && !isWhitespace(buffer.get(pos))) pos++;
+        return pos;
+    }
+
+    static boolean isWhitespace(byte b) { // same set as \s in the old regex split
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+}
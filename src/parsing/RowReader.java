@@ -0,0 +1,89 @@
+package parsing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the values of one row of a data file a few at a time, through a buffer of fixed size,
+ * so a row of any length can be consumed without holding it. Several readers may share a channel.
+ */
+public final class RowReader {
+    private final FileChannel channel;
+    private final long end;
+    private long position;           // next byte of the file to read into the buffer
+    private final ByteBuffer buffer; // bytes [0, limit) are loaded, the next token starts at or after pos
+    private int pos, limit;
+    private int tokenFrom, tokenTo;
+    private double last;             // repeated once the row has no more values
+
+    public RowReader(FileChannel channel, long offset, long length, int bufferSize) {
+        this.channel = channel;
+        this.position = offset;
+        this.end = offset + length;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Reads the next {@code count} values into {@code values[offset...]}. Like
+     * {@link LataParser#parseValues}, a row that has ended repeats its last value.
+     *
+     * @throws NumberFormatException if a value is not a number
+     */
+    public void read(double[] values, int offset, int count) throws IOException {
+        for (int i = offset; i < offset + count; i++) {
+            if (nextToken()) last = LataParser.parseDouble(buffer, tokenFrom, tokenTo);
+            values[i] = last;
+        }
+    }
+
+    /**
+     * The next token as text, with ',' turned into '.', or null at the end of the row.
+     */
+    public String nextLabel() throws IOException {
+        return nextToken() ? LataParser.decode(buffer, tokenFrom, tokenTo) : null;
+    }
+
+    private boolean nextToken() throws IOException {
+        while (true) {
+            while (pos < limit && LataParser.isWhitespace(buffer.get(pos))) pos++;
+            if (pos < limit) break;
+            if (!fill()) return false;
+        }
+        int to = pos;
+        while (true) {
+            while (to < limit && !LataParser.isWhitespace(buffer.get(to))) to++;
+            if (to < limit || position == end) break;
+            to -= pos; // the token goes on past the buffer
+            if (!fill()) break;
+            to += pos;
+        }
+        tokenFrom = pos;
+        tokenTo = to;
+        pos = to;
+        return true;
+    }
+
+    /**
+     * Moves the unconsumed bytes to the front and reads more after them.
+     */
+    private boolean fill() throws IOException {
+        int kept = limit - pos;
+        if (kept == buffer.capacity()) {
+            throw new IOException("Value longer than " + buffer.capacity() + " bytes at offset " + (position - kept));
+        }
+        buffer.limit(limit).position(pos);
+        buffer.compact();
+        buffer.limit((int) Math.min(buffer.capacity(), kept + end - position));
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new IOException("Unexpected end of file");
+            position += n;
+            read += n;
+        }
+        pos = 0;
+        limit = buffer.position();
+        return read > 0;
+    }
+}
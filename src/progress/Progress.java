@@ -0,0 +1,76 @@
+package progress;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Lets long running models report how far they are and notice that they were cancelled.
+ * A model calls {@link #report(long, long)} from its loop, e.g. {@code Progress.report(t, LL)};
+ * outside a background job this does nothing but the interrupt check.
+ */
+public final class Progress {
+    private static final double MIN_STEP = 0.005; // smaller steps are not passed on
+    private static final ThreadLocal<Channel> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Receives progress between 0 and 1.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void progress(double fraction);
+    }
+
+    private static final class Channel {
+        private final Listener listener;
+        private double last = -1;
+
+        private Channel(Listener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private Progress() {
+    }
+
+    /**
+     * Runs {@code task} on the current thread with {@code listener} receiving its reports.
+     */
+    public static <T> T run(Listener listener, Callable<T> task) throws Exception {
+        Channel previous = CURRENT.get();
+        CURRENT.set(new Channel(listener));
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * @throws CancellationException if the job was cancelled
+     */
+    public static void report(long done, long total) {
+        report(total <= 0 ? 1 : (double) done / total);
+    }
+
+    /**
+     * @throws CancellationException if the job was cancelled
+     */
+    public static void report(double fraction) {
+        checkCancelled();
+        Channel channel = CURRENT.get();
+        if (channel != null && (fraction - channel.last >= MIN_STEP || fraction >= 1 && channel.last < 1)) {
+            channel.last = fraction;
+            channel.listener.progress(Math.min(1, Math.max(0, fraction)));
+        }
+    }
+
+    /**
+     * @throws CancellationException if the current thread was interrupted, which is how jobs are cancelled
+     */
+    public static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Cancelled");
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package registry;
+
+import com.sun.source.util.JavacTask;
+import interfaces.IModel;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Types;
+import javax.tools.*;
+import java.io.*;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Compiles the model sources of a directory incrementally. A small index next to the sources
+ * remembers the hash of every file, the classes compiled from it and which of them implement
+ * {@link IModel}, so when nothing changed there is nothing to compile and no class to load.
+ * <p>
+ * Changed files are compiled together in one task into memory. The class files are then written
+ * next to their sources, as before, and the bytes are also returned for loading them directly.
+ */
+public class ModelCompiler {
+    public static final String INDEX_FILE = ".model-index";
+
+    private final Path sourceDirectory;
+    private final Path indexFile;
+
+    /**
+     * Compiled classes: binary class name to class file bytes, the names of the models among them,
+     * and the source file each class came from.
+     */
+    public record Compilation(Map<String, byte[]> classes, Set<String> models, Map<String, String> sources) {
+    }
+
+    /**
+     * The state after {@link #update()}: the simple names of all models, sorted; the simple binary
+     * names of every class compiled from the current sources (a deleted source's class files are not
+     * among them); and whether anything was compiled or removed since the previous call.
+     */
+    public record Update(List<String> models, List<String> classes, boolean changed) {
+    }
+
+    private record IndexEntry(String hash, List<String> models, List<String> classes) {
+    }
+
+    public ModelCompiler(Path sourceDirectory) {
+        this.sourceDirectory = sourceDirectory;
+        this.indexFile = sourceDirectory.resolve(INDEX_FILE);
+    }
+
+    /**
+     * Compiles what changed since the last call and returns the simple names of all models, sorted.
+     */
+    public List<String> availableModels() throws IOException {
+        return update().models();
+    }
+
+    /**
+     * Compiles what changed since the last call.
+     */
+    public Update update() throws IOException {
+        Map<String, IndexEntry> index = readIndex();
+        Map<String, IndexEntry> updated = new TreeMap<>();
+        List<Path> stale = new ArrayList<>();
+        Map<Path, String> hashes = new HashMap<>();
+        for (Path source : sources()) {
+            String fileName = source.getFileName().toString();
+            String hash = hash(Files.readAllBytes(source));
+            IndexEntry entry = index.get(fileName);
+            if (entry != null && entry.hash().equals(hash) && classFileExists(source)) {
+                updated.put(fileName, entry);
+            } else {
+                stale.add(source);
+                hashes.put(source, hash);
+            }
+        }
+        if (!stale.isEmpty()) {
+            Compilation compilation = compile(stale);
+            writeClassFiles(compilation.classes());
+            for (Path source : stale) {
+                String fileName = source.getFileName().toString();
+                List<String> models = new ArrayList<>();
+                for (String model : compilation.models()) {
+                    if (sourceOf(model).equals(fileName)) models.add(simpleName(model));
+                }
+                List<String> classes = new ArrayList<>();
+                compilation.sources().forEach((className, sourceFile) -> {
+                    if (sourceFile.equals(fileName)) classes.add(simpleName(className));
+                });
+                updated.put(fileName, new IndexEntry(hashes.get(source), models, classes));
+            }
+        }
+        boolean changed = !stale.isEmpty() || !updated.equals(index);
+        if (!updated.equals(index)) {
+            writeIndex(updated);
+        }
+        return new Update(updated.values().stream().flatMap(entry -> entry.models().stream()).sorted().toList(),
+                updated.values().stream().flatMap(entry -> entry.classes().stream()).sorted().toList(),
+                changed);
+    }
+
+    public List<Path> sources() throws IOException {
+        if (!Files.isDirectory(sourceDirectory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(sourceDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".java")).sorted().toList();
+        }
+    }
+
+    /**
+     * Compiles the given sources in one task, entirely in memory.
+     *
+     * @throws IOException if a source doesn't compile; the message holds the compiler's errors
+     */
+    public Compilation compile(List<Path> sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Java Compiler is not available.");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, ByteArrayOutputStream> output = new LinkedHashMap<>();
+        Map<String, String> sourceFiles = new LinkedHashMap<>();
+        try (StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+             JavaFileManager fileManager = new MemoryFileManager(standard, output, sourceFiles)) {
+            List<String> options = List.of(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-sourcepath", sourceDirectory.toAbsolutePath().getParent().toString(), // annotations, interfaces
+                    "-implicit:none");
+            JavacTask task = (JavacTask) compiler.getTask(null, fileManager, diagnostics, options, null,
+                    standard.getJavaFileObjectsFromPaths(sources));
+            Set<String> models = new TreeSet<>();
+            try {
+                Iterable<? extends Element> elements = task.analyze();
+                TypeElement modelInterface = task.getElements().getTypeElement(IModel.class.getName());
+                Types types = task.getTypes();
+                for (Element element : elements) {
+                    if (element.getKind() == ElementKind.CLASS && element instanceof TypeElement type
+                            && !type.getModifiers().contains(Modifier.ABSTRACT)
+                            && modelInterface != null && types.isAssignable(type.asType(), modelInterface.asType())) {
+                        models.add(type.getQualifiedName().toString());
+                    }
+                }
+                task.generate();
+            } catch (IllegalStateException e) {
+                // analyze() and generate() give up after errors; the diagnostics say why
+            }
+            List<Diagnostic<? extends JavaFileObject>> errors = diagnostics.getDiagnostics().stream()
+                    .filter(d -> d.getKind() == Diagnostic.Kind.ERROR).toList();
+            if (!errors.isEmpty()) {
+                StringBuilder message = new StringBuilder("Failed to compile models:");
+                for (Diagnostic<? extends JavaFileObject> error : errors) {
+                    message.append("\n").append(error.getSource() == null ? "" : error.getSource().getName() + ":")
+                            .append(error.getLineNumber()).append(": ").append(error.getMessage(Locale.ROOT));
+                }
+                throw new IOException(message.toString());
+            }
+            Map<String, byte[]> classes = new LinkedHashMap<>();
+            output.forEach((name, bytes) -> classes.put(name, bytes.toByteArray()));
+            return new Compilation(classes, models, sourceFiles);
+        }
+    }
+
+    private void writeClassFiles(Map<String, byte[]> classes) throws IOException {
+        for (var entry : classes.entrySet()) { // next to the sources, like javac without -d
+            Files.write(sourceDirectory.resolve(simpleName(entry.getKey()) + ".class"), entry.getValue());
+        }
+    }
+
+    private boolean classFileExists(Path source) {
+        String fileName = source.getFileName().toString();
+        return Files.exists(source.resolveSibling(fileName.substring(0, fileName.length() - ".java".length()) + ".class"));
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Public top-level classes live in the file of the same name; that's all models can be.
+     */
+    private static String sourceOf(String className) {
+        String simple = simpleName(className);
+        int nested = simple.indexOf('$');
+        return (nested < 0 ? simple : simple.substring(0, nested)) + ".java";
+    }
+
+    /**
+     * Index lines: {@code file <tab> sha-256 <tab> model,model... <tab> class,class...}. Lines of
+     * another shape are dropped, so their sources get compiled again.
+     */
+    private Map<String, IndexEntry> readIndex() {
+        Map<String, IndexEntry> index = new TreeMap<>();
+        if (!Files.exists(indexFile)) return index;
+        try {
+            for (String line : Files.readAllLines(indexFile)) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 4 || line.startsWith("#")) continue;
+                index.put(parts[0], new IndexEntry(parts[1], names(parts[2]), names(parts[3])));
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read model index, rebuilding it: " + e.getMessage());
+            index.clear();
+        }
+        return index;
+    }
+
+    private static List<String> names(String list) {
+        return list.isEmpty() ? List.of() : List.of(list.split(","));
+    }
+
+    private void writeIndex(Map<String, IndexEntry> index) throws IOException {
+        StringBuilder text = new StringBuilder("# source\tsha-256\tmodels\tclasses\n");
+        index.forEach((file, entry) ->
+                text.append(file).append('\t').append(entry.hash()).append('\t')
+                        .append(String.join(",", entry.models())).append('\t')
+                        .append(String.join(",", entry.classes())).append('\n'));
+        Files.writeString(indexFile, text);
+    }
+
+    static String hash(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Keeps the compiler's class files in memory instead of writing them.
+     */
+    private static final class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+        private final Map<String, ByteArrayOutputStream> output;
+        private final Map<String, String> sourceFiles;
+
+        private MemoryFileManager(StandardJavaFileManager fileManager, Map<String, ByteArrayOutputStream> output,
+                                  Map<String, String> sourceFiles) {
+            super(fileManager);
+            this.output = output;
+            this.sourceFiles = sourceFiles;
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                   FileObject sibling) {
+            sourceFiles.put(className, sibling != null ? Path.of(sibling.toUri()).getFileName().toString() : sourceOf(className));
+            return new SimpleJavaFileObject(URI.create("memory:///" + className.replace('.', '/') + kind.extension), kind) {
+                @Override
+                public OutputStream openOutputStream() {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    output.put(className, bytes);
+                    return bytes;
+                }
+            };
+        }
+    }
+}
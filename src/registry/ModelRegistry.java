@@ -0,0 +1,195 @@
+package registry;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads the models of a source directory and reloads them when their sources change, without
+ * restarting the JVM. Every reload compiles what changed (through {@link ModelCompiler}) and loads
+ * the classes into a new, separate class loader - a generation. New instances always come from the
+ * newest generation; instances created before keep running on their own. A generation nobody uses
+ * any more is garbage collected together with its classes.
+ */
+public class ModelRegistry implements Closeable {
+    private static final long SETTLE_MILLIS = 200; // editors save in several steps
+
+    private final Path sourceDirectory;
+    private final String packageName;
+    private final ModelCompiler compiler;
+    private final AtomicReference<Generation> current = new AtomicReference<>();
+    private volatile Thread watcher;
+    private volatile WatchService watchService;
+
+    /**
+     * Told about reloads, on the watcher thread.
+     */
+    public interface Listener {
+        void modelsReloaded(int generation, List<String> models);
+
+        void reloadFailed(Exception error);
+    }
+
+    /**
+     * One set of loaded model classes.
+     */
+    private record Generation(int number, List<String> models, GenerationClassLoader loader) {
+    }
+
+    /**
+     * Child-first for the generation's own classes, so they win over older copies on the class
+     * path; everything else, like {@code IModel} and {@code @Bind}, comes from the parent.
+     */
+    private static final class GenerationClassLoader extends ClassLoader {
+        private final Map<String, byte[]> classes;
+
+        private GenerationClassLoader(int generation, Map<String, byte[]> classes, ClassLoader parent) {
+            super("models-" + generation, parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!classes.containsKey(name)) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    byte[] bytes = classes.get(name);
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) resolveClass(loaded);
+                return loaded;
+            }
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) { // the bytecode of this generation, not the class path's
+            if (name.endsWith(".class")) {
+                byte[] bytes = classes.get(name.substring(0, name.length() - 6).replace('/', '.'));
+                if (bytes != null) return new ByteArrayInputStream(bytes);
+            }
+            return super.getResourceAsStream(name);
+        }
+    }
+
+    /**
+     * @param sourceDirectory the models directory; its name is the models' package, e.g. {@code src/models}
+     */
+    public ModelRegistry(Path sourceDirectory) {
+        this.sourceDirectory = sourceDirectory;
+        this.packageName = sourceDirectory.getFileName().toString();
+        this.compiler = new ModelCompiler(sourceDirectory);
+    }
+
+    /**
+     * Compiles what changed and, if anything did, switches new runs over to a fresh generation. Only
+     * classes compiled from the current sources are loaded; class files left over from deleted
+     * sources are not.
+     *
+     * @return whether there is a new generation
+     */
+    public synchronized boolean reload() throws IOException {
+        ModelCompiler.Update update = compiler.update();
+        Generation previous = current.get();
+        if (previous != null && !update.changed()) {
+            return false;
+        }
+        Map<String, byte[]> classes = new HashMap<>();
+        for (String simpleName : update.classes()) { // read now, later writes don't leak in
+            classes.put(packageName + "." + simpleName, Files.readAllBytes(sourceDirectory.resolve(simpleName + ".class")));
+        }
+        int number = previous == null ? 1 : previous.number() + 1;
+        current.set(new Generation(number, update.models(), new GenerationClassLoader(number, classes, getClass().getClassLoader())));
+        return true;
+    }
+
+    private Generation generation() {
+        Generation generation = current.get();
+        if (generation == null) {
+            try {
+                reload();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load models from " + sourceDirectory, e);
+            }
+            generation = current.get();
+        }
+        return generation;
+    }
+
+    public List<String> getModels() {
+        return generation().models();
+    }
+
+    public int getGeneration() {
+        return generation().number();
+    }
+
+    public Class<?> getModelClass(String modelName) throws ClassNotFoundException {
+        return Class.forName(packageName + "." + modelName, true, generation().loader());
+    }
+
+    public Object newInstance(String modelName) throws ReflectiveOperationException {
+        return getModelClass(modelName).getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Starts reloading in the background whenever a source in the directory is created, changed or deleted.
+     */
+    public synchronized void startWatching(Listener listener) throws IOException {
+        if (watcher != null) return;
+        watchService = sourceDirectory.getFileSystem().newWatchService();
+        sourceDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        WatchService service = watchService;
+        watcher = new Thread(() -> watch(service, listener), "model-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(WatchService service, Listener listener) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                boolean sourcesChanged = false;
+                while (key != null) { // collect everything that arrives until the directory settles
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path path && path.toString().endsWith(".java")) {
+                            sourcesChanged = true;
+                        }
+                    }
+                    key.reset();
+                    key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (!sourcesChanged) continue; // our own .class and index writes
+                try {
+                    if (reload()) {
+                        Generation generation = current.get();
+                        listener.modelsReloaded(generation.number(), generation.models());
+                    }
+                } catch (Exception e) {
+                    listener.reloadFailed(e); // the previous generation stays in use
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.interrupt();
+            watchService.close();
+            watcher = null;
+        }
+    }
+}
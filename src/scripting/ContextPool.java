@@ -0,0 +1,92 @@
+package scripting;
+
+import store.VariableStore;
+
+import javax.script.*;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Script contexts lent to one thread at a time, so scripts of different scenarios run side by side
+ * without sharing bindings. Each context comes with {@link LazyBindings} that are reused from run to
+ * run; scripts compiled by {@link ScriptCache} are classes that run on those bindings directly, no
+ * engine is involved. Contexts are created when every existing one is lent out and are kept
+ * afterwards; their number follows the number of scripts that ran at the same time.
+ */
+public final class ContextPool {
+    private final ConcurrentLinkedDeque<Lease> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * Takes a context for the calling thread; {@link Lease#close()} gives it back.
+     */
+    public Lease acquire() {
+        Lease lease = idle.pollFirst();
+        if (lease == null) {
+            created.incrementAndGet();
+            lease = new Lease();
+        }
+        return lease;
+    }
+
+    /**
+     * Contexts created so far.
+     */
+    public int getContextCount() {
+        return created.get();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ContextPool{contexts=" + created + ", idle=" + idle.size() + "}";
+    }
+
+    /**
+     * A context with its bindings, for use by one thread until closed.
+     */
+    public final class Lease implements AutoCloseable {
+        private final LazyBindings bindings = new LazyBindings(null);
+        private final ScriptContext context = new SimpleScriptContext();
+
+        private Lease() {
+            context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        }
+
+        /**
+         * The bindings of the last {@link #eval}, until the next one.
+         */
+        public LazyBindings bindings() {
+            return bindings;
+        }
+
+        /**
+         * Runs a script on a store through this lease's bindings. The series the script assigns
+         * reach the store only if it completes; see {@link LazyBindings}.
+         */
+        public Object eval(CompiledScript script, VariableStore store) throws ScriptException {
+            return eval(script, store, name -> false);
+        }
+
+        /**
+         * Like {@link #eval(CompiledScript, VariableStore)}; the script gets the series of the names
+         * {@code readOnly} accepts without a copy, see {@link LazyBindings#reset(VariableStore, Predicate)}.
+         */
+        public Object eval(CompiledScript script, VariableStore store, Predicate<String> readOnly) throws ScriptException {
+            bindings.reset(store, readOnly);
+            Object result = script.eval(context);
+            bindings.commit();
+            return result;
+        }
+
+        @Override
+        public void close() {
+            bindings.reset(null); // doesn't keep the store alive, drops what a failed script assigned
+            idle.offerFirst(this);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package scripting;
+
+import store.VariableStore;
+
+import javax.script.SimpleBindings;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Bindings backed by a {@link VariableStore}: a script reads the store's values when it uses them.
+ * Deferred series are parsed and shared series copied only when read, so untouched variables cost
+ * nothing; series the script only reads are not copied at all. Series the script assigns are held until {@link #commit()}, which is called only once the
+ * script has completed, so a script that fails halfway leaves no new series behind. Series with
+ * one-letter names ({@code i}, {@code x}) and values of other types stay in the bindings, as do
+ * variables that hide a store value with one of another type; only they are in {@link #entrySet()}.
+ * <p>
+ * {@link #reset} points the bindings at another store, so one object can serve run after run.
+ */
+public class LazyBindings extends SimpleBindings {
+    private VariableStore store;
+    private Predicate<String> readOnly = name -> false;
+    private final Map<String, double[]> assigned = new LinkedHashMap<>(); // series for the store, in assignment order
+    private int arraysWritten;
+
+    public LazyBindings(VariableStore store) {
+        super(new HashMap<>());
+        this.store = store;
+    }
+
+    /**
+     * Drops the script's own variables, and the series it assigned if they weren't committed, and
+     * continues on {@code store}.
+     */
+    public void reset(VariableStore store) {
+        reset(store, name -> false);
+    }
+
+    /**
+     * Like {@link #reset(VariableStore)}; the series of names {@code readOnly} accepts are handed
+     * out as they are, shared with snapshots, see {@link ScriptAnalysis#isReadOnly}.
+     */
+    public void reset(VariableStore store, Predicate<String> readOnly) {
+        super.clear();
+        assigned.clear();
+        this.store = store;
+        this.readOnly = readOnly;
+        arraysWritten = 0;
+    }
+
+    /**
+     * Puts the series the script assigned into the store.
+     */
+    public void commit() {
+        assigned.forEach((name, series) -> {
+            if (series != store.peek(name)) arraysWritten++;
+            store.putValue(name, series);
+        });
+        assigned.clear();
+    }
+
+    /**
+     * Series stored by the script that are not arrays the store already had.
+     */
+    public int getArraysWritten() {
+        return arraysWritten;
+    }
+
+    private static boolean isSeries(String name, Object value) {
+        return name.length() > 1 && value instanceof double[]; // однобуквенные переменные - счётчики, не данные
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return super.containsKey(key) || assigned.containsKey(key)
+                || (store != null && key instanceof String name && store.containsValue(name));
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (super.containsKey(key) || store == null || !(key instanceof String name)) {
+            return super.get(key);
+        }
+        double[] series = assigned.get(name);
+        if (series != null) {
+            return series;
+        }
+        if (!store.containsValue(name)) return null;
+        return readOnly.test(name) ? store.readValue(name) : store.getValue(name); // writable: changes land in the store
+    }
+
+    @Override
+    public Object put(String name, Object value) {
+        if (store == null || !isSeries(name, value)) {
+            Object previous = assigned.remove(name);
+            Object hidden = super.put(name, value);
+            return previous != null ? previous : hidden;
+        }
+        Object hidden = super.remove(name);
+        double[] previous = assigned.put(name, (double[]) value);
+        return previous != null ? previous : hidden;
+    }
+}
@@ -0,0 +1,313 @@
+package scripting;
+
+import org.codehaus.groovy.ast.CodeVisitorSupport;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.ModuleNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.CatchStatement;
+import org.codehaus.groovy.ast.stmt.ForStatement;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.syntax.Types;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Which binding variables a script reads and writes, found from its syntax tree without running it.
+ * A variable is read if the script uses it before assigning it, and written if the script assigns
+ * it or one of its elements ({@code x[i] = ...}). Variables the script declares itself
+ * ({@code def x}, closure parameters) are neither. Access through {@code binding} or strings is not
+ * seen; {@link #isClosed} tells whether a script has any, or anything else its results could depend on.
+ * {@link #isReadOnly} tells which variables the script only reads elements of.
+ */
+public final class ScriptAnalysis {
+    private static final Set<String> PURE_CLASSES = Set.of("Math", "StrictMath", "Double", "Integer", "Long");
+    private static final Set<String> PRINTING = Set.of("print", "println", "printf");
+
+    private final Set<String> used = new LinkedHashSet<>();
+    private final Set<String> reads = new LinkedHashSet<>();
+    private final Set<String> writes = new LinkedHashSet<>();
+    private final Map<String, Expression> firstAssignments = new HashMap<>();
+    private final Set<String> declared = new HashSet<>();
+    private final Set<String> methods = new HashSet<>(); // declared by the script
+    private final Set<String> escaping = new HashSet<>(); // used other than as x[i] or x.length
+    private boolean open; // reaches beyond the variables it names
+    private boolean indirect; // may reach variables without naming them
+
+    private ScriptAnalysis() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the script doesn't parse
+     */
+    public static ScriptAnalysis of(String scriptText) {
+        CompilationUnit unit = new CompilationUnit();
+        SourceUnit source = unit.addSource("Script.groovy", scriptText);
+        try {
+            unit.compile(Phases.CONVERSION);
+        } catch (org.codehaus.groovy.control.CompilationFailedException e) {
+            throw new IllegalArgumentException("Cannot parse script: " + e.getMessage(), e);
+        }
+        ModuleNode module = source.getAST();
+        ScriptAnalysis analysis = new ScriptAnalysis();
+        module.getMethods().forEach(method -> analysis.methods.add(method.getName()));
+        analysis.open = !module.getImports().isEmpty() || !module.getStarImports().isEmpty()
+                || !module.getStaticImports().isEmpty() || !module.getStaticStarImports().isEmpty();
+        analysis.visit(module.getStatementBlock());
+        for (MethodNode method : module.getMethods()) {
+            if (method.getCode() != null) analysis.visit(method.getCode());
+        }
+        return analysis;
+    }
+
+    /**
+     * Analyses the body of a script being compiled.
+     */
+    static ScriptAnalysis of(Statement code) {
+        ScriptAnalysis analysis = new ScriptAnalysis();
+        analysis.visit(code);
+        return analysis;
+    }
+
+    private void visit(Statement code) {
+        code.visit(new Visitor());
+        reads.removeAll(declared);
+        writes.removeAll(declared);
+        used.removeAll(declared);
+    }
+
+    /**
+     * Variables whose value the script takes from the bindings.
+     */
+    public Set<String> getReads() {
+        return Collections.unmodifiableSet(reads);
+    }
+
+    /**
+     * Variables the script assigns or changes in place.
+     */
+    public Set<String> getWrites() {
+        return Collections.unmodifiableSet(writes);
+    }
+
+    /**
+     * Whether the script's results depend on nothing but the values of {@link #getReads()}, so running
+     * it again on the same values gives the same results. That is proven, not assumed: the script
+     * must not use {@code binding}, {@code this}, names computed at run time, methods it doesn't
+     * declare itself ({@code println}, {@code evaluate}), constructors, imports or random numbers,
+     * and every name it reads must be a variable or one of a few classes of pure functions such as
+     * {@code Math}. Time, files and the like are only reached through classes, which rules them out.
+     *
+     * @param isVariable whether a name is a variable of the bindings
+     */
+    public boolean isClosed(Predicate<String> isVariable) {
+        if (open) return false;
+        for (String name : reads) {
+            if (!isVariable.test(name) && !PURE_CLASSES.contains(name)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether the script only reads elements of a variable, as {@code x[i]} or {@code x.length}, so
+     * it can be given an array shared with others. Any other use, such as assigning the variable,
+     * passing it to a method or calling one on it, could write it; so could reaching the bindings
+     * without naming the variable ({@code binding}, {@code evaluate}, names computed at run time).
+     */
+    public boolean isReadOnly(String name) {
+        return !indirect && used.contains(name) && !writes.contains(name) && !escaping.contains(name);
+    }
+
+    /**
+     * Every variable the script uses but doesn't declare, including names that turn out to be classes.
+     */
+    Set<String> getUsed() {
+        return Collections.unmodifiableSet(used);
+    }
+
+    /**
+     * Whether the variable itself is assigned, not just its elements.
+     */
+    boolean isAssigned(String name) {
+        return firstAssignments.containsKey(name);
+    }
+
+    /**
+     * The value of the first plain assignment ({@code x = value}), or null.
+     */
+    Expression getFirstAssignment(String name) {
+        return firstAssignments.get(name);
+    }
+
+    private final class Visitor extends CodeVisitorSupport {
+        private void read(String name) {
+            if (name.equals("this") || name.equals("super")) return;
+            if (used.add(name)) reads.add(name); // first seen as a read
+        }
+
+        private void write(String name, Expression value) {
+            used.add(name);
+            writes.add(name);
+            if (!firstAssignments.containsKey(name)) firstAssignments.put(name, value);
+        }
+
+        @Override
+        public void visitVariableExpression(VariableExpression expression) {
+            String name = expression.getName();
+            if (name.equals("this") || name.equals("super") || name.equals("binding")) open = indirect = true;
+            escaping.add(name);
+            read(name);
+        }
+
+        /**
+         * {@code x[i]} or {@code x.length}: reads x without letting it go anywhere.
+         */
+        private void readElements(VariableExpression array) {
+            String name = array.getName();
+            if (name.equals("this") || name.equals("super") || name.equals("binding")) open = indirect = true;
+            read(name);
+        }
+
+        @Override
+        public void visitMethodCallExpression(MethodCallExpression call) {
+            String method = call.getMethodAsString(); // null: computed at run time
+            if (method == null || call.isImplicitThis() && !methods.contains(method) && !PRINTING.contains(method)) {
+                indirect = true; // evaluate, getProperty... may reach any variable
+            }
+            if (method == null || call.isImplicitThis() && !methods.contains(method)
+                    || method.equals("random") && call.getObjectExpression() instanceof VariableExpression receiver
+                    && PURE_CLASSES.contains(receiver.getName())) {
+                open = true;
+            }
+            if (!call.isImplicitThis()) call.getObjectExpression().visit(this);
+            call.getMethod().visit(this);
+            call.getArguments().visit(this);
+        }
+
+        @Override
+        public void visitPropertyExpression(PropertyExpression expression) {
+            if (expression.getPropertyAsString() == null) open = indirect = true;
+            if ("length".equals(expression.getPropertyAsString()) && !expression.isSpreadSafe()
+                    && expression.getObjectExpression() instanceof VariableExpression array) {
+                readElements(array);
+                return;
+            }
+            super.visitPropertyExpression(expression);
+        }
+
+        @Override
+        public void visitAttributeExpression(AttributeExpression expression) {
+            open = true;
+            super.visitAttributeExpression(expression);
+        }
+
+        @Override
+        public void visitConstructorCallExpression(ConstructorCallExpression call) {
+            open = true;
+            super.visitConstructorCallExpression(call);
+        }
+
+        @Override
+        public void visitStaticMethodCallExpression(StaticMethodCallExpression call) {
+            open = true;
+            super.visitStaticMethodCallExpression(call);
+        }
+
+        @Override
+        public void visitMethodPointerExpression(MethodPointerExpression expression) {
+            open = true;
+            super.visitMethodPointerExpression(expression);
+        }
+
+        @Override
+        public void visitClassExpression(ClassExpression expression) {
+            open = true;
+            super.visitClassExpression(expression);
+        }
+
+        @Override
+        public void visitDeclarationExpression(DeclarationExpression expression) {
+            expression.getRightExpression().visit(this);
+            if (expression.isMultipleAssignmentDeclaration()) {
+                expression.getTupleExpression().getExpressions()
+                        .forEach(e -> declared.add(((VariableExpression) e).getName()));
+            } else {
+                declared.add(expression.getVariableExpression().getName());
+            }
+        }
+
+        @Override
+        public void visitBinaryExpression(BinaryExpression expression) {
+            int operation = expression.getOperation().getType();
+            Expression left = expression.getLeftExpression();
+            if (!Types.isAssignment(operation)) {
+                if (operation == Types.LEFT_SQUARE_BRACKET && left instanceof VariableExpression array) {
+                    readElements(array);
+                    expression.getRightExpression().visit(this);
+                } else {
+                    super.visitBinaryExpression(expression);
+                }
+                return;
+            }
+            if (left instanceof VariableExpression variable) {
+                if (operation != Types.ASSIGN) read(variable.getName()); // x += 1 reads x
+                expression.getRightExpression().visit(this);
+                write(variable.getName(), operation == Types.ASSIGN ? expression.getRightExpression() : null);
+            } else if (left instanceof BinaryExpression element && element.getOperation().getType() == Types.LEFT_SQUARE_BRACKET
+                    && element.getLeftExpression() instanceof VariableExpression array) {
+                element.visit(this); // reads the array and the index
+                expression.getRightExpression().visit(this);
+                writes.add(array.getName()); // changed in place
+            } else {
+                super.visitBinaryExpression(expression);
+            }
+        }
+
+        @Override
+        public void visitPostfixExpression(PostfixExpression expression) {
+            step(expression.getExpression());
+        }
+
+        @Override
+        public void visitPrefixExpression(PrefixExpression expression) {
+            step(expression.getExpression());
+        }
+
+        private void step(Expression operand) {
+            operand.visit(this);
+            if (operand instanceof VariableExpression variable) {
+                write(variable.getName(), null);
+            } else if (operand instanceof BinaryExpression element && element.getOperation().getType() == Types.LEFT_SQUARE_BRACKET
+                    && element.getLeftExpression() instanceof VariableExpression array) {
+                writes.add(array.getName());
+            }
+        }
+
+        @Override
+        public void visitClosureExpression(ClosureExpression expression) {
+            if (expression.getParameters() != null) {
+                for (Parameter parameter : expression.getParameters()) declared.add(parameter.getName());
+            }
+            declared.add("it");
+            super.visitClosureExpression(expression);
+        }
+
+        @Override
+        public void visitForLoop(ForStatement loop) {
+            if (loop.getVariable() != ForStatement.FOR_LOOP_DUMMY) {
+                declared.add(loop.getVariable().getName());
+            }
+            super.visitForLoop(loop);
+        }
+
+        @Override
+        public void visitCatchStatement(CatchStatement statement) {
+            declared.add(statement.getVariable().getName());
+            super.visitCatchStatement(statement);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package scripting;
+
+import groovy.lang.Binding;
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.Script;
+import groovy.transform.CompileStatic;
+import metrics.Metrics;
+import metrics.Phase;
+import metrics.Span;
+import org.codehaus.groovy.control.CompilationFailedException;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.customizers.ASTTransformationCustomizer;
+import org.codehaus.groovy.jsr223.GroovyScriptEngineImpl;
+import org.codehaus.groovy.runtime.InvokerHelper;
+
+import javax.script.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps compiled Groovy scripts keyed by the hash of their text, so the same script
+ * is parsed and compiled only once. Evicts the least recently used entry when full.
+ * <p>
+ * Each script is compiled into a class loader of its own and runs directly on the bindings it is
+ * given, not through an engine; the shared engine of {@link #getEngine()} only compiles. Dropping
+ * an entry lets its class be unloaded.
+ */
+public class ScriptCache {
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+    private final Map<String, CompiledScript> compiled;
+    private final Map<String, TypedScript> typed;
+    private final Map<String, ScriptAnalysis> analyses;
+    private final Map<Path, FileEntry> files;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fileHits = new AtomicLong();
+    private final AtomicLong fileMisses = new AtomicLong();
+    private final AtomicLong staticFallbacks = new AtomicLong();
+    private volatile ScriptEngine engine;
+    private final ContextPool contexts = new ContextPool();
+
+    private record FileEntry(FileTime modified, long size, String text) {
+    }
+
+    /**
+     * A script compiled for the given variable types; {@code script} is the dynamic one when static compilation failed.
+     */
+    private record TypedScript(Map<String, Class<?>> types, CompiledScript script) {
+        boolean matches(Function<String, Class<?>> typeOf) {
+            for (var entry : types.entrySet()) {
+                if (!Objects.equals(entry.getValue(), typeOf.apply(entry.getKey()))) return false;
+            }
+            return true;
+        }
+    }
+
+    public ScriptCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ScriptCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.compiled = lru();
+        this.typed = lru();
+        this.analyses = lru();
+        this.files = lru();
+    }
+
+    private <K, V> Map<K, V> lru() {
+        return new LinkedHashMap<>(16, 0.75f, true) { // access order -> LRU
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the shared Groovy engine, looking it up only on first use.
+     */
+    public ScriptEngine getEngine() {
+        ScriptEngine result = engine;
+        if (result == null) {
+            synchronized (this) {
+                result = engine;
+                if (result == null) {
+                    try (Span span = Metrics.start(Phase.ENGINE)) {
+                        result = new ScriptEngineManager().getEngineByExtension("groovy");
+                    }
+                    if (result == null) {
+                        throw new RuntimeException("Groovy script engine not found. Make sure Groovy is available.");
+                    }
+                    engine = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The contexts scripts are evaluated in.
+     */
+    public ContextPool getContextPool() {
+        return contexts;
+    }
+
+    public CompiledScript compile(String scriptText) throws ScriptException {
+        String key = hash(scriptText);
+        synchronized (compiled) {
+            CompiledScript script = compiled.get(key);
+            if (script != null) {
+                hits.incrementAndGet();
+                return script;
+            }
+        }
+        misses.incrementAndGet();
+        CompiledScript script = doCompile(scriptText); // compile outside the lock, it is the slow part
+        synchronized (compiled) {
+            CompiledScript existing = compiled.putIfAbsent(key, script);
+            return existing != null ? existing : script;
+        }
+    }
+
+    /**
+     * Compiles a script with {@code @CompileStatic}, declaring the variables it takes from the
+     * bindings with the types {@code typeOf} gives ({@code null}: not a variable). Loops over series
+     * then run without dynamic dispatch. A script that doesn't type check is compiled dynamically
+     * instead, see {@link #getStaticFallbackCount()}. The result is reused while the types of the
+     * script's variables stay the same.
+     */
+    public CompiledScript compileStatic(String scriptText, Function<String, Class<?>> typeOf) throws ScriptException {
+        String key = hash(scriptText);
+        synchronized (typed) {
+            TypedScript script = typed.get(key);
+            if (script != null && script.matches(typeOf)) {
+                hits.incrementAndGet();
+                return script.script();
+            }
+        }
+        misses.incrementAndGet();
+        TypedDeclarations declarations = new TypedDeclarations(typeOf);
+        CompilerConfiguration configuration = new CompilerConfiguration();
+        configuration.addCompilationCustomizers(declarations, new ASTTransformationCustomizer(CompileStatic.class));
+        CompiledScript script;
+        try (Span span = Metrics.start(Phase.COMPILE).name("static").script(scriptText)) {
+            var loader = new GroovyClassLoader(ScriptCache.class.getClassLoader(), configuration); // one per script, goes with it
+            script = new ClassScript(loader.parseClass(scriptText), getEngine());
+        } catch (CompilationFailedException e) {
+            staticFallbacks.incrementAndGet();
+            script = doCompile(scriptText);
+        }
+        synchronized (typed) {
+            typed.put(key, new TypedScript(new HashMap<>(declarations.getTypes()), script));
+        }
+        return script;
+    }
+
+    /**
+     * Runs a compiled script class with the engine-scope bindings of the context. No engine keeps
+     * the script, so the class can be unloaded once the cache has dropped it.
+     */
+    private static final class ClassScript extends CompiledScript {
+        private final Class<?> scriptClass;
+        private final ScriptEngine engine;
+
+        ClassScript(Class<?> scriptClass, ScriptEngine engine) {
+            this.scriptClass = scriptClass;
+            this.engine = engine;
+        }
+
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Script script = InvokerHelper.createScript(scriptClass, new Binding(context.getBindings(ScriptContext.ENGINE_SCOPE)));
+            try {
+                return script.run();
+            } catch (Exception e) {
+                throw new ScriptException(e);
+            }
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return engine;
+        }
+    }
+
+    /**
+     * Returns the {@link ScriptAnalysis} of a script, analysing each text only once.
+     */
+    public ScriptAnalysis analyze(String scriptText) {
+        String key = hash(scriptText);
+        synchronized (analyses) {
+            ScriptAnalysis analysis = analyses.get(key);
+            if (analysis != null) return analysis;
+        }
+        ScriptAnalysis analysis = ScriptAnalysis.of(scriptText);
+        synchronized (analyses) {
+            analyses.put(key, analysis);
+        }
+        return analysis;
+    }
+
+    /**
+     * Compiles a script file, re-reading it only when its modification time or size changed.
+     */
+    public CompiledScript compileFile(Path path) throws IOException, ScriptException {
+        return compile(readFile(path));
+    }
+
+    /**
+     * Returns the text of a script file, re-reading it only when its modification time or size changed.
+     */
+    public String readFile(Path path) throws IOException {
+        Path key = path.toAbsolutePath().normalize();
+        FileTime modified = Files.getLastModifiedTime(key);
+        long size = Files.size(key);
+        synchronized (files) {
+            FileEntry entry = files.get(key);
+            if (entry != null && entry.modified().equals(modified) && entry.size() == size) {
+                fileHits.incrementAndGet();
+                return entry.text();
+            }
+        }
+        fileMisses.incrementAndGet();
+        String text = Files.readString(key);
+        synchronized (files) {
+            files.put(key, new FileEntry(modified, size, text));
+        }
+        return text;
+    }
+
+    private CompiledScript doCompile(String scriptText) throws ScriptException {
+        ScriptEngine groovyEngine = getEngine();
+        if (groovyEngine instanceof GroovyScriptEngineImpl groovy) {
+            try (Span span = Metrics.start(Phase.COMPILE).script(scriptText)) {
+                var loader = new GroovyClassLoader(groovy.getClassLoader().getParent()); // one per script, so an evicted script can be unloaded
+                return new ClassScript(loader.parseClass(scriptText), groovy);
+            } catch (CompilationFailedException e) {
+                throw new ScriptException(e);
+            }
+        }
+        if (groovyEngine instanceof Compilable compilable) {
+            try (Span span = Metrics.start(Phase.COMPILE).script(scriptText)) {
+                return compilable.compile(scriptText);
+            }
+        }
+        return new CompiledScript() { // engine can't precompile -> evaluate the text every time
+            @Override
+            public Object eval(ScriptContext context) throws ScriptException {
+                return groovyEngine.eval(scriptText, context);
+            }
+
+            @Override
+            public ScriptEngine getEngine() {
+                return groovyEngine;
+            }
+        };
+    }
+
+    public static String hash(String scriptText) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(scriptText.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Scripts that failed static type checking and were compiled dynamically.
+     */
+    public long getStaticFallbackCount() {
+        return staticFallbacks.get();
+    }
+
+    public long getFileHitCount() {
+        return fileHits.get();
+    }
+
+    public long getFileMissCount() {
+        return fileMisses.get();
+    }
+
+    public int size() {
+        int count;
+        synchronized (compiled) {
+            count = compiled.size();
+        }
+        synchronized (typed) {
+            return count + typed.size();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        synchronized (compiled) {
+            compiled.clear();
+        }
+        synchronized (typed) {
+            typed.clear();
+        }
+        synchronized (analyses) {
+            analyses.clear();
+        }
+        synchronized (files) {
+            files.clear();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptCache{hits=" + hits + ", misses=" + misses + ", fileHits=" + fileHits
+                + ", fileMisses=" + fileMisses + ", staticFallbacks=" + staticFallbacks + ", size=" + size() + "/" + capacity
+                + ", contexts=" + contexts.getContextCount() + "}";
+    }
+}
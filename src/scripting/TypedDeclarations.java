@@ -0,0 +1,93 @@
+package scripting;
+
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.MethodNode;
+import org.codehaus.groovy.ast.Parameter;
+import org.codehaus.groovy.ast.expr.*;
+import org.codehaus.groovy.ast.stmt.Statement;
+import org.codehaus.groovy.ast.stmt.TryCatchStatement;
+import org.codehaus.groovy.classgen.GeneratorContext;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.control.customizers.CompilationCustomizer;
+
+import java.util.*;
+import java.util.function.Function;
+
+import static org.codehaus.groovy.ast.tools.GeneralUtils.*;
+
+/**
+ * Turns the variables a script takes from its bindings into typed local variables, so the script
+ * can be compiled with {@code @CompileStatic}. A variable found in the store is declared with the
+ * store's type ({@code int LL}, {@code double[]} series) and read from the bindings once; a new one
+ * gets the type of its first assignment. Everything the script assigns is written back to the
+ * bindings when it ends.
+ */
+class TypedDeclarations extends CompilationCustomizer {
+    private final Function<String, Class<?>> typeOf;
+    private final Map<String, Class<?>> types = new HashMap<>();
+
+    TypedDeclarations(Function<String, Class<?>> typeOf) {
+        super(CompilePhase.CONVERSION); // before names are resolved to classes and scopes
+        this.typeOf = typeOf;
+    }
+
+    /**
+     * The store types the declarations were made for, null for names the store doesn't have.
+     */
+    Map<String, Class<?>> getTypes() {
+        return types;
+    }
+
+    @Override
+    public void call(SourceUnit source, GeneratorContext context, ClassNode classNode) {
+        if (!classNode.isScript()) return;
+        MethodNode run = classNode.getMethod("run", Parameter.EMPTY_ARRAY);
+        if (run == null) return;
+
+        ScriptAnalysis usage = ScriptAnalysis.of(run.getCode());
+
+        List<Statement> declarations = new ArrayList<>();
+        List<Statement> writeBacks = new ArrayList<>();
+        for (String name : usage.getUsed()) {
+            Class<?> type = typeOf.apply(name);
+            types.put(name, type);
+            if (type != null) {
+                ClassNode typeNode = type.getClassLoader() == null ? ClassHelper.make(type) : ClassHelper.OBJECT_TYPE;
+                declarations.add(declS(localVarX(name, typeNode), castX(typeNode, callThisX("getProperty", constX(name)))));
+            } else if (usage.isAssigned(name)) {
+                ClassNode typeNode = typeOf(usage.getFirstAssignment(name));
+                declarations.add(declS(localVarX(name, typeNode), defaultValue(typeNode)));
+            } else {
+                continue; // a class name or something the static compiler has to reject
+            }
+            if (usage.isAssigned(name)) {
+                writeBacks.add(stmt(callThisX("setProperty", args(constX(name), varX(name)))));
+            }
+        }
+        declarations.add(new TryCatchStatement(run.getCode(), block(writeBacks.toArray(Statement[]::new))));
+        run.setCode(block(declarations.toArray(Statement[]::new)));
+    }
+
+    private static ClassNode typeOf(Expression firstAssignment) {
+        if (firstAssignment instanceof ArrayExpression array) {
+            return array.getType();
+        }
+        if (firstAssignment instanceof ConstantExpression constant) {
+            Object value = constant.getValue();
+            if (value instanceof Integer) return ClassHelper.int_TYPE;
+            if (value instanceof Number) return ClassHelper.double_TYPE; // 0.5 is a BigDecimal in Groovy
+            if (value instanceof Boolean) return ClassHelper.boolean_TYPE;
+            if (value instanceof String) return ClassHelper.STRING_TYPE;
+        }
+        return ClassHelper.dynamicType(); // def, left to flow typing
+    }
+
+    private static Expression defaultValue(ClassNode type) {
+        if (type == ClassHelper.int_TYPE) return constX(0);
+        if (type == ClassHelper.double_TYPE) return constX(0.0d);
+        if (type == ClassHelper.boolean_TYPE) return constX(false);
+        return ConstantExpression.NULL;
+    }
+}
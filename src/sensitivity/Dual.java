@@ -0,0 +1,137 @@
+package sensitivity;
+
+import interfaces.IArithmetic;
+
+/**
+ * A number with its derivatives in several directions at once, for forward-mode automatic
+ * differentiation: every operation computes the value and, by the chain rule, the derivatives.
+ * Constants have no derivatives stored at all.
+ */
+public final class Dual {
+    public static final IArithmetic<Dual[]> ARITHMETIC = new IArithmetic<>() {
+        @Override
+        public Dual[] newSeries(int length) {
+            return new Dual[length];
+        }
+
+        @Override
+        public void plus(Dual[] to, int k, Dual[] a, int i, Dual[] b, int j) {
+            to[k] = a[i].plus(b[j]);
+        }
+
+        @Override
+        public void minus(Dual[] to, int k, Dual[] a, int i, Dual[] b, int j) {
+            to[k] = a[i].minus(b[j]);
+        }
+
+        @Override
+        public void times(Dual[] to, int k, Dual[] a, int i, Dual[] b, int j) {
+            to[k] = a[i].times(b[j]);
+        }
+    };
+
+    private final double value;
+    private final double[] tangent; // null: all zero
+
+    private Dual(double value, double[] tangent) {
+        this.value = value;
+        this.tangent = tangent;
+    }
+
+    public static Dual constant(double value) {
+        return new Dual(value, null);
+    }
+
+    /**
+     * A variable of {@code directions} directions whose derivative is 1 in direction {@code seed}
+     * (-1: none) and 0 in the others.
+     */
+    public static Dual variable(double value, int directions, int seed) {
+        if (seed < 0) return constant(value);
+        double[] tangent = new double[directions];
+        tangent[seed] = 1;
+        return new Dual(value, tangent);
+    }
+
+    public double value() {
+        return value;
+    }
+
+    /**
+     * The derivative in one direction.
+     */
+    public double derivative(int direction) {
+        return tangent == null ? 0 : tangent[direction];
+    }
+
+    public Dual plus(Dual other) {
+        return new Dual(value + other.value, combine(1, tangent, 1, other.tangent));
+    }
+
+    public Dual plus(double constant) {
+        return new Dual(value + constant, tangent);
+    }
+
+    public Dual minus(Dual other) {
+        return new Dual(value - other.value, combine(1, tangent, -1, other.tangent));
+    }
+
+    public Dual minus(double constant) {
+        return new Dual(value - constant, tangent);
+    }
+
+    public Dual times(Dual other) {
+        return new Dual(value * other.value, combine(other.value, tangent, value, other.tangent));
+    }
+
+    public Dual times(double constant) {
+        return new Dual(value * constant, combine(constant, tangent, 0, null));
+    }
+
+    public Dual div(Dual other) {
+        double quotient = value / other.value;
+        return new Dual(quotient, combine(1 / other.value, tangent, -quotient / other.value, other.tangent));
+    }
+
+    public Dual div(double constant) {
+        return times(1 / constant);
+    }
+
+    public Dual negate() {
+        return times(-1);
+    }
+
+    public Dual exp() {
+        double e = Math.exp(value);
+        return new Dual(e, combine(e, tangent, 0, null));
+    }
+
+    public Dual log() {
+        return new Dual(Math.log(value), combine(1 / value, tangent, 0, null));
+    }
+
+    public Dual sqrt() {
+        double root = Math.sqrt(value);
+        return new Dual(root, combine(0.5 / root, tangent, 0, null));
+    }
+
+    public Dual pow(double exponent) {
+        return new Dual(Math.pow(value, exponent), combine(exponent * Math.pow(value, exponent - 1), tangent, 0, null));
+    }
+
+    /**
+     * {@code a * x + b * y}, element by element; null stands for zeros.
+     */
+    private static double[] combine(double a, double[] x, double b, double[] y) {
+        if (x == null && y == null) return null;
+        double[] result = new double[x != null ? x.length : y.length];
+        if (x != null) for (int i = 0; i < result.length; i++) result[i] = a * x[i];
+        if (y != null) for (int i = 0; i < result.length; i++) result[i] += b * y[i];
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return tangent == null ? Double.toString(value) : value + " + " + java.util.Arrays.toString(tangent) + "ε";
+    }
+}
@@ -0,0 +1,73 @@
+package sensitivity;
+
+import java.util.*;
+
+/**
+ * What a {@link SensitivityAnalysis} found: the result series of one run and, for each of them, its
+ * derivative with respect to each selected input. An input is moved by the same amount in every
+ * period, so {@code get("PKB", "twKI")[t]} is how much {@code PKB[t]} changes per unit added to
+ * all of {@code twKI}.
+ */
+public final class Sensitivities {
+    private final List<String> inputs;
+    private final Map<String, double[]> values;
+    private final Map<String, double[][]> derivatives; // per output, per input
+    private final boolean exact;
+
+    Sensitivities(List<String> inputs, Map<String, double[]> values, Map<String, double[][]> derivatives, boolean exact) {
+        this.inputs = List.copyOf(inputs);
+        this.values = values;
+        this.derivatives = derivatives;
+        this.exact = exact;
+    }
+
+    public List<String> getInputs() {
+        return inputs;
+    }
+
+    /**
+     * The series the model had after the run, inputs it changed included.
+     */
+    public Set<String> getOutputs() {
+        return Collections.unmodifiableSet(values.keySet());
+    }
+
+    /**
+     * An output as the model's own {@code run()} computed it.
+     */
+    public double[] value(String output) {
+        double[] series = values.get(output);
+        if (series == null) {
+            throw new IllegalArgumentException("Unknown output: " + output);
+        }
+        return series.clone();
+    }
+
+    /**
+     * The derivative of an output series with respect to an input, period by period.
+     */
+    public double[] get(String output, String input) {
+        double[][] byInput = derivatives.get(output);
+        if (byInput == null) {
+            throw new IllegalArgumentException("Unknown output: " + output);
+        }
+        int k = inputs.indexOf(input);
+        if (k < 0) {
+            throw new IllegalArgumentException("Not a selected input: " + input);
+        }
+        return byInput[k].clone();
+    }
+
+    /**
+     * Whether the derivatives were computed by automatic differentiation rather than estimated by
+     * finite differences.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    @Override
+    public String toString() {
+        return "Sensitivities{inputs=" + inputs + ", outputs=" + values.keySet() + ", exact=" + exact + "}";
+    }
+}
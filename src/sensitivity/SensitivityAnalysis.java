@@ -0,0 +1,144 @@
+package sensitivity;
+
+import binding.BindingPlan;
+import binding.EntityBatchRunner;
+import interfaces.IDifferentiableModel;
+import store.EntityBatch;
+import store.VariableStore;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Finds how the results of a model respond to some of its inputs, in one pass instead of a run per
+ * input. An {@link IDifferentiableModel} runs once on {@link Dual} numbers, one derivative direction
+ * per input, which gives exact derivatives. Any other model is run on a batch of copies of the data,
+ * each with one input moved up or down a little (central differences); see {@link EntityBatchRunner}
+ * for how the copies are run.
+ */
+public final class SensitivityAnalysis {
+    private final Callable<?> newModel;
+
+    /**
+     * @param newModel creates a fresh instance of the model
+     */
+    public SensitivityAnalysis(Callable<?> newModel) {
+        this.newModel = newModel;
+    }
+
+    /**
+     * @param data the model's inputs, not changed
+     * @param inputs the series to differentiate by; each must be bound by the model and in the data
+     */
+    public Sensitivities run(VariableStore data, List<String> inputs) throws Exception {
+        Object model = newModel.call();
+        BindingPlan plan = checkInputs(model, data, inputs);
+        return model instanceof IDifferentiableModel differentiable
+                ? forward(differentiable, plan, data, inputs)
+                : finiteDifferences(plan, data, inputs);
+    }
+
+    /**
+     * Estimates the derivatives by finite differences even for an {@link IDifferentiableModel}, for
+     * instance to check its dual computation.
+     */
+    public Sensitivities runFiniteDifferences(VariableStore data, List<String> inputs) throws Exception {
+        return finiteDifferences(checkInputs(newModel.call(), data, inputs), data, inputs);
+    }
+
+    private static BindingPlan checkInputs(Object model, VariableStore data, List<String> inputs) {
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No inputs to differentiate by");
+        }
+        BindingPlan plan = BindingPlan.of(model.getClass());
+        for (String input : inputs) {
+            BindingPlan.BoundField field = plan.getField(input);
+            if (field == null || field.type() != double[].class) {
+                throw new IllegalArgumentException("Not a series of the model: " + input);
+            }
+            if (data.get(input) == null) {
+                throw new IllegalArgumentException("Input missing from the data: " + input);
+            }
+        }
+        return plan;
+    }
+
+    private static Sensitivities forward(IDifferentiableModel model, BindingPlan plan, VariableStore data, List<String> inputs) {
+        int directions = inputs.size();
+        Map<String, Dual[]> series = new LinkedHashMap<>();
+        for (BindingPlan.BoundField field : plan.getFields()) {
+            double[] values = field.type() == double[].class ? data.get(field.name()) : null;
+            if (values == null) continue;
+            int seed = inputs.indexOf(field.name());
+            Dual[] duals = new Dual[values.length];
+            for (int t = 0; t < values.length; t++) duals[t] = Dual.variable(values[t], directions, seed);
+            series.put(field.name(), duals);
+        }
+        try {
+            model.run(series, data.size());
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Error running model on dual numbers", e);
+        }
+
+        Map<String, double[]> values = new LinkedHashMap<>();
+        Map<String, double[][]> derivatives = new LinkedHashMap<>();
+        series.forEach((name, duals) -> {
+            if (plan.getField(name) == null) return; // a helper series of the model
+            double[] value = new double[duals.length];
+            double[][] byInput = new double[directions][duals.length];
+            for (int t = 0; t < duals.length; t++) {
+                if (duals[t] == null) {
+                    value[t] = Double.NaN;
+                    for (double[] derivative : byInput) derivative[t] = Double.NaN;
+                    continue;
+                }
+                value[t] = duals[t].value();
+                for (int k = 0; k < directions; k++) byInput[k][t] = duals[t].derivative(k);
+            }
+            values.put(name, value);
+            derivatives.put(name, byInput);
+        });
+        return new Sensitivities(inputs, values, derivatives, true);
+    }
+
+    private Sensitivities finiteDifferences(BindingPlan plan, VariableStore data, List<String> inputs) throws Exception {
+        // entity 0 is the data as it is, 2k+1 and 2k+2 have input k moved up and down by steps[k]
+        VariableStore.Snapshot base = data.snapshot();
+        List<VariableStore> copies = new ArrayList<>();
+        copies.add(base.branch());
+        double[] steps = new double[inputs.size()];
+        for (int k = 0; k < inputs.size(); k++) {
+            double[] input = data.get(inputs.get(k));
+            double scale = 1;
+            for (double v : input) scale = Math.max(scale, Math.abs(v));
+            steps[k] = Math.cbrt(Math.ulp(1.0)) * scale; // balances truncation against rounding
+            for (int sign : new int[]{1, -1}) {
+                double[] moved = input.clone();
+                for (int t = 0; t < moved.length; t++) moved[t] += sign * steps[k];
+                VariableStore copy = base.branch();
+                copy.put(inputs.get(k), moved);
+                copies.add(copy);
+            }
+        }
+        EntityBatch batch = EntityBatch.of(copies);
+        new EntityBatchRunner(newModel).run(batch);
+
+        Map<String, double[]> values = new LinkedHashMap<>();
+        Map<String, double[][]> derivatives = new LinkedHashMap<>();
+        for (BindingPlan.BoundField field : plan.getFields()) {
+            if (field.type() != double[].class || !batch.contains(field.name())) continue;
+            double[] matrix = batch.get(field.name());
+            int entities = batch.entityCount();
+            double[] value = batch.series(field.name(), 0);
+            double[][] byInput = new double[inputs.size()][value.length];
+            for (int k = 0; k < inputs.size(); k++) {
+                for (int t = 0, i = 0; t < value.length; t++, i += entities) {
+                    byInput[k][t] = (matrix[i + 2 * k + 1] - matrix[i + 2 * k + 2]) / (2 * steps[k]);
+                }
+            }
+            values.put(field.name(), value);
+            derivatives.put(field.name(), byInput);
+        }
+        return new Sensitivities(inputs, values, derivatives, false);
+    }
+}
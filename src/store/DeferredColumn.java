@@ -0,0 +1,13 @@
+package store;
+
+/**
+ * A column whose values are produced only when first read, see {@link VariableStore#putDeferred}.
+ */
+public interface DeferredColumn {
+    /**
+     * Returns the values, a new array the store takes ownership of.
+     *
+     * @throws NumberFormatException if the values turn out not to be numbers
+     */
+    double[] load();
+}
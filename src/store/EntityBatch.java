@@ -0,0 +1,133 @@
+package store;
+
+import java.util.*;
+
+/**
+ * The variables of many entities that share the same periods, as one matrix per variable instead of
+ * one store per entity. A matrix holds every entity of a period next to each other (see
+ * {@link interfaces.IBatchModel}), {@code entities * LL} values in all.
+ */
+public final class EntityBatch {
+    private final String[] labels;
+    private final int size;
+    private final int entities;
+    private final Map<String, double[]> matrices = new LinkedHashMap<>();
+
+    /**
+     * @param labels the {@code LATA} line, as in {@link VariableStore#getPeriods()}
+     */
+    public EntityBatch(String[] labels, int entities) {
+        if (entities < 1) {
+            throw new IllegalArgumentException("A batch needs at least one entity: " + entities);
+        }
+        this.labels = labels.clone();
+        this.size = labels.length - 1;
+        this.entities = entities;
+    }
+
+    /**
+     * Gathers the series of several stores, one per entity. The stores must have the same periods;
+     * a series missing from one of them is left out.
+     */
+    public static EntityBatch of(List<VariableStore> stores) {
+        if (stores.isEmpty()) {
+            throw new IllegalArgumentException("No entities");
+        }
+        VariableStore first = stores.get(0);
+        EntityBatch batch = new EntityBatch(first.getPeriods(), stores.size());
+        for (VariableStore store : stores) {
+            if (!Arrays.equals(store.getPeriods(), first.getPeriods())) {
+                throw new IllegalArgumentException("Entities have different periods: "
+                        + Arrays.toString(first.getPeriods()) + ", " + Arrays.toString(store.getPeriods()));
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (int column = 0; column < first.columnCount(); column++) names.add(first.name(column));
+        names:
+        for (String name : names) {
+            double[][] series = new double[stores.size()][];
+            for (int e = 0; e < series.length; e++) {
+                series[e] = stores.get(e).get(name);
+                if (series[e] == null) continue names;
+            }
+            double[] matrix = new double[batch.entities * batch.size];
+            for (int e = 0; e < series.length; e++) batch.scatter(matrix, e, series[e]);
+            batch.matrices.put(name, matrix);
+        }
+        return batch;
+    }
+
+    public String[] getPeriods() {
+        return labels.clone();
+    }
+
+    /**
+     * Number of periods ({@code LL}).
+     */
+    public int size() {
+        return size;
+    }
+
+    public int entityCount() {
+        return entities;
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(matrices.keySet());
+    }
+
+    public boolean contains(String name) {
+        return matrices.containsKey(name);
+    }
+
+    /**
+     * The matrix of a variable, not a copy. Null for unknown names.
+     */
+    public double[] get(String name) {
+        return matrices.get(name);
+    }
+
+    public void put(String name, double[] matrix) {
+        if (matrix.length != entities * size) {
+            throw new IllegalArgumentException("Matrix " + name + " has " + matrix.length + " values, expected "
+                    + entities + " x " + size);
+        }
+        matrices.put(name, matrix);
+    }
+
+    public void remove(String name) {
+        matrices.remove(name);
+    }
+
+    /**
+     * Copies out the series of one entity.
+     */
+    public double[] series(String name, int entity) {
+        double[] matrix = matrices.get(name);
+        if (matrix == null) return null;
+        Objects.checkIndex(entity, entities);
+        double[] series = new double[size];
+        for (int t = 0, i = entity; t < size; t++, i += entities) series[t] = matrix[i];
+        return series;
+    }
+
+    /**
+     * Writes the series of one entity into a matrix of this batch's shape. Shorter series leave
+     * the remaining periods as they are, longer ones are cut.
+     */
+    public void scatter(double[] matrix, int entity, double[] series) {
+        Objects.checkIndex(entity, entities);
+        int n = Math.min(size, series.length);
+        for (int t = 0, i = entity; t < n; t++, i += entities) matrix[i] = series[t];
+    }
+
+    /**
+     * The variables of one entity as a store of its own.
+     */
+    public VariableStore toStore(int entity) {
+        VariableStore store = new VariableStore();
+        store.setPeriods(labels.clone());
+        for (String name : matrices.keySet()) store.put(name, series(name, entity));
+        return store;
+    }
+}
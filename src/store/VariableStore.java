@@ -0,0 +1,416 @@
+package store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Typed storage for the controller's variables. The period labels ({@code LATA}) and their count
+ * ({@code LL}) are kept once, every series is a primitive column found through a name-to-index table.
+ * Columns are handed out without copying, so they can be bound straight into {@code @Bind double[]} fields.
+ * <p>
+ * {@link #snapshot()} freezes the current columns in O(1). The store and every branch of the
+ * snapshot then share them, and a column is copied only when it is handed out for writing
+ * ({@link #mutable}, {@link #getValue}) - to a model or a script - for the first time.
+ */
+public class VariableStore {
+    public static final String PERIODS = "LATA";
+    public static final String PERIOD_COUNT = "LL";
+    private static final VarHandle DEFERRED = MethodHandles.arrayElementVarHandle(DeferredColumn[].class);
+
+    private String[] labels; // LATA line, labels[0] is "LATA"
+    private int size;        // LL
+    private Table table = new Table();
+
+    /**
+     * The columns. Once frozen by a snapshot it is never changed again, except for parsing deferred
+     * columns, which does not change what the columns contain. A frozen table may be read by the
+     * branches of its snapshot on several threads, so a deferred column is parsed under
+     * {@code loading}, and its slot in {@code deferred} is cleared with release semantics after the
+     * array is stored: whoever sees the slot empty sees the array.
+     */
+    private static final class Table {
+        private final Map<String, Integer> index;
+        private String[] names;
+        private double[][] columns;
+        private DeferredColumn[] deferred;       // rows not parsed yet
+        private boolean[] owned;                 // false: the array may be shared with a snapshot
+        private int count;
+        private final Map<String, Object> others; // non-series values of models
+        private volatile boolean frozen;
+        private final ReentrantLock loading = new ReentrantLock(); // not synchronized: callers may be virtual threads
+
+        Table() {
+            index = new HashMap<>();
+            names = new String[16];
+            columns = new double[16][];
+            deferred = new DeferredColumn[16];
+            owned = new boolean[16];
+            others = new LinkedHashMap<>();
+        }
+
+        /**
+         * A writable copy of the table that shares all column arrays with this one.
+         */
+        Table(Table source) {
+            index = new HashMap<>(source.index);
+            names = source.names.clone();
+            columns = source.columns.clone();
+            deferred = source.deferred.clone();
+            owned = new boolean[source.owned.length];
+            count = source.count;
+            others = new LinkedHashMap<>(source.others);
+        }
+    }
+
+    /**
+     * An immutable state of a store, taken by {@link #snapshot()}.
+     */
+    public static final class Snapshot {
+        private final String[] labels;
+        private final int size;
+        private final Table table;
+
+        private Snapshot(String[] labels, int size, Table table) {
+            this.labels = labels;
+            this.size = size;
+            this.table = table;
+        }
+
+        /**
+         * A new store starting from this snapshot. Its columns are copied only when written.
+         */
+        public VariableStore branch() {
+            VariableStore store = new VariableStore();
+            store.restore(this);
+            return store;
+        }
+
+        public int columnCount() {
+            return table.count;
+        }
+    }
+
+    public void setPeriods(String[] labels) {
+        this.labels = labels;
+        this.size = labels.length - 1;
+    }
+
+    /**
+     * Returns the {@code LATA} line: "LATA" followed by the period labels, or null before a file was read.
+     */
+    public String[] getPeriods() {
+        return labels;
+    }
+
+    /**
+     * Number of periods ({@code LL}).
+     */
+    public int size() {
+        return size;
+    }
+
+    public int columnCount() {
+        return table.count;
+    }
+
+    public int indexOf(String name) {
+        Integer i = table.index.get(name);
+        return i == null ? -1 : i;
+    }
+
+    public String name(int column) {
+        Objects.checkIndex(column, table.count);
+        return table.names[column];
+    }
+
+    public boolean contains(String name) {
+        return table.index.containsKey(name);
+    }
+
+    public boolean isDeferred(int column) {
+        return table.deferred[column] != null;
+    }
+
+    /**
+     * Returns the values of a column for reading, parsing it first if it was deferred. The array may
+     * be shared with snapshots, use {@link #mutable} to change it. Returns null if the values of a
+     * deferred column turn out not to be numbers; the column is removed then.
+     */
+    public double[] column(int column) {
+        Objects.checkIndex(column, table.count);
+        Table t = table;
+        if (DEFERRED.getAcquire(t.deferred, column) != null) {
+            boolean parsed = true;
+            t.loading.lock();
+            try {
+                DeferredColumn series = t.deferred[column];
+                if (series != null) { // not loaded by another branch meanwhile
+                    t.columns[column] = series.load(); // same content for every sharer, so allowed on frozen tables
+                    DEFERRED.setRelease(t.deferred, column, (DeferredColumn) null);
+                }
+            } catch (NumberFormatException ex) {
+                parsed = false;
+            } finally {
+                t.loading.unlock();
+            }
+            if (!parsed) {
+                System.err.println("Error parsing values for variable: " + t.names[column] + ". Line skipped.");
+                remove(t.names[column]);
+                return null;
+            }
+        }
+        return t.columns[column];
+    }
+
+    public double[] get(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : column(i);
+    }
+
+    /**
+     * Returns a column the caller may change: copied first if it is shared with a snapshot.
+     */
+    public double[] mutable(String name) {
+        int i = indexOf(name);
+        if (i < 0 || column(i) == null) return null;
+        Table t = writableTable();
+        if (!t.owned[i]) {
+            t.columns[i] = t.columns[i].clone();
+            t.owned[i] = true;
+        }
+        return t.columns[i];
+    }
+
+    /**
+     * Returns the array stored for a column without parsing or copying it, or null for deferred
+     * and unknown columns.
+     */
+    public double[] peek(String name) {
+        int i = indexOf(name);
+        return i < 0 ? null : table.columns[i];
+    }
+
+    /**
+     * Stores a series. The store takes ownership of the array.
+     */
+    public void put(String name, double[] values) {
+        Objects.requireNonNull(values, name);
+        Table t = writableTable();
+        int i = slot(t, name);
+        t.columns[i] = values;
+        t.deferred[i] = null;
+        t.owned[i] = true;
+    }
+
+    public void putDeferred(String name, DeferredColumn series) {
+        Table t = writableTable();
+        int i = slot(t, name);
+        t.columns[i] = null;
+        t.deferred[i] = series;
+        t.owned[i] = true;
+    }
+
+    private static int slot(Table t, String name) {
+        Integer existing = t.index.get(name);
+        if (existing != null) return existing;
+        if (t.count == t.names.length) {
+            int capacity = t.count * 2;
+            t.names = Arrays.copyOf(t.names, capacity);
+            t.columns = Arrays.copyOf(t.columns, capacity);
+            t.deferred = Arrays.copyOf(t.deferred, capacity);
+            t.owned = Arrays.copyOf(t.owned, capacity);
+        }
+        t.names[t.count] = name.intern();
+        t.index.put(t.names[t.count], t.count);
+        return t.count++;
+    }
+
+    private Table writableTable() {
+        if (table.frozen) {
+            table = new Table(table);
+        }
+        return table;
+    }
+
+    public void remove(String name) {
+        Table t = writableTable();
+        Integer removed = t.index.remove(name);
+        if (removed == null) {
+            t.others.remove(name);
+            return;
+        }
+        int tail = t.count - removed - 1;
+        System.arraycopy(t.names, removed + 1, t.names, removed, tail);
+        System.arraycopy(t.columns, removed + 1, t.columns, removed, tail);
+        System.arraycopy(t.deferred, removed + 1, t.deferred, removed, tail);
+        System.arraycopy(t.owned, removed + 1, t.owned, removed, tail);
+        t.count--;
+        t.names[t.count] = null;
+        t.columns[t.count] = null;
+        t.deferred[t.count] = null;
+        t.owned[t.count] = false;
+        for (int i = removed; i < t.count; i++) {
+            t.index.put(t.names[i], i);
+        }
+    }
+
+    /**
+     * Parses every deferred column.
+     */
+    public void materializeAll() {
+        for (int i = table.count - 1; i >= 0; i--) { // backwards: a bad column removes itself
+            if (table.deferred[i] != null) column(i);
+        }
+    }
+
+    /**
+     * Looks up a value by the name a model field or script uses: {@code LL}, {@code LATA}, a series,
+     * or another value stored by a model. Series are returned writable, see {@link #mutable}.
+     */
+    public Object getValue(String name) {
+        if (PERIOD_COUNT.equals(name)) return labels == null ? null : size;
+        if (PERIODS.equals(name)) return labels;
+        return contains(name) ? mutable(name) : table.others.get(name);
+    }
+
+    /**
+     * Like {@link #getValue}, but series are returned as they are, possibly shared with snapshots:
+     * for callers that never write them.
+     */
+    public Object readValue(String name) {
+        if (PERIOD_COUNT.equals(name)) return labels == null ? null : size;
+        if (PERIODS.equals(name)) return labels;
+        return contains(name) ? get(name) : table.others.get(name);
+    }
+
+    /**
+     * The type of the value {@link #getValue} returns for a name, or null if there is none.
+     */
+    public Class<?> typeOf(String name) {
+        if (!containsValue(name)) return null;
+        if (PERIOD_COUNT.equals(name)) return int.class;
+        if (PERIODS.equals(name)) return String[].class;
+        return contains(name) ? double[].class : table.others.get(name).getClass();
+    }
+
+    public boolean containsValue(String name) {
+        return (labels != null && (PERIOD_COUNT.equals(name) || PERIODS.equals(name)))
+                || contains(name) || table.others.containsKey(name);
+    }
+
+    /**
+     * Stores a value coming from a model field. Series become columns; {@code LL} and {@code LATA}
+     * are derived from the loaded periods and are not overwritten.
+     */
+    public void putValue(String name, Object value) {
+        if (value == null || PERIOD_COUNT.equals(name) || PERIODS.equals(name)) return;
+        if (value instanceof double[] values) {
+            if (values == peek(name)) return; // the same array, written in place
+            writableTable().others.remove(name);
+            put(name, values);
+        } else if (!contains(name)) {
+            writableTable().others.put(name, value);
+        }
+    }
+
+    /**
+     * Passes every value to {@code action} without parsing or copying; deferred columns are given
+     * as {@link DeferredColumn}.
+     */
+    public void forEachValue(BiConsumer<String, Object> action) {
+        if (labels != null) {
+            action.accept(PERIOD_COUNT, size);
+            action.accept(PERIODS, labels);
+        }
+        Table t = table;
+        for (int i = 0; i < t.count; i++) {
+            Object deferred = DEFERRED.getAcquire(t.deferred, i); // may be parsed by a branch on another thread
+            action.accept(t.names[i], deferred != null ? deferred : t.columns[i]);
+        }
+        t.others.forEach(action);
+    }
+
+    /**
+     * Freezes the current state in O(1). Later writes to this store copy the columns they touch.
+     */
+    public Snapshot snapshot() {
+        table.frozen = true;
+        return new Snapshot(labels, size, table);
+    }
+
+    /**
+     * Goes back to a snapshot in O(1), dropping every change made since.
+     */
+    public void restore(Snapshot snapshot) {
+        labels = snapshot.labels;
+        size = snapshot.size;
+        table = snapshot.table;
+    }
+
+    /**
+     * A store starting from the current state of this one; see {@link Snapshot#branch()}.
+     */
+    public VariableStore branch() {
+        return snapshot().branch();
+    }
+
+    /**
+     * A buffer view of a column that shares its storage with the array.
+     */
+    public DoubleBuffer view(String name) {
+        double[] values = get(name);
+        return values == null ? null : DoubleBuffer.wrap(values);
+    }
+
+    /**
+     * Copies all columns into one contiguous off-heap buffer, column after column, each {@link #size()} long.
+     */
+    public DoubleBuffer toDirectBuffer() {
+        materializeAll();
+        int count = table.count;
+        long bytes = Math.multiplyExact(Math.multiplyExact((long) count, (long) size), (long) Double.BYTES);
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too large for one buffer: " + count + " columns of " + size + " values");
+        }
+        DoubleBuffer buffer = ByteBuffer.allocateDirect((int) bytes)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        for (int i = 0; i < count; i++) {
+            double[] values = table.columns[i];
+            buffer.put(values, 0, Math.min(values.length, size));
+            buffer.position((i + 1) * size);
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Returns an independent copy: every column array is copied, deferred columns stay deferred.
+     */
+    public VariableStore copy() {
+        VariableStore copy = new VariableStore();
+        copy.labels = labels;
+        copy.size = size;
+        Table t = new Table(table);
+        for (int i = 0; i < t.count; i++) {
+            if (t.columns[i] != null) t.columns[i] = t.columns[i].clone();
+            t.owned[i] = true;
+        }
+        copy.table = t;
+        return copy;
+    }
+
+    public boolean isEmpty() {
+        return labels == null && table.count == 0 && table.others.isEmpty();
+    }
+
+    public void clear() {
+        labels = null;
+        size = 0;
+        table = new Table(); // a frozen table may still belong to snapshots
+    }
+}
@@ -0,0 +1,53 @@
+package streaming;
+
+import export.ColumnarFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The series of a data file, read front to back a window at a time.
+ */
+public interface SeriesSource extends Closeable {
+
+    /**
+     * Reads one series in order.
+     */
+    interface Cursor {
+        /**
+         * Reads the next {@code count} values into {@code values[offset...]}.
+         */
+        void read(double[] values, int offset, int count) throws IOException;
+    }
+
+    /**
+     * Opens a snapshot or a LATA text file, told apart by their first bytes.
+     */
+    static SeriesSource open(Path path) throws IOException {
+        return ColumnarFile.isColumnarFile(path) ? new SnapshotSource(ColumnarFile.open(path)) : new TextSource(path);
+    }
+
+    /**
+     * Number of periods ({@code LL}).
+     */
+    int size();
+
+    List<String> names();
+
+    /**
+     * Number of tokens of the {@code LATA} line, "LATA" included.
+     */
+    int labelCount();
+
+    /**
+     * UTF-8 bytes of all tokens of the {@code LATA} line.
+     */
+    long labelBytes();
+
+    Iterator<String> labels() throws IOException;
+
+    Cursor open(String name) throws IOException;
+}
@@ -0,0 +1,58 @@
+package streaming;
+
+import export.ColumnarFile;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Windows of a memory-mapped snapshot: only the pages being read are in memory.
+ */
+final class SnapshotSource implements SeriesSource {
+    private final ColumnarFile file;
+
+    SnapshotSource(ColumnarFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public int size() {
+        return file.size();
+    }
+
+    @Override
+    public List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < file.columnCount(); i++) names.add(file.name(i));
+        return names;
+    }
+
+    @Override
+    public int labelCount() {
+        return file.labelCount();
+    }
+
+    @Override
+    public long labelBytes() {
+        return file.labelBytes();
+    }
+
+    @Override
+    public Iterator<String> labels() {
+        return file.labels();
+    }
+
+    @Override
+    public Cursor open(String name) throws IOException {
+        DoubleBuffer values = file.view(name);
+        return values::get;
+    }
+
+    @Override
+    public void close() {
+        // the mapping goes away with the last reference
+    }
+}
@@ -0,0 +1,133 @@
+package streaming;
+
+import binding.BindingPlan;
+import export.ColumnarWriter;
+import interfaces.IStreamingModel;
+import store.VariableStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs an {@link IStreamingModel} over a data file a window of periods at a time and writes the
+ * results to a snapshot as they come, so the memory needed depends on the window, not on
+ * {@code LL}. The last values of each window are carried over as period 0 of the next one; one
+ * model instance serves all windows.
+ * <p>
+ * The snapshot holds what reading the file, running the model and saving would give: the series
+ * of the file, then those the model created (in its first window). {@code LATA} is not bound.
+ */
+public final class StreamingRunner {
+    public static final int DEFAULT_WINDOW = 64 * 1024;
+
+    private final Callable<?> newModel;
+    private final int window;
+
+    public StreamingRunner(Callable<?> newModel, int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive: " + window);
+        }
+        this.newModel = newModel;
+        this.window = window;
+    }
+
+    public StreamingRunner(Callable<?> newModel) {
+        this(newModel, DEFAULT_WINDOW);
+    }
+
+    /**
+     * Runs the model on {@code input} (a LATA file or a snapshot) and writes the results to the
+     * snapshot {@code output}, which is replaced only when complete.
+     */
+    public void run(Path input, Path output) throws Exception {
+        Object model = newModel.call();
+        if (!(model instanceof IStreamingModel)) {
+            throw new IllegalArgumentException(model.getClass().getSimpleName() + " does not support streaming");
+        }
+        BindingPlan plan = BindingPlan.of(model.getClass());
+        List<BindingPlan.BoundField> series = new ArrayList<>();
+        for (BindingPlan.BoundField field : plan.getFields()) {
+            if (field.type() == double[].class) series.add(field);
+        }
+        BindingPlan.BoundField periodCount = plan.getField(VariableStore.PERIOD_COUNT);
+
+        Path target = output.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try (SeriesSource source = SeriesSource.open(input)) {
+            int size = source.size();
+            List<String> names = source.names();
+            Map<String, SeriesSource.Cursor> cursors = new HashMap<>();
+            for (String name : names) cursors.put(name, source.open(name));
+
+            Map<String, double[]> buffers = new HashMap<>(); // window + 1 values, reused
+            Map<String, Double> carried = new HashMap<>();   // last value of the previous window
+            double[] passThrough = new double[window];
+            List<String> columns = null;
+            ColumnarWriter out = null;
+            try {
+                for (long start = 0; start < size; start += window) {
+                    int count = (int) Math.min(window, size - start);
+                    int first = start == 0 ? 0 : 1; // index of the window's first new period
+                    int length = first + count;
+
+                    for (BindingPlan.BoundField field : series) {
+                        String name = field.name();
+                        if (!cursors.containsKey(name) && !carried.containsKey(name)) continue; // not bound, as by the controller
+                        double[] values = buffers.computeIfAbsent(name, n -> new double[window + 1]);
+                        if (first == 1) values[0] = carried.get(name);
+                        if (cursors.containsKey(name)) {
+                            cursors.get(name).read(values, first, count);
+                        } else {
+                            Arrays.fill(values, first, length, Double.NaN);
+                        }
+                        field.set(model, values);
+                    }
+                    if (periodCount != null) periodCount.set(model, length);
+                    try {
+                        plan.run(model);
+                    } catch (Throwable e) {
+                        throw new Exception("Error running model at period " + start, e);
+                    }
+
+                    if (out == null) {
+                        columns = new ArrayList<>(names);
+                        for (BindingPlan.BoundField field : series) {
+                            if (!cursors.containsKey(field.name()) && field.get(model) != null) columns.add(field.name());
+                        }
+                        out = new ColumnarWriter(temp, size, columns, source.labelCount(), source.labelBytes(), source.labels());
+                    }
+                    for (int column = 0; column < columns.size(); column++) {
+                        String name = columns.get(column);
+                        BindingPlan.BoundField field = plan.getField(name);
+                        if (field != null && field.type() == double[].class) {
+                            double[] values = (double[]) field.get(model);
+                            if (values == null || values.length < length) {
+                                double[] padded = new double[length];
+                                Arrays.fill(padded, Double.NaN);
+                                if (values != null) System.arraycopy(values, 0, padded, 0, values.length);
+                                values = padded;
+                            }
+                            out.write(column, start, values, first, count);
+                            carried.put(name, values[length - 1]);
+                        } else {
+                            cursors.get(name).read(passThrough, 0, count);
+                            out.write(column, start, passThrough, 0, count);
+                        }
+                    }
+                }
+                if (out == null) { // no periods
+                    out = new ColumnarWriter(temp, size, names, source.labelCount(), source.labelBytes(), source.labels());
+                }
+            } finally {
+                if (out != null) out.close();
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
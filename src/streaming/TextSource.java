@@ -0,0 +1,86 @@
+package streaming;
+
+import parsing.LataIndex;
+import parsing.RowReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Windows of a LATA text file: every series is parsed as it is read, by its own {@link RowReader}.
+ */
+final class TextSource implements SeriesSource {
+    private static final int ROW_BUFFER = 16 * 1024;
+
+    private final LataIndex index;
+    private final FileChannel channel;
+
+    TextSource(Path path) throws IOException {
+        this.index = LataIndex.of(path);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public List<String> names() {
+        List<String> names = new ArrayList<>();
+        for (LataIndex.Row row : index.getRows()) names.add(row.name());
+        return names;
+    }
+
+    @Override
+    public int labelCount() {
+        return index.getLabelCount();
+    }
+
+    @Override
+    public long labelBytes() {
+        return index.getLabelBytes();
+    }
+
+    @Override
+    public Iterator<String> labels() {
+        LataIndex.Row header = index.getHeader();
+        RowReader reader = new RowReader(channel, header.offset(), header.length(), ROW_BUFFER);
+        return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < index.getLabelCount();
+            }
+
+            @Override
+            public String next() {
+                if (next++ == index.getLabelCount()) throw new NoSuchElementException();
+                try {
+                    return reader.nextLabel();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Cursor open(String name) {
+        LataIndex.Row row = index.getRow(name);
+        return new RowReader(channel, row.offset(), row.length(), ROW_BUFFER)::read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
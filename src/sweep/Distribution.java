@@ -0,0 +1,28 @@
+package sweep;
+
+import java.util.SplittableRandom;
+
+/**
+ * A random distribution that perturbation values are drawn from.
+ */
+public interface Distribution {
+    double sample(SplittableRandom random);
+
+    static Distribution constant(double value) {
+        return random -> value;
+    }
+
+    static Distribution uniform(double min, double max) {
+        if (!(min < max)) {
+            throw new IllegalArgumentException("Uniform distribution needs min < max: " + min + ", " + max);
+        }
+        return random -> random.nextDouble(min, max);
+    }
+
+    static Distribution normal(double mean, double standardDeviation) {
+        if (!(standardDeviation >= 0)) {
+            throw new IllegalArgumentException("Standard deviation must not be negative: " + standardDeviation);
+        }
+        return random -> random.nextGaussian(mean, standardDeviation);
+    }
+}
@@ -0,0 +1,78 @@
+package sweep;
+
+import java.util.Arrays;
+
+/**
+ * Streaming quantile estimate in constant memory, using the P² algorithm of Jain and Chlamtac:
+ * five markers whose heights are adjusted with a piecewise-parabolic formula as values arrive.
+ */
+final class P2Quantile {
+    private final double p;
+    private final double[] heights = new double[5];
+    private final int[] positions = new int[5];
+    private final double[] desired = new double[5];
+    private final double[] increments;
+    private int count;
+
+    P2Quantile(double p) {
+        this.p = p;
+        this.increments = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+    }
+
+    void add(double x) {
+        if (count < 5) {
+            heights[count++] = x;
+            if (count == 5) {
+                Arrays.sort(heights);
+                for (int i = 0; i < 5; i++) positions[i] = i + 1;
+                desired[0] = 1;
+                desired[1] = 1 + 2 * p;
+                desired[2] = 1 + 4 * p;
+                desired[3] = 3 + 2 * p;
+                desired[4] = 5;
+            }
+            return;
+        }
+        count++;
+        int k;
+        if (x < heights[0]) {
+            heights[0] = x;
+            k = 0;
+        } else if (x >= heights[4]) {
+            heights[4] = x;
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= heights[k + 1]) k++;
+        }
+        for (int i = k + 1; i < 5; i++) positions[i]++;
+        for (int i = 0; i < 5; i++) desired[i] += increments[i];
+        for (int i = 1; i <= 3; i++) {
+            double d = desired[i] - positions[i];
+            if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int step = d >= 0 ? 1 : -1;
+                double candidate = parabolic(i, step);
+                heights[i] = heights[i - 1] < candidate && candidate < heights[i + 1] ? candidate : linear(i, step);
+                positions[i] += step;
+            }
+        }
+    }
+
+    private double parabolic(int i, int d) {
+        return heights[i] + (double) d / (positions[i + 1] - positions[i - 1])
+                * ((positions[i] - positions[i - 1] + d) * (heights[i + 1] - heights[i]) / (positions[i + 1] - positions[i])
+                + (positions[i + 1] - positions[i] - d) * (heights[i] - heights[i - 1]) / (positions[i] - positions[i - 1]));
+    }
+
+    private double linear(int i, int d) {
+        return heights[i] + d * (heights[i + d] - heights[i]) / (positions[i + d] - positions[i]);
+    }
+
+    double value() {
+        if (count >= 5) return heights[2];
+        if (count == 0) return Double.NaN;
+        double[] sorted = Arrays.copyOf(heights, count);
+        Arrays.sort(sorted);
+        return sorted[(int) Math.round(p * (count - 1))];
+    }
+}
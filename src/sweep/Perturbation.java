@@ -0,0 +1,66 @@
+package sweep;
+
+import java.util.Objects;
+
+/**
+ * How one input series is changed for a draw. A grid perturbation steps through fixed values, a
+ * random one draws a value from a {@link Distribution}. The value is applied to every period.
+ */
+public final class Perturbation {
+    public enum Mode {
+        SET, ADD, MULTIPLY
+    }
+
+    private final String variable;
+    private final Mode mode;
+    private final double[] grid;
+    private final Distribution distribution;
+
+    private Perturbation(String variable, Mode mode, double[] grid, Distribution distribution) {
+        this.variable = Objects.requireNonNull(variable);
+        this.mode = Objects.requireNonNull(mode);
+        this.grid = grid;
+        this.distribution = distribution;
+    }
+
+    public static Perturbation grid(String variable, Mode mode, double... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Grid for " + variable + " has no values");
+        }
+        return new Perturbation(variable, mode, values.clone(), null);
+    }
+
+    public static Perturbation random(String variable, Mode mode, Distribution distribution) {
+        return new Perturbation(variable, mode, null, Objects.requireNonNull(distribution));
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    public boolean isGrid() {
+        return grid != null;
+    }
+
+    public int gridSize() {
+        return grid == null ? 1 : grid.length;
+    }
+
+    public double gridValue(int i) {
+        return grid[i];
+    }
+
+    public Distribution getDistribution() {
+        return distribution;
+    }
+
+    public void apply(double[] series, double value) {
+        for (int t = 0; t < series.length; t++) {
+            series[t] = switch (mode) {
+                case SET -> value;
+                case ADD -> series[t] + value;
+                case MULTIPLY -> series[t] * value;
+            };
+        }
+    }
+}
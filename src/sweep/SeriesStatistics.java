@@ -0,0 +1,97 @@
+package sweep;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics of many draws of one series, per period, kept without storing the draws:
+ * mean and variance with Welford's method, minimum, maximum and P² quantile estimates.
+ */
+public class SeriesStatistics {
+    private final int size;
+    private final double[] quantiles;
+    private long count;
+    private final double[] mean;
+    private final double[] m2;
+    private final double[] min;
+    private final double[] max;
+    private final P2Quantile[][] estimators; // [quantile][period]
+
+    public SeriesStatistics(int size, double... quantiles) {
+        this.size = size;
+        this.quantiles = quantiles.clone();
+        this.mean = new double[size];
+        this.m2 = new double[size];
+        this.min = new double[size];
+        this.max = new double[size];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        this.estimators = new P2Quantile[quantiles.length][size];
+        for (int q = 0; q < quantiles.length; q++) {
+            if (!(quantiles[q] > 0 && quantiles[q] < 1)) {
+                throw new IllegalArgumentException("Quantile must be between 0 and 1: " + quantiles[q]);
+            }
+            for (int t = 0; t < size; t++) {
+                estimators[q][t] = new P2Quantile(quantiles[q]);
+            }
+        }
+    }
+
+    public void add(double[] values) {
+        count++;
+        int n = Math.min(size, values.length);
+        for (int t = 0; t < n; t++) {
+            double x = values[t];
+            double delta = x - mean[t];
+            mean[t] += delta / count;
+            m2[t] += delta * (x - mean[t]);
+            if (x < min[t]) min[t] = x;
+            if (x > max[t]) max[t] = x;
+            for (P2Quantile[] estimator : estimators) {
+                estimator[t].add(x);
+            }
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double[] getQuantileLevels() {
+        return quantiles.clone();
+    }
+
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    public double[] getVariance() {
+        double[] variance = new double[size];
+        for (int t = 0; t < size; t++) {
+            variance[t] = count > 1 ? m2[t] / (count - 1) : 0;
+        }
+        return variance;
+    }
+
+    public double[] getMin() {
+        return min.clone();
+    }
+
+    public double[] getMax() {
+        return max.clone();
+    }
+
+    /**
+     * Estimates for the quantile level at {@code index} of {@link #getQuantileLevels()}.
+     */
+    public double[] getQuantile(int index) {
+        double[] values = new double[size];
+        for (int t = 0; t < size; t++) {
+            values[t] = estimators[index][t].value();
+        }
+        return values;
+    }
+}
@@ -0,0 +1,59 @@
+package timing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes synthetic LATA files of a given size for the timers: the variables the sample models
+ * and scripts use, then filler rows up to the requested count. Growth rates ({@code tw...}) stay
+ * close to 1 so long horizons don't overflow.
+ * <p>
+ * Usage: {@code DatasetGenerator <file> [variables] [periods] [seed]}
+ */
+public final class DatasetGenerator {
+    /**
+     * What Model1, Model3 and the scripts in {@code src/scripts} read.
+     */
+    public static final List<String> SAMPLE_VARIABLES = List.of(
+            "twKI", "twKS", "twINW", "twEKS", "twIMP", "KI", "KS", "INW", "EKS", "IMP",
+            "ZDEKS", "baseGDP", "inflationRate", "realGDP", "savings", "investments");
+
+    private DatasetGenerator() {
+    }
+
+    public static void generate(Path file, int variables, int periods, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<String> names = new ArrayList<>(SAMPLE_VARIABLES);
+        for (int v = names.size(); v < variables; v++) names.add("var" + v);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("LATA");
+            for (int p = 0; p < periods; p++) {
+                writer.write("\t" + (2000 + p));
+            }
+            writer.newLine();
+            for (String name : names) {
+                writer.write(name);
+                boolean rate = name.startsWith("tw");
+                for (int p = 0; p < periods; p++) {
+                    double value = rate ? 1 + random.nextGaussian() * 1e-3 : 100 + random.nextDouble() * 10_000;
+                    writer.write(String.format(Locale.ROOT, "\t%.4f", value));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: DatasetGenerator <file> [variables] [periods] [seed]");
+            System.exit(2);
+        }
+        generate(Path.of(args[0]),
+                args.length > 1 ? Integer.parseInt(args[1]) : 1_000,
+                args.length > 2 ? Integer.parseInt(args[2]) : 100,
+                args.length > 3 ? Long.parseLong(args[3]) : 42);
+    }
+}
@@ -0,0 +1,147 @@
+package timing;
+
+import parsing.LataParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times {@link LataParser} against the old {@code BufferedReader} + regex reader on a generated
+ * file: the best of a few runs after one warm-up, a rough figure like those of {@link SmokeTimer}.
+ * <p>
+ * Usage: {@code LataParserTimer [variables] [periods] [iterations]}
+ */
+public class LataParserTimer {
+    public static void main(String[] args) throws IOException {
+        int variables = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int periods = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Path file = Files.createTempFile("lata", ".txt");
+        try {
+            generate(file, variables, periods, 42);
+            long bytes = Files.size(file);
+            System.out.printf("File: %d variables x %d periods, %.1f MB%n", variables, periods, bytes / 1e6);
+
+            Map<String, Object> expected = readLegacy(file);
+            Map<String, Object> actual = readMapped(file);
+            if (!sameContent(expected, actual)) {
+                throw new IllegalStateException("Parsers disagree on " + file);
+            }
+
+            double legacy = measure("BufferedReader + split", iterations, bytes, () -> readLegacy(file));
+            double mapped = measure("LataParser (mapped)", iterations, bytes, () -> readMapped(file));
+            System.out.printf("Speedup: %.2fx%n", legacy / mapped);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Writes a LATA file with random values; every tenth row is short and uses a decimal comma.
+     */
+    public static void generate(Path file, int variables, int periods, long seed) throws IOException {
+        Random random = new Random(seed);
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            writer.write("LATA");
+            for (int p = 0; p < periods; p++) {
+                writer.write("\t" + (2000 + p));
+            }
+            writer.newLine();
+            for (int v = 0; v < variables; v++) {
+                writer.write("var" + v);
+                boolean shortRow = v % 10 == 0;
+                int count = shortRow ? 1 + random.nextInt(periods) : periods;
+                for (int p = 0; p < count; p++) {
+                    String value = String.format("%.4f", random.nextDouble() * 1_000_000);
+                    writer.write("\t" + (shortRow ? value.replace('.', ',') : value));
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    private interface Reader {
+        Object read() throws IOException;
+    }
+
+    private static double measure(String name, int iterations, long bytes, Reader reader) throws IOException {
+        reader.read(); // warm-up
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            reader.read();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double millis = best / 1e6;
+        System.out.printf("%-24s %8.1f ms %8.1f MB/s%n", name, millis, bytes / 1e3 / millis);
+        return millis;
+    }
+
+    private static Map<String, Object> readMapped(Path file) throws IOException {
+        Map<String, Object> data = new LinkedHashMap<>();
+        LataParser.parse(file, new LataParser.Handler() {
+            @Override
+            public void onHeader(String[] labels) {
+                data.put("LL", labels.length - 1);
+                data.put("LATA", labels);
+            }
+
+            @Override
+            public void onSeries(String name, double[] values) {
+                data.put(name, values);
+            }
+        });
+        return data;
+    }
+
+    /**
+     * The reader the controller used before {@link LataParser}.
+     */
+    private static Map<String, Object> readLegacy(Path file) throws IOException {
+        Map<String, Object> data = new LinkedHashMap<>();
+        int dataSize = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file.toFile()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                line = line.replace(",", ".");
+                if (line.startsWith("LATA")) {
+                    String[] years = line.trim().split("\\s+");
+                    dataSize = years.length - 1;
+                    data.put("LL", dataSize);
+                    data.put("LATA", years);
+                } else {
+                    String[] parts = line.split("\\s+");
+                    if (parts.length < 2) continue;
+                    try {
+                        double[] values = new double[dataSize];
+                        for (int i = 0; i < dataSize; i++) {
+                            values[i] = i < parts.length - 1 ? Double.parseDouble(parts[i + 1]) : values[i - 1];
+                        }
+                        data.put(parts[0], values);
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    private static boolean sameContent(Map<String, Object> a, Map<String, Object> b) {
+        if (!a.keySet().equals(b.keySet())) return false;
+        for (var entry : a.entrySet()) {
+            Object other = b.get(entry.getKey());
+            if (!Arrays.deepEquals(new Object[]{entry.getValue()}, new Object[]{other})) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,160 @@
+package timing;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A smoke timer: warm-up iterations, then timed iterations of as many calls as fit into a minimum
+ * time, reported as milliseconds per call with a 99.9% confidence interval. Results are saved as
+ * TSV, one timing per line, and a later run can be compared against them.
+ * <p>
+ * This is not a benchmark harness. Nothing keeps the JIT from dropping or hoisting work whose
+ * result is unused, all warm timings share one JVM and its profile, and the setup runs between the
+ * timed calls. It catches a stage that got markedly slower, not differences of a few percent; those
+ * need JMH.
+ */
+public final class SmokeTimer {
+    static final String HEADER = "name\tparams\tmode\tunit\tsamples\tscore\terror\tmin\tmax";
+    private static final double Z_999 = 3.291;
+
+    private final int warmups;
+    private final int iterations;
+    private final long minIterationNanos;
+    private final List<Result> results = new ArrayList<>();
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Exception;
+    }
+
+    /**
+     * One timing. {@code mode} is "avgt" for warmed-up averages and "ss" for single calls, each in
+     * a fresh JVM.
+     */
+    public record Result(String name, String params, String mode, double[] samples) {
+        public double score() {
+            return Arrays.stream(samples).average().orElse(Double.NaN);
+        }
+
+        /**
+         * Half the width of the 99.9% confidence interval of the score.
+         */
+        public double error() {
+            int n = samples.length;
+            if (n < 2) return Double.NaN;
+            double mean = score(), sum = 0;
+            for (double s : samples) sum += (s - mean) * (s - mean);
+            return Z_999 * Math.sqrt(sum / (n - 1)) / Math.sqrt(n);
+        }
+
+        String key() {
+            return name + "\t" + params;
+        }
+
+        String toTsv() {
+            return String.format(Locale.ROOT, "%s\t%s\t%s\tms/op\t%d\t%.6f\t%.6f\t%.6f\t%.6f", name, params, mode,
+                    samples.length, score(), error(), Arrays.stream(samples).min().orElse(Double.NaN),
+                    Arrays.stream(samples).max().orElse(Double.NaN));
+        }
+    }
+
+    public SmokeTimer(int warmups, int iterations, long minIterationMillis) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("At least one iteration is needed: " + iterations);
+        }
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.minIterationNanos = minIterationMillis * 1_000_000;
+    }
+
+    /**
+     * Measures the average time of an action that can be repeated on the same state.
+     */
+    public Result measure(String name, String params, Action action) throws Exception {
+        return measure(name, params, () -> {
+        }, action);
+    }
+
+    /**
+     * Like {@link #measure(String, String, Action)}, with a {@code setup} run untimed before every call.
+     */
+    public Result measure(String name, String params, Action setup, Action action) throws Exception {
+        long calls = 1; // per iteration, grown during warm-up until an iteration takes long enough
+        for (int i = 0; i < Math.max(warmups, 1); i++) {
+            long nanos = time(setup, action, calls);
+            if (nanos < minIterationNanos) calls = Math.max(calls + 1, calls * minIterationNanos / Math.max(nanos, 1));
+        }
+        double[] samples = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            samples[i] = time(setup, action, calls) / 1e6 / calls;
+        }
+        return add(new Result(name, params, "avgt", samples));
+    }
+
+    private static long time(Action setup, Action action, long calls) throws Exception {
+        long total = 0;
+        for (long c = 0; c < calls; c++) {
+            setup.run();
+            long start = System.nanoTime();
+            action.run();
+            total += System.nanoTime() - start;
+        }
+        return total;
+    }
+
+    /**
+     * Records a result measured elsewhere, e.g. in forked JVMs.
+     */
+    public Result add(Result result) {
+        results.add(result);
+        System.out.printf(Locale.ROOT, "%-40s %-24s %-4s %12.4f +- %.4f ms/op%n", result.name(), result.params(),
+                result.mode(), result.score(), result.error());
+        return result;
+    }
+
+    public List<Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    public void write(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write(HEADER);
+            out.newLine();
+            for (Result result : results) {
+                out.write(result.toTsv());
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Compares this run with saved results. A timing regressed if it got slower by more than
+     * {@code threshold} (0.1 is 10%) and the confidence intervals don't overlap.
+     *
+     * @return the timings that regressed
+     */
+    public List<String> compare(Path baseline, double threshold) throws IOException {
+        Map<String, double[]> before = new HashMap<>(); // score, error
+        for (String line : Files.readAllLines(baseline)) {
+            String[] cells = line.split("\t");
+            if (line.equals(HEADER) || cells.length < 7) continue;
+            before.put(cells[0] + "\t" + cells[1], new double[]{Double.parseDouble(cells[5]), Double.parseDouble(cells[6])});
+        }
+        List<String> regressions = new ArrayList<>();
+        System.out.printf("%-40s %-24s %12s %12s %8s%n", "name", "params", "baseline", "current", "change");
+        for (Result result : results) {
+            double[] old = before.get(result.key());
+            if (old == null) continue;
+            double change = result.score() / old[0] - 1;
+            double errors = (Double.isNaN(old[1]) ? 0 : old[1]) + (Double.isNaN(result.error()) ? 0 : result.error());
+            boolean regressed = change > threshold && result.score() - old[0] > errors;
+            System.out.printf(Locale.ROOT, "%-40s %-24s %12.4f %12.4f %+7.1f%%%s%n", result.name(), result.params(),
+                    old[0], result.score(), change * 100, regressed ? "  REGRESSION" : "");
+            if (regressed) regressions.add(result.key().replace('\t', ' '));
+        }
+        return regressions;
+    }
+}
@@ -0,0 +1,102 @@
+import annotations.Bind;
+
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * The controller as it was before the data store, parser, bindings and exporters were replaced:
+ * a map of values, a line reader, reflection and string concatenation. The tests compare the
+ * current paths with it on the bundled data files.
+ */
+final class Baseline {
+    private Baseline() {
+    }
+
+    static Map<String, Object> read(String filePath) throws Exception {
+        Map<String, Object> data = new LinkedHashMap<>();
+        int size = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) continue;
+                line = line.replace(",", ".");
+                if (line.startsWith("LATA")) {
+                    String[] years = line.trim().split("\\s+");
+                    size = years.length - 1;
+                    data.put("LL", size);
+                    data.put("LATA", years);
+                } else {
+                    String[] parts = line.split("\\s+");
+                    if (parts.length < 2) continue;
+                    try {
+                        double[] values = new double[size];
+                        for (int i = 0; i < size; i++) {
+                            values[i] = i < parts.length - 1 ? Double.parseDouble(parts[i + 1]) : values[i - 1];
+                        }
+                        data.put(parts[0], values);
+                    } catch (NumberFormatException ex) {
+                        // line skipped
+                    }
+                }
+            }
+        }
+        return data;
+    }
+
+    static void runModel(String modelName, Map<String, Object> data) throws Exception {
+        Object model = Class.forName("models." + modelName).getDeclaredConstructor().newInstance();
+        for (Field field : model.getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(Bind.class) && data.containsKey(field.getName())) {
+                field.setAccessible(true);
+                field.set(model, data.get(field.getName()));
+            }
+        }
+        model.getClass().getMethod("run").invoke(model);
+        for (Field field : model.getClass().getDeclaredFields()) {
+            if (field.isAnnotationPresent(Bind.class)) {
+                field.setAccessible(true);
+                data.put(field.getName(), field.get(model));
+            }
+        }
+    }
+
+    static void runScript(String scriptText, Map<String, Object> data) throws Exception {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByExtension("groovy");
+        data.forEach(engine::put);
+        engine.eval(scriptText);
+        Bindings bindings = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        bindings.forEach((name, value) -> {
+            if (name.length() > 1 && value instanceof double[]) data.put(name, value);
+        });
+    }
+
+    static String tsv(Map<String, Object> data) {
+        StringBuilder text = new StringBuilder();
+        data.forEach((name, value) -> {
+            if (value instanceof double[] values) {
+                text.append(name);
+                for (double v : values) text.append('\t').append(v);
+                text.append('\n');
+            } else if (name.equals("LATA") && value instanceof String[] labels) {
+                text.append(String.join("\t", labels)).append('\n');
+            }
+        });
+        return text.toString();
+    }
+
+    /**
+     * The rows of a TSV sorted, for comparing script results: the baseline added new series in the
+     * hash order of the engine's bindings, the controller adds them in the order they are assigned.
+     */
+    static String rows(String tsv) {
+        return tsv.lines().sorted().collect(Collectors.joining("\n"));
+    }
+}
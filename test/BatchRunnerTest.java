@@ -0,0 +1,60 @@
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a batch gives every scenario the same results as a run on its own, keeps only a
+ * window of scenarios in flight and releases each controller once its result was handed out.
+ * Run with {@code java -ea}.
+ */
+public class BatchRunnerTest {
+    public static void main(String[] args) throws Exception {
+        Path data = Path.of("src/data/data1.txt");
+        List<Path> files = Collections.nCopies(20, data);
+        Controller single = new Controller();
+        single.setModel("Model1");
+        String expected = single.readDataFrom(data.toString()).runModel().getResultAsTSV();
+
+        AtomicInteger started = new AtomicInteger();
+        BatchRunner runner = new BatchRunner("Model1", List.of(), 2) {
+            @Override
+            public Result runScenario(Path dataFile) {
+                started.incrementAndGet();
+                return super.runScenario(dataFile);
+            }
+        };
+        List<BatchRunner.Result> results = new ArrayList<>();
+        runner.run(files, result -> {
+            check(started.get() <= results.size() + 4 + 1, "more than the window in flight: " + started.get());
+            check(result.isSuccess(), "scenario failed: " + result.error());
+            check(expected.equals(result.tsv()), "batch result differs from a single run");
+            results.add(result);
+            if (results.size() == 1) sleep(); // a slow writer: the workers must not run ahead of it
+        });
+        check(results.size() == files.size(), "results missing");
+        for (BatchRunner.Result result : results) {
+            check(result.controller() == null, "controller kept after its result was handed out");
+        }
+
+        StringWriter out = new StringWriter();
+        List<BatchRunner.Result> failed = runner.run(List.of(data, Path.of("src/data/missing.txt")), out);
+        check(failed.size() == 1 && failed.get(0).dataFile().endsWith("missing.txt"), "missing file not reported");
+        check(out.toString().contains(expected), "written result differs from a single run");
+        System.out.println("BatchRunnerTest: OK");
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,71 @@
+import cache.ResultCache;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Checks that results served by the result cache equal computed ones on the bundled data, that a
+ * changed input is computed again, also when a script changed it, and that scripts the analysis
+ * can't prove closed always run. Run with {@code java -ea}.
+ */
+public class MemoizationTest {
+    private static final String DATA = "src/data/data1.txt";
+    private static final String SCRIPT = "ZDEKS = new double[LL]\nfor (i = 0; i < LL; i++) ZDEKS[i] = EKS[i] / PKB[i]";
+
+    public static void main(String[] args) throws Exception {
+        String expected = run(null).getResultAsTSV();
+        ResultCache cache = new ResultCache();
+        check(run(cache).getResultAsTSV().equals(expected), "first run differs");
+        check(cache.getHitCount() == 0 && cache.getMissCount() == 2, cache.toString());
+        check(run(cache).getResultAsTSV().equals(expected), "cached results differ");
+        check(cache.getHitCount() == 2, cache.toString());
+
+        Controller changed = new Controller();
+        changed.setModel("Model1");
+        changed.setResultCache(cache).readDataFrom(DATA);
+        changed.getData().mutable("twKI")[1] += 0.01; // a model input
+        changed.runModel().runScript(SCRIPT);
+        Controller reference = new Controller();
+        reference.setModel("Model1");
+        reference.readDataFrom(DATA);
+        reference.getData().mutable("twKI")[1] += 0.01;
+        reference.runModel().runScript(SCRIPT);
+        check(changed.getResultAsTSV().equals(reference.getResultAsTSV()), "a changed input was served from the cache");
+        check(cache.getHitCount() == 2, cache.toString());
+
+        Controller scripted = new Controller(); // a script changes a model input in place
+        scripted.setModel("Model1");
+        scripted.setResultCache(cache).readDataFrom(DATA).runModel();
+        scripted.runScript("twKS[2] = twKS[2] * 1.01").runModel();
+        Map<String, Object> baseline = Baseline.read(DATA);
+        Baseline.runModel("Model1", baseline);
+        ((double[]) baseline.get("twKS"))[2] *= 1.01;
+        Baseline.runModel("Model1", baseline);
+        check(scripted.getResultAsTSV().equals(Baseline.tsv(baseline)), "the model ran on the input from before the script");
+
+        long misses = cache.getMissCount(), hits = cache.getHitCount();
+        for (String open : new String[]{
+                "RR = new double[LL]; RR[0] = Math.random()",
+                "RR = new double[LL]; RR[0] = System.nanoTime()",
+                "RR = binding.getVariable('KI').clone()"}) {
+            Controller controller = new Controller().setResultCache(cache).readDataFrom(DATA);
+            double[] first = controller.runScript(open).getData().get("RR").clone();
+            controller.runScript(open);
+            check(cache.getMissCount() == misses && cache.getHitCount() == hits, "memoized: " + open);
+            if (open.contains("random")) {
+                check(!Arrays.equals(first, controller.getData().get("RR")), "random script served from the cache");
+            }
+        }
+        System.out.println("MemoizationTest: OK");
+    }
+
+    private static Controller run(ResultCache cache) throws Exception {
+        Controller controller = new Controller();
+        controller.setModel("Model1");
+        return controller.setResultCache(cache).readDataFrom(DATA).runModel().runScript(SCRIPT);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,79 @@
+import registry.ModelRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Checks that models compiled by the registry give the baseline results on the bundled data, that
+ * unchanged sources are neither compiled nor reloaded again, and that an edit or a deletion reaches
+ * new runs while a failed compilation keeps the previous generation. Run with {@code java -ea}.
+ */
+public class ModelReloadTest {
+    private static final String DATA = "src/data/data1.txt";
+
+    public static void main(String[] args) throws Exception {
+        Path root = Files.createTempDirectory("reload");
+        Path models = Files.createDirectory(root.resolve("models")); // the directory name is the package
+        try {
+            Files.copy(Path.of("src/models/Model1.java"), models.resolve("Model1.java"));
+            Files.copy(Path.of("src/models/Model3.java"), models.resolve("Model3.java"));
+            Map<String, Object> baseline = Baseline.read(DATA);
+            Baseline.runModel("Model1", baseline);
+            String expected = Baseline.tsv(baseline);
+
+            FileTime compiled;
+            try (ModelRegistry registry = new ModelRegistry(models)) {
+                check(registry.getModels().equals(List.of("Model1", "Model3")), "models: " + registry.getModels());
+                check(run(registry).equals(expected), "registry results differ from the baseline");
+                compiled = Files.getLastModifiedTime(models.resolve("Model1.class"));
+                check(!registry.reload() && registry.getGeneration() == 1, "reloaded without a change");
+            }
+            try (ModelRegistry registry = new ModelRegistry(models)) { // a restart reuses the index
+                check(run(registry).equals(expected), "results differ after a restart");
+                check(Files.getLastModifiedTime(models.resolve("Model1.class")).equals(compiled), "compiled again after a restart");
+
+                Controller controller = new Controller(registry);
+                controller.setModel("Model1");
+                Path source = models.resolve("Model1.java");
+                String text = Files.readString(source);
+                Files.writeString(source, text.replace("PKB[0] = KI[0]", "PKB[0] = 1 + KI[0]"));
+                check(registry.reload() && registry.getGeneration() == 2, "an edit was not reloaded");
+                controller.readDataFrom(DATA).runModel(); // set before the edit, runs the new version
+                double[] pkb = controller.getData().get("PKB");
+                check(pkb[0] == ((double[]) baseline.get("PKB"))[0] + 1, "the edit is not in new runs");
+
+                Files.writeString(source, text.replace("PKB = new double[LL];", "PKB = new double[LL]")); // does not compile
+                try {
+                    registry.reload();
+                    throw new AssertionError("a source that doesn't compile was loaded");
+                } catch (IOException e) {
+                    check(registry.getGeneration() == 2, "a failed compilation replaced the generation");
+                }
+
+                Files.delete(source);
+                check(registry.reload() && registry.getModels().equals(List.of("Model3")), "deleted model: " + registry.getModels());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) Files.delete(file);
+            }
+        }
+        System.out.println("ModelReloadTest: OK");
+    }
+
+    private static String run(ModelRegistry registry) throws Exception {
+        Controller controller = new Controller(registry);
+        controller.setModel("Model1");
+        return controller.readDataFrom(DATA).runModel().getResultAsTSV();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
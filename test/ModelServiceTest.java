@@ -0,0 +1,77 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Checks that the service answers only requests with its token, reads data files only from its
+ * data directory, and gives sessions the baseline results of the bundled data, also after a reset.
+ * Run with {@code java -ea}.
+ */
+public class ModelServiceTest {
+    private static final HttpClient CLIENT = HttpClient.newHttpClient();
+    private static String base;
+    private static String token;
+
+    public static void main(String[] args) throws Exception {
+        ModelService service = new ModelService(0, 4, 10, 30, 1 << 20, Path.of("src/data"));
+        service.start();
+        try {
+            base = "http://127.0.0.1:" + service.getPort();
+            token = service.getToken();
+            check(send("GET", "/status", null, null).statusCode() == 401, "answered without a token");
+            check(send("GET", "/status", "0".repeat(token.length()), null).statusCode() == 401, "answered a wrong token");
+
+            String session = ok("POST", "/sessions", null).trim();
+            ok("POST", "/sessions/" + session + "/model?name=Model1", null);
+            check(call("POST", "/sessions/" + session + "/data?file=../models/Model1.java").statusCode() == 403, "read outside the data directory");
+            check(call("POST", "/sessions/" + session + "/data?file=none.txt").statusCode() == 404, "a missing file");
+
+            String script = Files.readString(Path.of("src/scripts/script1.groovy"));
+            for (String file : new String[]{"data1.txt", "data2.txt"}) {
+                Map<String, Object> expected = Baseline.read("src/data/" + file);
+                ok("POST", "/sessions/" + session + "/data?file=" + file, null);
+                check(ok("GET", "/sessions/" + session + "/results", null).equals(Baseline.tsv(expected)), file + ": data differs from the baseline");
+                Baseline.runModel("Model1", expected);
+                Baseline.runScript(script, expected);
+                ok("POST", "/sessions/" + session + "/run", null);
+                ok("POST", "/sessions/" + session + "/script", script);
+                String results = ok("GET", "/sessions/" + session + "/results", null);
+                check(Baseline.rows(results).equals(Baseline.rows(Baseline.tsv(expected))), file + ": results differ from the baseline");
+
+                ok("POST", "/sessions/" + session + "/reset", null);
+                ok("POST", "/sessions/" + session + "/run", null); // from the shared dataset, not the last run
+                ok("POST", "/sessions/" + session + "/script", script);
+                check(ok("GET", "/sessions/" + session + "/results", null).equals(results), file + ": results differ after a reset");
+            }
+            ok("DELETE", "/sessions/" + session, null);
+        } finally {
+            service.stop();
+        }
+        System.out.println("ModelServiceTest: OK");
+    }
+
+    private static HttpResponse<String> call(String method, String path) throws Exception {
+        return send(method, path, token, null);
+    }
+
+    private static String ok(String method, String path, String body) throws Exception {
+        HttpResponse<String> response = send(method, path, token, body);
+        check(response.statusCode() == 200, method + " " + path + ": " + response.statusCode() + " " + response.body());
+        return response.body();
+    }
+
+    private static HttpResponse<String> send(String method, String path, String token, String body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) request.header("Authorization", "Bearer " + token);
+        return CLIENT.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,87 @@
+import store.VariableStore;
+import sweep.Distribution;
+import sweep.Perturbation;
+import sweep.SeriesStatistics;
+
+import models.FailingModel;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Checks that a sweep with a fixed seed gives exactly the same statistics, quantile estimates
+ * included, when run twice in parallel and when run on one thread, and that a failing draw stops
+ * the sweep with its error instead of leaving it waiting. Run with {@code java -ea}.
+ */
+public class ParameterSweepTest {
+    public static void main(String[] args) throws Exception {
+        Map<String, SeriesStatistics> first = sweep(4), second = sweep(4), sequential = sweep(1);
+        same(first, second);
+        same(first, sequential);
+        failingDraw();
+        System.out.println("ParameterSweepTest: OK");
+    }
+
+    private static Map<String, SeriesStatistics> sweep(int parallelism) throws Exception {
+        VariableStore data = new Controller().readDataFrom("src/data/data1.txt").getData();
+        return new ParameterSweep("Model1", data)
+                .perturb(Perturbation.random("twKI", Perturbation.Mode.MULTIPLY, Distribution.normal(1, 0.01)))
+                .perturb(Perturbation.grid("twIMP", Perturbation.Mode.ADD, -0.01, 0, 0.01))
+                .output("PKB", "KI")
+                .seed(42)
+                .parallelism(parallelism)
+                .run(700); // several chunks per grid point, finishing in no particular order
+    }
+
+    private static void failingDraw() throws Exception {
+        VariableStore data = new Controller().readDataFrom("src/data/data1.txt").getData();
+        FailingModel.runs.set(0);
+        FailingModel.failAt = 1000;
+        ParameterSweep sweep = new ParameterSweep("FailingModel", data)
+                .perturb(Perturbation.random("twKI", Perturbation.Mode.MULTIPLY, Distribution.normal(1, 0.01)))
+                .output("PKB")
+                .parallelism(4);
+        ExecutorService runner = Executors.newSingleThreadExecutor(task -> { // daemon: a hung sweep can't be interrupted
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Future<?> run = runner.submit(() -> sweep.run(20_000));
+            try {
+                run.get(60, TimeUnit.SECONDS);
+                throw new AssertionError("the sweep didn't fail");
+            } catch (TimeoutException e) {
+                throw new AssertionError("the sweep hangs after a failed draw");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                check(cause.getMessage().startsWith("Sweep failed at draw"), "unexpected failure: " + cause);
+                while (cause.getCause() != null) cause = cause.getCause();
+                check("Run 1000 fails".equals(cause.getMessage()), "not the model's failure: " + cause);
+            }
+            check(FailingModel.runs.get() < 20_000, "the other draws weren't stopped");
+        } finally {
+            runner.shutdownNow();
+        }
+    }
+
+    private static void same(Map<String, SeriesStatistics> a, Map<String, SeriesStatistics> b) {
+        check(a.keySet().equals(b.keySet()), "outputs differ");
+        for (String output : a.keySet()) {
+            SeriesStatistics x = a.get(output), y = b.get(output);
+            check(x.getCount() == y.getCount(), output + ": counts differ");
+            check(Arrays.equals(x.getMean(), y.getMean()), output + ": means differ");
+            check(Arrays.equals(x.getVariance(), y.getVariance()), output + ": variances differ");
+            for (int q = 0; q < x.getQuantileLevels().length; q++) {
+                check(Arrays.equals(x.getQuantile(q), y.getQuantile(q)),
+                        output + ": quantile " + x.getQuantileLevels()[q] + " differs: "
+                                + Arrays.toString(x.getQuantile(q)) + " vs " + Arrays.toString(y.getQuantile(q)));
+            }
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
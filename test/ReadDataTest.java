@@ -0,0 +1,59 @@
+import store.VariableStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the memory-mapped parser, with every row parsed up front or only the bound ones,
+ * reads each bundled data file as the original line reader did, and that model results and TSV
+ * are the same. Run with {@code java -ea}.
+ */
+public class ReadDataTest {
+    public static void main(String[] args) throws Exception {
+        for (Path file : dataFiles()) {
+            Map<String, Object> expected = Baseline.read(file.toString());
+
+            VariableStore full = new Controller().readDataFrom(file.toString()).getData();
+            same(expected, full, file + " (all rows)");
+
+            Controller deferred = new Controller();
+            deferred.setModel("Model1"); // the other files have none of its rows: all of them deferred
+            deferred.setBoundVariablesOnly(true).readDataFrom(file.toString());
+            same(expected, deferred.getData(), file + " (bound rows)");
+
+            if (!file.getFileName().toString().startsWith("data")) continue; // Model1 data
+            Controller lazy = new Controller();
+            lazy.setModel("Model1");
+            lazy.setBoundVariablesOnly(true).readDataFrom(file.toString()).runModel();
+            Baseline.runModel("Model1", expected);
+            check(lazy.getResultAsTSV().equals(Baseline.tsv(expected)), file + ": results differ from the baseline");
+        }
+        System.out.println("ReadDataTest: OK");
+    }
+
+    static List<Path> dataFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of("src/data"))) {
+            return files.filter(file -> file.toString().endsWith(".txt")).sorted().toList();
+        }
+    }
+
+    private static void same(Map<String, Object> expected, VariableStore data, String what) {
+        check(Arrays.equals((String[]) expected.get("LATA"), data.getPeriods()), what + ": periods differ");
+        check(expected.get("LL").equals(data.size()), what + ": LL differs");
+        List<String> names = expected.keySet().stream().filter(name -> expected.get(name) instanceof double[]).toList();
+        check(names.size() == data.columnCount(), what + ": " + data.columnCount() + " series instead of " + names.size());
+        for (int i = 0; i < names.size(); i++) {
+            check(names.get(i).equals(data.name(i)), what + ": series " + i + " is " + data.name(i));
+            check(Arrays.equals((double[]) expected.get(names.get(i)), data.column(i)), what + ": " + names.get(i) + " differs");
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,70 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that a pipeline gives the baseline results of running its steps one after the other, and
+ * that after an input changes it runs only the affected steps and still gives what a full run on
+ * the changed data gives. Run with {@code java -ea}.
+ */
+public class ScriptPipelineTest {
+    private static final String DATA = "src/data/data1.txt";
+    private static final String WEIGHTED = "RW = WEIGHTS.collect { it * 2 } as double[]"; // reads nothing the model binds
+    private static final String SHARE = "ZSHARE = new double[LL]\nfor (i = 0; i < LL; i++) ZSHARE[i] = KS[i] / PKB[i]";
+
+    public static void main(String[] args) throws Exception {
+        String script1 = Files.readString(Path.of("src/scripts/script1.groovy"));
+        for (int parallelism : new int[]{1, 4}) {
+            ScriptPipeline pipeline = new ScriptPipeline(parallelism)
+                    .addModel("Model1")
+                    .addScript("script1", script1)
+                    .addScript("weighted", WEIGHTED)
+                    .addFormula("share", "ZSHARE = KS / PKB");
+            Controller controller = new Controller().readDataFrom(DATA);
+            controller.getData().put("WEIGHTS", weights(1));
+            List<String> ran = pipeline.run(controller);
+            check(ran.size() == 4, "first run: " + ran);
+            check(Baseline.rows(controller.getResultAsTSV()).equals(baseline(script1, 1, 1)), parallelism + ": results differ from the baseline");
+
+            double[] twKI = controller.getData().get("twKI").clone();
+            twKI[1] *= 1.01;
+            ran = pipeline.set("twKI", twKI).run(controller);
+            check(ran.equals(List.of("model Model1", "script1", "share")), "rerun: " + ran);
+            check(Baseline.rows(controller.getResultAsTSV()).equals(baseline(script1, 1.01, 1)), parallelism + ": rerun differs from a full run");
+
+            check(pipeline.run(controller).isEmpty(), "ran again without a change");
+
+            ran = pipeline.set("WEIGHTS", weights(3)).run(controller);
+            check(ran.equals(List.of("weighted")), "rerun for WEIGHTS: " + ran);
+            check(Baseline.rows(controller.getResultAsTSV()).equals(baseline(script1, 1.01, 3)), parallelism + ": WEIGHTS rerun differs from a full run");
+        }
+        System.out.println("ScriptPipelineTest: OK");
+    }
+
+    private static double[] weights(double value) throws Exception {
+        double[] weights = new double[(int) Baseline.read(DATA).get("LL")];
+        Arrays.fill(weights, value);
+        return weights;
+    }
+
+    /**
+     * The steps run one after the other on the data file, with {@code twKI[1]} scaled by
+     * {@code factor} and {@code WEIGHTS} set to {@code weight}.
+     */
+    private static String baseline(String script1, double factor, double weight) throws Exception {
+        Map<String, Object> data = Baseline.read(DATA);
+        ((double[]) data.get("twKI"))[1] *= factor;
+        data.put("WEIGHTS", weights(weight));
+        Baseline.runModel("Model1", data);
+        Baseline.runScript(script1, data);
+        Baseline.runScript(WEIGHTED, data);
+        Baseline.runScript(SHARE, data);
+        return Baseline.rows(Baseline.tsv(data));
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
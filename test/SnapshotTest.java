@@ -0,0 +1,43 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Checks that a snapshot written by the controller reads back as the data it was written from, for
+ * every bundled data file as read and, for the Model1 data, with the baseline model results, and
+ * that a model run on a snapshot gives the baseline results. Run with {@code java -ea}.
+ */
+public class SnapshotTest {
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("snapshots");
+        try {
+            for (Path file : ReadDataTest.dataFiles()) {
+                Map<String, Object> expected = Baseline.read(file.toString());
+                Path snapshot = directory.resolve(file.getFileName() + ".latb");
+                new Controller().readDataFrom(file.toString()).writeSnapshotTo(snapshot.toString());
+                String read = new Controller().readDataFrom(snapshot.toString()).getResultAsTSV();
+                check(read.equals(Baseline.tsv(expected)), file + ": the snapshot differs from the file");
+
+                if (!file.getFileName().toString().startsWith("data")) continue; // Model1 data
+                Baseline.runModel("Model1", expected);
+                Controller controller = new Controller();
+                controller.setModel("Model1");
+                controller.readDataFrom(snapshot.toString()).runModel();
+                check(controller.getResultAsTSV().equals(Baseline.tsv(expected)), file + ": results on the snapshot differ from the baseline");
+                controller.writeSnapshotTo(snapshot.toString()); // over the file it was mapped from
+                read = new Controller().readDataFrom(snapshot.toString()).getResultAsTSV();
+                check(read.equals(Baseline.tsv(expected)), file + ": the snapshot of the results differs");
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+        System.out.println("SnapshotTest: OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
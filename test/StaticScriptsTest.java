@@ -0,0 +1,56 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Checks that the bundled scripts compiled with {@code @CompileStatic} give the baseline results on
+ * their data files, and that a script which doesn't type check still runs dynamically with the
+ * same results. Run with {@code java -ea}.
+ */
+public class StaticScriptsTest {
+    private static final String[][] RUNS = { // data file, model or null, script
+            {"data1.txt", "Model1", "script1.groovy"},
+            {"data2.txt", "Model1", "script1.groovy"},
+            {"model2data1.txt", null, "model2script1.groovy"},
+            {"model2data2.txt", null, "model2script2.groovy"},
+            {"model3data1.txt", null, "model3script1.groovy"},
+    };
+    private static final String UNTYPED = """
+            def values = LL > 0 ? KI : 'none' // a series or a string: fails the type check
+            RR = new double[LL]
+            for (i = 0; i < LL; i++) RR[i] = values[i] * 2
+            """;
+
+    public static void main(String[] args) throws Exception {
+        for (String[] run : RUNS) {
+            String data = "src/data/" + run[0];
+            String script = Files.readString(Path.of("src/scripts", run[2]));
+            Map<String, Object> baseline = Baseline.read(data);
+            if (run[1] != null) Baseline.runModel(run[1], baseline);
+            Baseline.runScript(script, baseline);
+            String expected = Baseline.rows(Baseline.tsv(baseline));
+            check(Baseline.rows(run(data, run[1], script, true)).equals(expected), run[2] + " on " + run[0] + ": static results differ from the baseline");
+            check(Baseline.rows(run(data, run[1], script, false)).equals(expected), run[2] + " on " + run[0] + ": dynamic results differ from the baseline");
+        }
+
+        Map<String, Object> baseline = Baseline.read("src/data/data1.txt");
+        Baseline.runScript(UNTYPED, baseline);
+        long fallbacks = Controller.getScriptCache().getStaticFallbackCount();
+        check(Baseline.rows(run("src/data/data1.txt", null, UNTYPED, true)).equals(Baseline.rows(Baseline.tsv(baseline))), "the fallback differs from the baseline");
+        check(Controller.getScriptCache().getStaticFallbackCount() == fallbacks + 1, "the script type checked");
+        System.out.println("StaticScriptsTest: OK");
+    }
+
+    private static String run(String data, String model, String script, boolean staticScripts) throws Exception {
+        Controller controller = new Controller().setStaticScripts(staticScripts).readDataFrom(data);
+        if (model != null) {
+            controller.setModel(model);
+            controller.runModel();
+        }
+        return controller.runScript(script).getResultAsTSV();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,34 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Checks that streaming the Model1 data through Model4 a few periods at a time gives what the
+ * baseline gives for Model1 on the whole file, whatever the window. Run with {@code java -ea}.
+ */
+public class StreamingTest {
+    public static void main(String[] args) throws Exception {
+        Path output = Files.createTempFile("streamed", ".latb");
+        try {
+            for (String file : new String[]{"src/data/data1.txt", "src/data/data2.txt"}) {
+                Map<String, Object> expected = Baseline.read(file);
+                Baseline.runModel("Model1", expected);
+                int periods = (int) expected.get("LL");
+                for (int window : new int[]{1, 2, 3, periods - 1, periods, periods + 5}) {
+                    Controller controller = new Controller();
+                    controller.setModel("Model4");
+                    controller.streamModel(file, output.toString(), window);
+                    String streamed = new Controller().readDataFrom(output.toString()).getResultAsTSV();
+                    check(streamed.equals(Baseline.tsv(expected)), file + ", window " + window + ": results differ from the baseline");
+                }
+            }
+        } finally {
+            Files.deleteIfExists(output);
+        }
+        System.out.println("StreamingTest: OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,74 @@
+package binding;
+
+import annotations.Bind;
+import models.Model1;
+import store.VariableStore;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Checks which fields {@link ReadOnlyFields} finds only read, and that binding them without a copy
+ * leaves snapshots as they were. Run with {@code java -ea}.
+ */
+public class ReadOnlyFieldsTest {
+    public static void main(String[] args) throws Throwable {
+        Set<String> model1 = ReadOnlyFields.of(Model1.class);
+        check(model1.equals(Set.of("twKI", "twKS", "twINW", "twEKS", "twIMP")), "Model1: " + model1);
+        Set<String> aliases = ReadOnlyFields.of(Aliases.class);
+        check(aliases.equals(Set.of("read")), "Aliases: " + aliases);
+
+        VariableStore data = new VariableStore();
+        data.setPeriods(new String[]{"LATA", "2020", "2021", "2022"});
+        data.put("read", new double[]{1, 2, 3});
+        for (String name : new String[]{"local", "passed", "copied"}) data.put(name, new double[]{1, 2, 3});
+        VariableStore.Snapshot before = data.snapshot();
+        BindingPlan plan = BindingPlan.of(Aliases.class);
+        Aliases model = new Aliases();
+        plan.bind(model, data);
+        check(plan.getField("read").isReadOnly() && !plan.getField("local").isReadOnly(), "plan fields");
+        check(plan.getField("read").get(model) == data.get("read"), "a read-only series was copied");
+        plan.run(model);
+        plan.readBack(model, data);
+        VariableStore old = before.branch();
+        check(Arrays.equals(old.get("read"), new double[]{1, 2, 3}), "snapshot changed: " + Arrays.toString(old.get("read")));
+        for (String name : new String[]{"local", "passed", "copied"}) {
+            check(Arrays.equals(old.get(name), new double[]{1, 2, 3}), "snapshot changed: " + name + " " + Arrays.toString(old.get(name)));
+        }
+        check(Arrays.equals(data.get("local"), new double[]{4, 2, 3}), "write lost: " + Arrays.toString(data.get("local")));
+        System.out.println("ReadOnlyFieldsTest: OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
+
+/**
+ * Writes through an alias, a method and another field; reads {@code read} in every way that
+ * doesn't let the array go anywhere. Not nested: a nest mate could reach the fields.
+ */
+class Aliases {
+    @Bind
+    private double[] read;
+    @Bind
+    private double[] local;
+    @Bind
+    private double[] passed;
+    @Bind
+    private double[] copied;
+    @Bind
+    private double[] target;
+    @Bind
+    double[] visible; // not private: other classes could write it
+    private double sum;
+
+    public void run() {
+        double[] alias = local;
+        alias[0] = read[0] + read[read.length - 1] + (read == null ? 0 : read[1] - read[1]) + (read != local ? 0 : 1);
+        Arrays.fill(passed, 0);
+        target = copied;
+        target[0] = 1;
+        for (int i = 0; i < read.length; i++) sum += read[i];
+    }
+}
@@ -0,0 +1,67 @@
+package cache;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the disk tier of the result cache stays within its size, dropping the least recently
+ * used entries, also across restarts. Run with {@code java -ea}.
+ */
+public class ResultCacheTest {
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("result-cache");
+        try {
+            long entryBytes = fileSize(directory);
+            ResultCache cache = new ResultCache(0, directory, 3 * entryBytes); // nothing kept in memory
+            for (int k = 0; k < 3; k++) {
+                cache.put("k" + k, Map.of("PKB", new double[]{k, k}), 1);
+                Thread.sleep(20); // modification times tell the order after a restart
+            }
+            check(cache.get("k0") != null, "k0 is on disk"); // now k1 is the least recently used
+            Thread.sleep(20);
+            cache.put("k3", Map.of("PKB", new double[]{3, 3}), 1);
+            check(cache.get("k1") == null, "k1 should have been dropped");
+            check(Arrays.equals((double[]) cache.get("k0").get("PKB"), new double[]{0, 0}), "k0 kept");
+            check(cache.getDiskBytes() == 3 * entryBytes, "disk bytes: " + cache.getDiskBytes());
+            check(files(directory) == 3, "files: " + files(directory));
+
+            ResultCache smaller = new ResultCache(0, directory, 2 * entryBytes); // restart with less room
+            check(files(directory) == 2, "files after restart: " + files(directory));
+            check(smaller.getDiskBytes() == 2 * entryBytes, "disk bytes after restart: " + smaller.getDiskBytes());
+            check(smaller.get("k2") == null, "k2 was the least recently used");
+            System.out.println("ResultCacheTest: OK");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static long fileSize(Path directory) throws Exception {
+        Path probe = Files.createDirectory(directory.resolve("probe"));
+        new ResultCache(0, probe).put("k", Map.of("PKB", new double[]{0, 0}), 1);
+        long size;
+        try (Stream<Path> files = Files.list(probe)) {
+            size = Files.size(files.findFirst().orElseThrow());
+        }
+        try (Stream<Path> files = Files.list(probe)) {
+            for (Path file : files.toList()) Files.delete(file);
+        }
+        Files.delete(probe);
+        return size;
+    }
+
+    private static long files(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.toString().endsWith(".bin")).count();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,122 @@
+package formula;
+
+import formula.Node.*;
+import store.VariableStore;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the rewrites of the optimizer, and that the generated kernels compute the same values as
+ * the same loops written out by hand. Run with {@code java -ea}.
+ */
+public class FormulaTest {
+    public static void main(String[] args) {
+        optimizer();
+        kernels();
+        errors();
+        System.out.println("FormulaTest: OK");
+    }
+
+    private static void optimizer() {
+        Var x = new Var("x");
+        check(optimize("y = 2 * 3 + x").equals(new Op('+', new Num(6), x)), "constants are folded");
+        check(optimize("y = -(1 + 1)").equals(new Num(-2)), "negated constants are folded");
+        check(optimize("y = sqrt(16) + max(1, 2)").equals(new Num(6)), "constant calls are folded");
+        check(optimize("y = diff(x)").equals(new Op('-', x, lag(x, 1))), "diff is expanded");
+        check(optimize("y = lag(x)").equals(lag(x, 1)), "lag gets its distance");
+        check(optimize("y = lag(lag(x), 2)").equals(lag(x, 3)), "nested lags are merged");
+        check(optimize("y = lag(x, 0)").equals(x), "lag 0 is the value itself");
+        check(optimize("y = cumsum(1)").equals(new Call("cumsum", List.of(new Num(1)))), "cumsum is not folded");
+    }
+
+    private static void kernels() {
+        double[] gdp = {100, 104, 103, 110, 0, 121};
+        double[] savings = {1, -2, 3.5, 4, 5, 6};
+        int n = gdp.length;
+
+        VariableStore store = store(gdp, savings);
+        Formula.of("""
+                growth = diff(GDP) / lag(GDP)
+                cum = cumsum(savings)
+                share = savings / GDP * 100
+                scaled = GDP * LL - abs(savings) ^ 2
+                smooth = lag(GDP + savings, 2) + min(GDP, savings)
+                GDP = lag(GDP) + 1
+                twice = GDP * 2
+                """).run(store);
+
+        double[] growth = new double[n], cum = new double[n], share = new double[n], scaled = new double[n],
+                smooth = new double[n], shifted = new double[n], twice = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            growth[i] = i < 1 ? Double.NaN : (gdp[i] - gdp[i - 1]) / gdp[i - 1];
+            sum += savings[i];
+            cum[i] = sum;
+            share[i] = savings[i] / gdp[i] * 100;
+            scaled[i] = gdp[i] * n - Math.pow(Math.abs(savings[i]), 2);
+            smooth[i] = (i < 2 ? Double.NaN : gdp[i - 2] + savings[i - 2]) + Math.min(gdp[i], savings[i]);
+            shifted[i] = (i < 1 ? Double.NaN : gdp[i - 1]) + 1; // the values from before the statement
+            twice[i] = shifted[i] * 2;
+        }
+        same(store, "growth", growth);
+        same(store, "cum", cum);
+        same(store, "share", share);
+        same(store, "scaled", scaled);
+        same(store, "smooth", smooth);
+        same(store, "GDP", shifted);
+        same(store, "twice", twice);
+        check(Arrays.equals(savings, new double[]{1, -2, 3.5, 4, 5, 6}), "inputs are not written");
+
+        VariableStore other = store(gdp, savings);
+        other.putValue("rate", 0.5);
+        Formula.of("y = GDP * rate").run(other); // same text with a scalar: its own kernel
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) y[i] = gdp[i] * 0.5;
+        same(other, "y", y);
+    }
+
+    private static void errors() {
+        fails(() -> Formula.of("y = nothing + 1").run(store(new double[]{1}, new double[]{1})), "unknown variable");
+        fails(() -> Formula.of("LL = 1"), "assigning LL");
+        fails(() -> Formula.of("y = (1 +"), "syntax error");
+        fails(() -> Formula.of("y = nosuch(1)"), "unknown function");
+    }
+
+    private static VariableStore store(double[] gdp, double[] savings) {
+        VariableStore store = new VariableStore();
+        String[] periods = new String[gdp.length + 1];
+        periods[0] = VariableStore.PERIODS;
+        for (int i = 1; i < periods.length; i++) periods[i] = String.valueOf(2000 + i);
+        store.setPeriods(periods);
+        store.put("GDP", gdp.clone());
+        store.put("savings", savings.clone());
+        return store;
+    }
+
+    private static Node optimize(String formula) {
+        return Optimizer.optimize(Parser.parse(formula)).get(0).expression();
+    }
+
+    private static Node lag(Node x, int distance) {
+        return new Call("lag", List.of(x, new Num(distance)));
+    }
+
+    private static void same(VariableStore store, String name, double[] expected) {
+        check(Arrays.equals(store.get(name), expected),
+                name + ": " + Arrays.toString(store.get(name)) + " instead of " + Arrays.toString(expected));
+    }
+
+    private static void fails(Runnable action, String what) {
+        try {
+            action.run();
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("no error for " + what);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,28 @@
+package models;
+
+import annotations.Bind;
+import interfaces.IModel;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Copies {@code twKI} to {@code PKB}, except that run number {@link #failAt} throws.
+ */
+public class FailingModel implements IModel {
+    public static volatile int failAt;
+    public static final AtomicInteger runs = new AtomicInteger();
+
+    @Bind
+    private int LL;
+    @Bind
+    private double[] twKI;
+    @Bind
+    private double[] PKB;
+
+    public void run() {
+        if (runs.incrementAndGet() == failAt) {
+            throw new IllegalStateException("Run " + failAt + " fails");
+        }
+        PKB = twKI.clone();
+    }
+}
@@ -0,0 +1,40 @@
+package scripting;
+
+import store.VariableStore;
+
+import javax.script.ScriptException;
+import java.util.Arrays;
+
+/**
+ * Checks that the series a script assigns reach the store only when the script completes. Run with
+ * {@code java -ea}.
+ */
+public class ContextPoolTest {
+    public static void main(String[] args) throws Exception {
+        ScriptCache cache = new ScriptCache();
+        VariableStore store = new VariableStore();
+        store.setPeriods(new String[]{"LATA", "2020", "2021", "2022"});
+        store.put("KI", new double[]{1, 2, 3});
+
+        try (ContextPool.Lease lease = cache.getContextPool().acquire()) {
+            lease.eval(cache.compile("ZZ = new double[LL]; ZZ[0] = KI[0]; KS = ZZ; throw new IllegalStateException('halfway')"), store);
+            throw new AssertionError("the script didn't fail");
+        } catch (ScriptException e) {
+            check(!store.contains("ZZ") && !store.contains("KS"), "a failed script left series behind");
+        }
+
+        try (ContextPool.Lease lease = cache.getContextPool().acquire()) {
+            lease.eval(cache.compile("ZZ = new double[LL]; for (int i = 0; i < LL; i++) ZZ[i] = KI[i] * 2; x = ZZ; KS = ZZ"), store);
+            check(lease.bindings().getArraysWritten() == 2, "arrays written: " + lease.bindings().getArraysWritten());
+        }
+        check(Arrays.equals(store.get("ZZ"), new double[]{2, 4, 6}), "ZZ: " + Arrays.toString(store.get("ZZ")));
+        check(Arrays.equals(store.get("KS"), new double[]{2, 4, 6}), "KS: " + Arrays.toString(store.get("KS")));
+        check(!store.contains("x"), "one-letter names are not series");
+        check(cache.getContextPool().getContextCount() == 1, "contexts: " + cache.getContextPool().getContextCount());
+        System.out.println("ContextPoolTest: OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
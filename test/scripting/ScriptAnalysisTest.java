@@ -0,0 +1,52 @@
+package scripting;
+
+import store.VariableStore;
+
+import java.util.Arrays;
+
+/**
+ * Checks which variables {@link ScriptAnalysis#isReadOnly} lets a script have without a copy, and
+ * that scripts run that way leave snapshots as they were. Run with {@code java -ea}.
+ */
+public class ScriptAnalysisTest {
+    public static void main(String[] args) throws Exception {
+        ScriptAnalysis plain = ScriptAnalysis.of("""
+                ZZ = new double[LL]
+                for (int i = 0; i < LL; i++) ZZ[i] = KI[i] * KS[KS.length - 1] + IMP[i]
+                IMP[0] = 1
+                def y = EKS; y[0] = 2
+                println INW
+                """);
+        check(plain.isReadOnly("KI") && plain.isReadOnly("KS"), "elements read only");
+        check(!plain.isReadOnly("IMP"), "IMP is written");
+        check(!plain.isReadOnly("EKS"), "EKS goes into a variable");
+        check(!plain.isReadOnly("INW"), "INW is passed to a method");
+        check(!plain.isReadOnly("ZZ"), "ZZ is assigned");
+        check(!plain.isReadOnly("PKB"), "PKB is not used");
+        check(!ScriptAnalysis.of("ZZ = KI[0]; binding.getVariable('KI')[0] = 5").isReadOnly("KI"), "binding reaches KI");
+        check(!ScriptAnalysis.of("ZZ = KI[0]; evaluate('KI[0] = 5')").isReadOnly("KI"), "evaluate reaches KI");
+        check(!ScriptAnalysis.of("ZZ = KI[0]; KI.sort()").isReadOnly("KI"), "a method is called on KI");
+
+        ScriptCache cache = new ScriptCache();
+        VariableStore store = new VariableStore();
+        store.setPeriods(new String[]{"LATA", "2020", "2021", "2022"});
+        store.put("KI", new double[]{1, 2, 3});
+        store.put("EKS", new double[]{1, 2, 3});
+        VariableStore.Snapshot before = store.snapshot();
+        String script = "ZZ = new double[LL]; for (int i = 0; i < LL; i++) ZZ[i] = KI[i]; def y = EKS; y[0] = 9";
+        ScriptAnalysis analysis = ScriptAnalysis.of(script);
+        try (ContextPool.Lease lease = cache.getContextPool().acquire()) {
+            lease.eval(cache.compile(script), store, analysis::isReadOnly);
+        }
+        VariableStore old = before.branch();
+        check(Arrays.equals(old.get("EKS"), new double[]{1, 2, 3}), "snapshot changed: " + Arrays.toString(old.get("EKS")));
+        check(Arrays.equals(store.get("EKS"), new double[]{9, 2, 3}), "write lost: " + Arrays.toString(store.get("EKS")));
+        check(store.get("KI") == old.get("KI"), "KI was copied");
+        check(Arrays.equals(store.get("ZZ"), new double[]{1, 2, 3}), "ZZ: " + Arrays.toString(store.get("ZZ")));
+        System.out.println("ScriptAnalysisTest: OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,76 @@
+package sensitivity;
+
+import binding.BindingPlan;
+import models.Model1;
+import models.Model4;
+import store.VariableStore;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the dual-number run of {@link Model4}: its values against {@link Model1}, its derivatives
+ * against finite differences and a closed form. Run with {@code java -ea}.
+ */
+public class SensitivityAnalysisTest {
+    private static final List<String> INPUTS = List.of("twKI", "twKS", "twINW", "twEKS", "twIMP");
+
+    public static void main(String[] args) throws Throwable {
+        exactDerivativesMatchFiniteDifferences();
+        System.out.println("SensitivityAnalysisTest: OK");
+    }
+
+    static void exactDerivativesMatchFiniteDifferences() throws Throwable {
+        SensitivityAnalysis analysis = new SensitivityAnalysis(Model4::new);
+        VariableStore data = data();
+        Sensitivities exact = analysis.run(data, INPUTS);
+        VariableStore plain = data.branch();
+        BindingPlan plan = BindingPlan.of(Model1.class);
+        Model1 model1 = new Model1();
+        plan.bind(model1, plain);
+        plan.run(model1);
+        plan.readBack(model1, plain);
+        for (String output : exact.getOutputs()) {
+            check(Arrays.equals(exact.value(output), plain.get(output)), "dual values of " + output + " differ from Model1");
+        }
+        Sensitivities estimated = analysis.runFiniteDifferences(data, INPUTS);
+        check(exact.isExact() && !estimated.isExact(), "expected a dual run and a finite-difference run");
+        check(exact.getOutputs().equals(estimated.getOutputs()), "outputs differ: " + exact.getOutputs() + ", " + estimated.getOutputs());
+        for (String output : exact.getOutputs()) {
+            check(Arrays.equals(exact.value(output), estimated.value(output)), "values of " + output + " differ");
+            for (String input : INPUTS) {
+                double[] a = exact.get(output, input), b = estimated.get(output, input);
+                for (int t = 0; t < a.length; t++) {
+                    check(Math.abs(a[t] - b[t]) <= 1e-6 * Math.max(1, Math.abs(a[t])),
+                            "d" + output + "/d" + input + "[" + t + "]: " + a[t] + " vs " + b[t]);
+                }
+            }
+        }
+        double[] dPKB = exact.get("PKB", "twKI"); // PKB[t] = ... + KI[0] * twKI^t
+        double ki0 = data.get("KI")[0], twKI = data.get("twKI")[1];
+        for (int t = 0; t < dPKB.length; t++) {
+            double expected = t * ki0 * Math.pow(twKI, t - 1);
+            check(Math.abs(dPKB[t] - expected) <= 1e-9 * Math.max(1, expected), "dPKB/dtwKI[" + t + "]: " + dPKB[t] + " vs " + expected);
+        }
+    }
+
+    private static VariableStore data() {
+        VariableStore data = new VariableStore();
+        data.setPeriods(new String[]{"LATA", "2015", "2016", "2017", "2018", "2019"});
+        data.put("twKI", new double[]{1.03, 1.03, 1.03, 1.03, 1.03});
+        data.put("twKS", new double[]{1.04, 1.04, 1.04, 1.04, 1.04});
+        data.put("twINW", new double[]{1.12, 1.12, 1.12, 1.12, 1.12});
+        data.put("twEKS", new double[]{1.13, 1.13, 1.13, 1.13, 1.13});
+        data.put("twIMP", new double[]{1.14, 1.14, 1.14, 1.14, 1.14});
+        data.put("KI", new double[]{1023752.2, 0, 0, 0, 0});
+        data.put("KS", new double[]{315397.0, 0, 0, 0, 0});
+        data.put("INW", new double[]{348358.0, 0, 0, 0, 0});
+        data.put("EKS", new double[]{811108.6, 0, 0, 0, 0});
+        data.put("IMP", new double[]{784342.4, 0, 0, 0, 0});
+        return data;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,66 @@
+package store;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the copy-on-write rules of {@link VariableStore}: snapshots and branches share columns
+ * until one of them writes, a write never shows in the others, and deferred columns are parsed
+ * once for all branches still sharing a snapshot's columns. Run with {@code java -ea}.
+ */
+public class VariableStoreTest {
+    public static void main(String[] args) {
+        VariableStore store = new VariableStore();
+        store.setPeriods(new String[]{"LATA", "2020", "2021", "2022"});
+        store.put("KI", new double[]{1, 2, 3});
+        store.put("KS", new double[]{4, 5, 6});
+        AtomicInteger loads = new AtomicInteger();
+        store.putDeferred("INW", () -> {
+            loads.incrementAndGet();
+            return new double[]{7, 8, 9};
+        });
+
+        VariableStore.Snapshot snapshot = store.snapshot();
+        VariableStore branch = snapshot.branch();
+        check(branch.get("KI") == store.get("KI"), "a branch copied a column it only read");
+        check(branch.readValue("KS") == store.get("KS"), "readValue copied");
+
+        branch.mutable("KI")[0] = 10;
+        check(Arrays.equals(store.get("KI"), new double[]{1, 2, 3}), "a branch wrote into the store: " + Arrays.toString(store.get("KI")));
+        check(Arrays.equals(snapshot.branch().get("KI"), new double[]{1, 2, 3}), "a branch wrote into the snapshot");
+        check(branch.mutable("KI") == branch.get("KI"), "a column was copied twice");
+        ((double[]) store.getValue("KS"))[1] = 50;
+        check(Arrays.equals(branch.get("KS"), new double[]{4, 5, 6}), "the store wrote into a branch: " + Arrays.toString(branch.get("KS")));
+
+        VariableStore reader = snapshot.branch(), other = snapshot.branch(); // both still on the snapshot's table
+        check(reader.isDeferred(reader.indexOf("INW")) && other.isDeferred(other.indexOf("INW")), "INW parsed early");
+        double[] parsed = reader.get("INW");
+        check(other.get("INW") == parsed && loads.get() == 1, "deferred column parsed " + loads.get() + " times");
+
+        store.put("ZZ", new double[]{0, 0, 0});
+        store.remove("KS");
+        store.restore(snapshot);
+        check(!store.contains("ZZ") && Arrays.equals(store.get("KS"), new double[]{4, 5, 6}), "restore kept later changes");
+        check(store.columnCount() == 3 && store.name(2).equals("INW"), "column order after restore");
+
+        VariableStore copy = store.copy();
+        copy.get("KI")[0] = 100; // a copy owns its arrays
+        check(store.get("KI")[0] == 1, "copy shares arrays");
+
+        DoubleBuffer buffer = store.toDirectBuffer();
+        double[] all = new double[buffer.remaining()];
+        buffer.get(all);
+        check(Arrays.equals(all, new double[]{1, 2, 3, 4, 5, 6, 7, 8, 9}), "direct buffer: " + Arrays.toString(all));
+
+        store.putDeferred("BAD", () -> {
+            throw new NumberFormatException("x");
+        });
+        check(store.get("BAD") == null && !store.contains("BAD"), "an unparsable column was kept");
+        System.out.println("VariableStoreTest: OK");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) throw new AssertionError(message);
+    }
+}